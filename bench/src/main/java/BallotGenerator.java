@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+public class BallotGenerator {
+
+	private static final int MAX_REJECTIONS = 32; //Rejected draws in a row before a ballot is finished with a direct weighted pick
+
+	private int numOfCandidates; //Number of candidates
+	private double[] weights; //Popularity weight of each candidate
+	private int[] aliases; //Alias table over the weights, for drawing a candidate in constant time
+	private double[] aliasChances; //Chance of keeping each slot of the alias table instead of taking its alias
+	private int[] tiedWith; //Candidate each candidate is tied with, or -1 if they are not in a tied pair
+	private int minDepth; //Fewest candidates a ballot ranks
+	private int maxDepth; //Most candidates a ballot ranks
+	private SplittableRandom random; //Source of every random choice, so a seed always gives the same files
+
+	/**
+	 * Writes a settings.txt, candidates.txt and ballots.txt in the formats PerformElection reads.
+	 * Every argument is optional and has the form name=value:
+	 * output (directory, default generated), ballots (1000000), candidates (10), seats (3), depth (most candidates ranked, default 5),
+	 * minDepth (fewest candidates ranked, default 1), skew (Zipf exponent of candidate popularity, 0 for equal popularity, default 1),
+	 * ties (number of pairs of least popular candidates that will be exactly tied, default 0) and seed (default 1).
+	 * Rankings are drawn with the Plackett-Luce model, so each next choice is picked from the candidates not yet ranked in proportion to their popularity.
+	 * @param args the generator settings
+	 * @throws IOException if a file could not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		HashMap<String, String> settings = new HashMap<String, String>();
+		settings.put("output", "generated");
+		settings.put("ballots", "1000000");
+		settings.put("candidates", "10");
+		settings.put("seats", "3");
+		settings.put("depth", "5");
+		settings.put("minDepth", "1");
+		settings.put("skew", "1");
+		settings.put("ties", "0");
+		settings.put("seed", "1");
+		for(String arg : args)
+		{
+			String[] setting = arg.split("=", 2);
+			if(setting.length != 2 || !settings.containsKey(setting[0]))
+				throw new IllegalArgumentException("Unknown generator setting " + arg);
+			settings.put(setting[0], setting[1]);
+		}
+
+		Path outputFolder = Paths.get(settings.get("output")).toAbsolutePath();
+		int numOfCandidates = Integer.parseInt(settings.get("candidates"));
+		BallotGenerator generator = new BallotGenerator(numOfCandidates, Double.parseDouble(settings.get("skew")),
+				Integer.parseInt(settings.get("ties")), Integer.parseInt(settings.get("minDepth")),
+				Integer.parseInt(settings.get("depth")), Long.parseLong(settings.get("seed")));
+
+		Files.createDirectories(outputFolder);
+		Path candidatesFile = outputFolder.resolve("candidates.txt");
+		Path ballotsFile = outputFolder.resolve("ballots.txt");
+		Files.write(outputFolder.resolve("settings.txt"), String.format("Number_of_Seats = %s\nCandidates_File_Path = %s\nBallots_File_Path = %s\nWinner_Output_File_Path = %s\n",
+				settings.get("seats"), candidatesFile, ballotsFile, outputFolder.resolve("winners.txt")).getBytes(StandardCharsets.UTF_8));
+		generator.writeCandidates(candidatesFile);
+		long start = System.nanoTime();
+		generator.writeBallots(ballotsFile, Integer.parseInt(settings.get("ballots")));
+		System.out.printf("Wrote %s ballots to %s in %.2f seconds%n", settings.get("ballots"), ballotsFile, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Constructor sets up the popularity of each candidate.
+	 * Candidate i (counting from 0) has a weight of 1 / (i + 1)^skew, and each tied pair shares the average of their weights.
+	 * @param numOfCandidates the number of candidates
+	 * @param skew the Zipf exponent of candidate popularity
+	 * @param numOfTiedPairs the number of pairs, taken from the least popular candidates, that will be exactly tied
+	 * @param minDepth the fewest candidates a ballot ranks
+	 * @param maxDepth the most candidates a ballot ranks
+	 * @param seed the seed for every random choice
+	 */
+	public BallotGenerator(int numOfCandidates, double skew, int numOfTiedPairs, int minDepth, int maxDepth, long seed) {
+		if(numOfCandidates < 1)
+			throw new IllegalArgumentException("There must be at least one candidate");
+		if(numOfTiedPairs * 2 > numOfCandidates)
+			throw new IllegalArgumentException("Not enough candidates for " + numOfTiedPairs + " tied pairs");
+		this.numOfCandidates = numOfCandidates;
+		this.maxDepth = Math.max(1, Math.min(maxDepth, numOfCandidates));
+		this.minDepth = Math.max(1, Math.min(minDepth, this.maxDepth));
+		random = new SplittableRandom(seed);
+
+		weights = new double[numOfCandidates];
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			weights[i] = 1 / Math.pow(i + 1, skew);
+		}
+		tiedWith = new int[numOfCandidates];
+		Arrays.fill(tiedWith, -1);
+		for(int pair = 0; pair < numOfTiedPairs; pair++)
+		{
+			int first = numOfCandidates - 1 - pair * 2;
+			int second = first - 1;
+			tiedWith[first] = second;
+			tiedWith[second] = first;
+			weights[first] = weights[second] = (weights[first] + weights[second]) / 2;
+		}
+		buildAliasTable();
+	}
+
+	/**
+	 * Writes the candidates file
+	 * @param candidatesFile the path of the file
+	 * @throws IOException if the file could not be written
+	 */
+	public void writeCandidates(Path candidatesFile) throws IOException {
+		StringBuilder names = new StringBuilder("List the candidates separated by a comma and space (Do not remove this line)\n");
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			if(i > 0)
+				names.append(", ");
+			names.append(getName(i));
+		}
+		Files.write(candidatesFile, names.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes the ballots file, streaming it through one reused buffer.
+	 * When there are tied pairs, ballots are written two at a time, the second being the first with each tied pair swapped,
+	 * so every tied pair has the same votes at every stage of the count. An odd last ballot leaves the tied candidates off.
+	 * @param ballotsFile the path of the file
+	 * @param numOfBallots the number of ballots to write
+	 * @throws IOException if the file could not be written
+	 */
+	public void writeBallots(Path ballotsFile, int numOfBallots) throws IOException {
+		byte[][] names = new byte[numOfCandidates][];
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			names[i] = getName(i).getBytes(StandardCharsets.UTF_8);
+		}
+		boolean hasTies = false;
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			hasTies |= tiedWith[i] >= 0;
+		}
+
+		try(FileChannel channel = FileChannel.open(ballotsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			buffer.put("Place 1 ballot per line, in the order they were casted if possible, with the candidates listed first to last from left to right, separated by a comma and space (Do not delete this line)\n"
+					.getBytes(StandardCharsets.UTF_8));
+			int[] ranking = new int[maxDepth];
+			boolean[] ranked = new boolean[numOfCandidates];
+			int written = 0;
+			while(written < numOfBallots)
+			{
+				int length = drawRanking(ranking, ranked);
+				if(hasTies && written + 1 == numOfBallots)
+					length = removeTied(ranking, length);
+				writeBallot(channel, buffer, names, ranking, length);
+				written++;
+				if(hasTies && written < numOfBallots)
+				{
+					for(int i = 0; i < length; i++)
+					{
+						if(tiedWith[ranking[i]] >= 0)
+							ranking[i] = tiedWith[ranking[i]];
+					}
+					writeBallot(channel, buffer, names, ranking, length);
+					written++;
+				}
+			}
+			buffer.flip();
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Draws one ranking with the Plackett-Luce model. Candidates are drawn from the alias table and redrawn if already ranked,
+	 * which is exact and fast while most of the weight is unranked. After too many redraws in a row, the next choice is picked
+	 * directly from the weights of the unranked candidates.
+	 * @param ranking the array the ranked candidate ids are written to
+	 * @param ranked scratch flags for which candidates are already ranked, all false on entry and on return
+	 * @return the number of candidates ranked
+	 */
+	private int drawRanking(int[] ranking, boolean[] ranked) {
+		int length = minDepth + random.nextInt(maxDepth - minDepth + 1);
+		for(int i = 0; i < length; i++)
+		{
+			int candidate = -1;
+			for(int tries = 0; candidate < 0 && tries < MAX_REJECTIONS; tries++)
+			{
+				int slot = random.nextInt(numOfCandidates);
+				int drawn = random.nextDouble() < aliasChances[slot] ? slot : aliases[slot];
+				if(!ranked[drawn])
+					candidate = drawn;
+			}
+			if(candidate < 0)
+				candidate = drawUnranked(ranked);
+			ranked[candidate] = true;
+			ranking[i] = candidate;
+		}
+		for(int i = 0; i < length; i++)
+		{
+			ranked[ranking[i]] = false;
+		}
+		return length;
+	}
+
+	/**
+	 * Picks an unranked candidate in proportion to their weight by walking every candidate
+	 * @param ranked which candidates are already ranked
+	 * @return the picked candidate
+	 */
+	private int drawUnranked(boolean[] ranked) {
+		double remaining = 0;
+		int last = -1;
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			if(!ranked[i])
+			{
+				remaining += weights[i];
+				last = i;
+			}
+		}
+		double target = random.nextDouble() * remaining;
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			if(!ranked[i])
+			{
+				target -= weights[i];
+				if(target < 0)
+					return i;
+			}
+		}
+		return last; //Only reached through rounding
+	}
+
+	/**
+	 * Takes the tied candidates off a ranking, unless that would leave it empty
+	 * @param ranking the ranked candidate ids
+	 * @param length the number of candidates ranked
+	 * @return the new number of candidates ranked
+	 */
+	private int removeTied(int[] ranking, int length) {
+		int newLength = 0;
+		for(int i = 0; i < length; i++)
+		{
+			if(tiedWith[ranking[i]] < 0)
+				ranking[newLength++] = ranking[i];
+		}
+		return newLength > 0 ? newLength : length;
+	}
+
+	/**
+	 * Adds a ballot line to the buffer, writing the buffer out first if the line might not fit
+	 * @param channel the ballots file
+	 * @param buffer the output buffer
+	 * @param names the UTF-8 name of each candidate
+	 * @param ranking the ranked candidate ids
+	 * @param length the number of candidates ranked
+	 * @throws IOException if the file could not be written
+	 */
+	private static void writeBallot(FileChannel channel, ByteBuffer buffer, byte[][] names, int[] ranking, int length) throws IOException {
+		int lineLength = 1;
+		for(int i = 0; i < length; i++)
+		{
+			lineLength += names[ranking[i]].length + 2;
+		}
+		if(buffer.remaining() < lineLength)
+		{
+			buffer.flip();
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		for(int i = 0; i < length; i++)
+		{
+			if(i > 0)
+			{
+				buffer.put((byte)',');
+				buffer.put((byte)' ');
+			}
+			buffer.put(names[ranking[i]]);
+		}
+		buffer.put((byte)'\n');
+	}
+
+	/**
+	 * Builds the alias table for the weights using Vose's method
+	 */
+	private void buildAliasTable() {
+		double total = 0;
+		for(double weight : weights)
+		{
+			total += weight;
+		}
+		aliases = new int[numOfCandidates];
+		aliasChances = new double[numOfCandidates];
+		double[] scaled = new double[numOfCandidates];
+		int[] small = new int[numOfCandidates];
+		int[] large = new int[numOfCandidates];
+		int numSmall = 0;
+		int numLarge = 0;
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			scaled[i] = weights[i] * numOfCandidates / total;
+			if(scaled[i] < 1)
+				small[numSmall++] = i;
+			else
+				large[numLarge++] = i;
+		}
+		while(numSmall > 0 && numLarge > 0)
+		{
+			int less = small[--numSmall];
+			int more = large[--numLarge];
+			aliasChances[less] = scaled[less];
+			aliases[less] = more;
+			scaled[more] = scaled[more] + scaled[less] - 1;
+			if(scaled[more] < 1)
+				small[numSmall++] = more;
+			else
+				large[numLarge++] = more;
+		}
+		while(numLarge > 0)
+		{
+			aliasChances[large[--numLarge]] = 1;
+		}
+		while(numSmall > 0) //Only left over through rounding
+		{
+			aliasChances[small[--numSmall]] = 1;
+		}
+	}
+
+	/**
+	 * Gets the name of a candidate
+	 * @param id the id of the candidate
+	 * @return the name of the candidate
+	 */
+	private static String getName(int id) {
+		return "candidate" + (id + 1);
+	}
+
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class ElectionBenchmark {
+
+	private int numOfBallots; //Ballots in the generated election
+	private int numOfCandidates; //Candidates in the generated election
+	private int numOfSeats; //Seats in the generated election
+	private int rankingDepth; //How many candidates each generated ballot ranks, at most
+	private BallotBuffer ballots; //The generated ballots
+	private Path ballotsFile; //The generated ballots written in the ballots.txt format, only made for the parse benchmark
+	private CandidateNameTable nameTable; //Names the parse benchmark reads, set up by prepare
+	private BallotStore ballotStore; //Store the next operation works on, set up by prepare
+	private Candidate largest; //Candidate with the most first choices in ballotStore, set up by prepare
+	private Election election; //Election the next operation works on, set up by prepare
+
+	/*
+	 * The operations measured by benchmarks.CountBenchmark. JMH only runs benchmarks in a named package,
+	 * and a class in a named package cannot use the program's classes in the default package, so the program is only used from here.
+	 * Each operation changes the piles it works on, so prepare gives it fresh ones, outside of the measured time, before every call of perform.
+	 */
+
+	/**
+	 * Constructor generates the ballots for one combination of settings.
+	 * First choices favour low numbered candidates so that piles have different sizes, and the rest of each ranking is random.
+	 * @param numOfBallots the number of ballots
+	 * @param numOfCandidates the number of candidates
+	 * @param numOfSeats the number of seats
+	 * @param rankingDepth the most candidates a ballot ranks
+	 * @param seed the seed for the random ballots
+	 */
+	public ElectionBenchmark(int numOfBallots, int numOfCandidates, int numOfSeats, int rankingDepth, long seed) {
+		this.numOfBallots = numOfBallots;
+		this.numOfCandidates = numOfCandidates;
+		this.numOfSeats = numOfSeats;
+		this.rankingDepth = Math.min(rankingDepth, numOfCandidates);
+
+		Random random = new Random(seed);
+		ballots = new BallotBuffer(numOfCandidates);
+		int[] order = new int[numOfCandidates];
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			order[i] = i;
+		}
+		for(int i = 0; i < numOfBallots; i++)
+		{
+			int length = 1 + random.nextInt(this.rankingDepth);
+			double skew = random.nextDouble();
+			int first = (int)(skew * skew * numOfCandidates);
+			swap(order, 0, first);
+			for(int j = 1; j < length; j++) //Partial shuffle for the rest of the ranking
+			{
+				swap(order, j, j + random.nextInt(numOfCandidates - j));
+			}
+			ballots.addBallot(order, length);
+		}
+	}
+
+	/**
+	 * Sets up what an operation works on, so that perform only does the operation itself
+	 * @param operation parse, construct, eliminate, wonSeat, removeLastPlace or count
+	 * @throws IOException if the ballots file for the parse benchmark could not be written
+	 */
+	public void prepare(String operation) throws IOException {
+		ballotStore = null;
+		largest = null;
+		election = null;
+		switch(operation)
+		{
+			case "parse":
+				nameTable = new CandidateNameTable(newStore().getCandidateList());
+				getBallotsFile();
+				break;
+			case "construct":
+				ballotStore = newStore();
+				break;
+			case "eliminate":
+			case "wonSeat":
+				largest = getLargestPile(filledStore());
+				break;
+			case "removeLastPlace":
+				election = new Election(filledStore(), numOfSeats);
+				break;
+			case "count":
+				ballotStore = filledStore();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown benchmark " + operation);
+		}
+	}
+
+	/**
+	 * Does an operation once on what prepare set up for it
+	 * @param operation the operation prepare was last called with
+	 * @return what the operation made or changed, so that the benchmark can keep it from being optimized away
+	 * @throws IOException if the ballots file could not be read
+	 */
+	public Object perform(String operation) throws IOException {
+		switch(operation)
+		{
+			case "parse":
+			{
+				BallotBuffer buffer = new BallotBuffer(numOfCandidates);
+				new BallotReader(nameTable).read(ballotsFile, buffer);
+				return buffer;
+			}
+			case "construct":
+			{
+				int[] candidateIds = new int[numOfCandidates];
+				short[] rankings = ballots.getRankings();
+				int[] ends = ballots.getEnds();
+				int ballotStart = 0;
+				for(int i = 0; i < numOfBallots; i++)
+				{
+					int length = ends[i] - ballotStart;
+					for(int j = 0; j < length; j++)
+					{
+						candidateIds[j] = rankings[ballotStart + j];
+					}
+					ballotStore.addBallot(candidateIds, length);
+					ballotStart = ends[i];
+				}
+				return ballotStore;
+			}
+			case "eliminate":
+				largest.eliminate();
+				return largest;
+			case "wonSeat":
+				largest.wonSeat(Math.max(largest.getVotes() / 2, 1)); //Half of the pile is surplus
+				return largest;
+			case "removeLastPlace":
+				election.removeLastPlaceCandidates(numOfSeats);
+				return election;
+			case "count":
+			{
+				Election election = new Election(ballotStore, numOfSeats);
+				PerformElection.performCount(election, numOfSeats, PerformElection.getVoteThreshold(election.getNumBallots(), numOfSeats));
+				return election;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown benchmark " + operation);
+		}
+	}
+
+	/**
+	 * Deletes the ballots file if one was written
+	 * @throws IOException if the file could not be deleted
+	 */
+	public void close() throws IOException {
+		if(ballotsFile != null)
+			Files.deleteIfExists(ballotsFile);
+	}
+
+	/**
+	 * Creates a ballot store with the candidates but no ballots
+	 * @return the new store
+	 */
+	private BallotStore newStore() {
+		BallotStore ballotStore = new BallotStore(numOfBallots, ballots.getRankingsSize());
+		for(int i = 0; i < numOfCandidates; i++)
+		{
+			ballotStore.addCandidate(new Candidate("candidate" + (i + 1)));
+		}
+		return ballotStore;
+	}
+
+	/**
+	 * Creates a ballot store with the candidates and every generated ballot
+	 * @return the new store
+	 */
+	private BallotStore filledStore() {
+		BallotStore ballotStore = newStore();
+		ballotStore.addBallots(ballots);
+		return ballotStore;
+	}
+
+	/**
+	 * Finds the candidate with the most first choice ballots
+	 * @param ballotStore the store holding the candidates
+	 * @return the candidate with the largest pile
+	 */
+	private Candidate getLargestPile(BallotStore ballotStore) {
+		Candidate largest = ballotStore.getCandidate(0);
+		for(int i = 1; i < ballotStore.getNumCandidates(); i++)
+		{
+			if(ballotStore.getCandidate(i).getVotes() > largest.getVotes())
+				largest = ballotStore.getCandidate(i);
+		}
+		return largest;
+	}
+
+	/**
+	 * Writes the generated ballots to a temporary file in the ballots.txt format the first time it is needed
+	 * @return the path of the file
+	 * @throws IOException if the file could not be written
+	 */
+	private Path getBallotsFile() throws IOException {
+		if(ballotsFile == null)
+		{
+			ballotsFile = Files.createTempFile("ballots", ".txt");
+			try(BufferedWriter writer = Files.newBufferedWriter(ballotsFile, StandardCharsets.UTF_8))
+			{
+				writer.write("Place 1 ballot per line (Do not delete this line)\n");
+				short[] rankings = ballots.getRankings();
+				int[] ends = ballots.getEnds();
+				int ballotStart = 0;
+				for(int i = 0; i < numOfBallots; i++)
+				{
+					for(int j = ballotStart; j < ends[i]; j++)
+					{
+						if(j > ballotStart)
+							writer.write(", ");
+						writer.write("candidate" + (rankings[j] + 1));
+					}
+					writer.write('\n');
+					ballotStart = ends[i];
+				}
+			}
+		}
+		return ballotsFile;
+	}
+
+	/**
+	 * Swaps two entries of an array
+	 * @param array the array
+	 * @param i the first position
+	 * @param j the second position
+	 */
+	private static void swap(int[] array, int i, int j) {
+		int temp = array[i];
+		array[i] = array[j];
+		array[j] = temp;
+	}
+
+}
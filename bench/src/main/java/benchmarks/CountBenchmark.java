@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+public class CountBenchmark {
+
+	@Param({"parse", "construct", "eliminate", "wonSeat", "removeLastPlace", "count"})
+	private String operation; //Which operation of ElectionBenchmark is measured
+
+	@Param({"1000", "100000", "1000000"})
+	private int ballots; //Ballots in the generated election
+
+	@Param({"5", "50"})
+	private int candidates; //Candidates in the generated election
+
+	@Param({"3"})
+	private int seats; //Seats in the generated election
+
+	@Param({"3"})
+	private int depth; //How many candidates each generated ballot ranks, at most
+
+	@Param({"1"})
+	private long seed; //Seed for the generated ballots
+
+	private Object election; //The ElectionBenchmark with the generated ballots
+	private MethodHandle prepare; //ElectionBenchmark.prepare bound to election
+	private MethodHandle perform; //ElectionBenchmark.perform bound to election
+	private MethodHandle close; //ElectionBenchmark.close bound to election
+
+	/*
+	 * Each operation changes the piles it works on, so every measured call gets fresh ones from an untimed setup
+	 * and is timed on its own, which is what single shot mode is for. Run with -p to sweep other sizes, for example
+	 * java -jar bench/target/benchmarks.jar -p operation=count -p ballots=10000000 -p candidates=500 -p depth=20
+	 */
+
+	/**
+	 * Generates the ballots for this combination of parameters.
+	 * ElectionBenchmark is in the default package with the program's classes, so it is loaded by name.
+	 * @throws Throwable if ElectionBenchmark could not be found or made
+	 */
+	@Setup(Level.Trial)
+	public void generate() throws Throwable {
+		Class<?> benchmarkClass = Class.forName("ElectionBenchmark");
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		election = lookup.findConstructor(benchmarkClass, MethodType.methodType(void.class, int.class, int.class, int.class, int.class, long.class))
+				.invoke(ballots, candidates, seats, depth, seed);
+		prepare = lookup.findVirtual(benchmarkClass, "prepare", MethodType.methodType(void.class, String.class)).bindTo(election);
+		perform = lookup.findVirtual(benchmarkClass, "perform", MethodType.methodType(Object.class, String.class)).bindTo(election);
+		close = lookup.findVirtual(benchmarkClass, "close", MethodType.methodType(void.class)).bindTo(election);
+	}
+
+	/**
+	 * Sets up fresh piles for the next measured call
+	 * @throws Throwable if the ballots file could not be written
+	 */
+	@Setup(Level.Iteration)
+	public void prepare() throws Throwable {
+		prepare.invoke(operation);
+	}
+
+	/**
+	 * Does the operation once
+	 * @return what the operation made or changed, which JMH keeps so it is not optimized away
+	 * @throws Throwable if the ballots file could not be read
+	 */
+	@Benchmark
+	public Object run() throws Throwable {
+		return perform.invoke(operation);
+	}
+
+	/**
+	 * Deletes the ballots file written for the parse operation
+	 * @throws Throwable if the file could not be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void close() throws Throwable {
+		close.invoke();
+	}
+
+}
@@ -0,0 +1,537 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class AuditJournal implements CountObserver, TransferListener, Closeable {
+
+	public static final int MAGIC = 0x4A565453; //"STVJ" read as a little endian int, the first four bytes of every audit journal
+	public static final int VERSION = 1; //Version of the layout written by this class
+
+	private static final int HEADER_SIZE = 64; //Bytes in the header before the first record
+	private static final int RECORD_SIZE = 16; //Bytes in every record
+	private static final int SEAL = -1; //First int of the record that ends each round
+	private static final int EXHAUSTED = -1; //Candidate id written for a ballot with no continuing candidates left
+	private static final int HASH_SIZE = 32; //Bytes in a SHA-256 hash, which takes two records
+	private static final int READ_BUFFER_SIZE = 1 << 20; //Bytes of a journal file read at a time when checking it, a whole number of records
+	private static final int STAGING_SIZE = 1 << 18; //Ints of records gathered before they are handed to the writer thread, a whole number of records
+	private static final int NUM_STAGING_BUFFERS = 4; //Buffers passed back and forth, which bounds how far the count can get ahead of the writer
+	private static final IntBuffer ROUND_END = IntBuffer.allocate(0); //Handed to the writer after the buffer holding a round's seal record
+	private static final IntBuffer END = IntBuffer.allocate(0); //Handed to the writer after the last buffer
+
+	/*
+	 * Layout, with every number little endian:
+	 * 0  int   MAGIC
+	 * 4  int   VERSION
+	 * 8  int   RECORD_SIZE
+	 * 12 int   number of candidates
+	 * 16 int   number of ballots
+	 * 20 int   0
+	 * 24 long  fingerprint of the ballots, from BallotStore.getRankingsFingerprint
+	 * 32       zeros up to HEADER_SIZE
+	 * then     one 16 byte record per ballot transfer: int round (from 1), int ballot index, int from candidate id, int to candidate id or EXHAUSTED
+	 * and      after each round a seal record: int SEAL, int round, int number of transfers in the round, int 0,
+	 *          followed by the round's SHA-256 hash over the previous hash, the round's transfer records and its seal record.
+	 *          The hash before the first round is the SHA-256 hash of the header, so each round's hash covers everything before it.
+	 */
+
+	private Path file; //The journal file
+	private FileChannel channel; //The open journal file
+	private long writePosition; //Position in the file the writer thread writes at next, only used by the writer thread
+	private MessageDigest digest; //Hash of the round being written, only used by the writer thread
+	private BlockingQueue<IntBuffer> filledBuffers = new LinkedBlockingQueue<IntBuffer>(); //Records waiting to be hashed and written, in order, with ROUND_END after each round
+	private BlockingQueue<IntBuffer> freeBuffers = new ArrayBlockingQueue<IntBuffer>(NUM_STAGING_BUFFERS); //Buffers the writer is done with, ready to be filled again
+	private IntBuffer staging; //Buffer the count is filling with records
+	private ByteBuffer recordBytes = ByteBuffer.allocate(STAGING_SIZE * 4).order(ByteOrder.LITTLE_ENDIAN); //Records of a handed over buffer laid out as they are in the file, only used by the writer thread
+	private Thread writer; //Thread hashing the records and copying them into the file
+	private volatile IOException failure; //Why the writer stopped writing, null if it has not
+	private int round; //Round being written, 0 before the first round
+	private int roundTransfers; //Number of transfers written in the round so far
+
+	/**
+	 * Replays an audit journal against a fresh count. Arguments are the election's settings file and the journal file.
+	 * The hash chain of the journal is checked first, then the election is counted again with a new journal,
+	 * and every record of the two journals is compared. The first difference is printed, and the exit code is 1 if there is one.
+	 * @param args the settings file and journal file
+	 * @throws IOException if a file could not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2)
+		{
+			System.out.println("Usage: AuditJournal <settings file> <journal file>");
+			return;
+		}
+		ElectionSettings settings = new ElectionSettings(new File(args[0]));
+		Path journalFile = Paths.get(args[1]);
+		String chainProblem = verifyChain(journalFile);
+		if(chainProblem != null)
+		{
+			System.out.println("The journal's hash chain is broken: " + chainProblem);
+			System.exit(1);
+		}
+
+		BallotStore ballotStore = new BallotStore();
+		ArrayList<Candidate> candidateList = PerformElection.readCandidates(settings.getCandidatesFile(), ballotStore);
+		BallotValidator validator = PerformElection.createValidator(settings);
+		PerformElection.readBallots(settings.getBallotsFile(), new CandidateNameTable(candidateList), candidateList.size(),
+				Runtime.getRuntime().availableProcessors(), ballotStore, validator);
+		validator.checkPolicy();
+		int numOfSeats = settings.getNumSeats();
+		Election election = new Election(ballotStore, numOfSeats);
+		int voteThreshold = PerformElection.getVoteThreshold(election.getNumBallots(), numOfSeats);
+
+		Path replayFile = Files.createTempFile("replay", ".journal");
+		int exitStatus = 0; //Set once the replay file is deleted, since System.exit would skip the finally block
+		try
+		{
+			try(AuditJournal replay = create(replayFile, ballotStore))
+			{
+				ballotStore.addTransferListener(replay);
+				PerformElection.performCount(election, numOfSeats, voteThreshold, List.of(replay));
+			}
+			String difference = compare(journalFile, replayFile);
+			if(difference != null)
+			{
+				System.out.println("The journal does not match a fresh count: " + difference);
+				exitStatus = 1;
+			}
+			else
+				System.out.println("The journal's hash chain is intact and every transfer matches a fresh count");
+		}
+		finally
+		{
+			Files.deleteIfExists(replayFile);
+		}
+		if(exitStatus != 0)
+			System.exit(exitStatus);
+	}
+
+	/**
+	 * Creates a journal file for a count of the given ballots, replacing any file already there. Transfers are then written by the ballot store.
+	 * @param file the journal file
+	 * @param ballotStore the store being counted, whose ballots are fingerprinted in the header
+	 * @return the journal
+	 * @throws IOException if the file could not be created
+	 */
+	public static AuditJournal create(Path file, BallotStore ballotStore) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(RECORD_SIZE);
+		header.putInt(ballotStore.getNumCandidates());
+		header.putInt(ballotStore.getNumBallots());
+		header.putInt(0);
+		header.putLong(ballotStore.getRankingsFingerprint());
+		header.clear();
+		return new AuditJournal(file, header);
+	}
+
+	/**
+	 * Constructor creates the journal file, writes its header and starts the writer thread.
+	 * The count only copies each record into an array of ints. Laying the records out in bytes, hashing them and writing them to the file
+	 * happens on the writer thread, so on a machine with a spare processor it takes no time away from the count.
+	 * @param file the journal file
+	 * @param header the header of the file
+	 * @throws IOException if the file could not be created
+	 */
+	private AuditJournal(Path file, ByteBuffer header) throws IOException {
+		this.file = file;
+		digest = newDigest();
+		byte[] headerHash = digest.digest(header.array());
+		digest.update(headerHash); //The first round's hash starts from the header's
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		while(header.hasRemaining())
+		{
+			channel.write(header);
+		}
+		writePosition = HEADER_SIZE;
+		for(int i = 0; i < NUM_STAGING_BUFFERS; i++)
+		{
+			freeBuffers.add(IntBuffer.allocate(STAGING_SIZE));
+		}
+		staging = freeBuffers.remove();
+		round = 0;
+		writer = new Thread(this::write, "audit journal writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Starts the next round. Transfers written after this belong to it until it is sealed by endRound.
+	 */
+	public void startRound() {
+		round++;
+		roundTransfers = 0;
+	}
+
+	/**
+	 * Writes one record for every ballot in a transfer. This is called by the ballot store after the ballots have been moved on.
+	 * @param fromId the id of the candidate the ballots left
+	 * @param pile the pile the ballots left
+	 * @param position the position in the pile of the first ballot moved
+	 * @param numMoved the number of ballots moved
+	 * @param destinations the id of the candidate each ballot moved to, or -1 if it was exhausted, in the same order as the pile
+	 */
+	public void recordTransfers(int fromId, BallotPile pile, int position, int numMoved, int[] destinations) {
+		int i = 0;
+		while(i < numMoved)
+		{
+			if(!staging.hasRemaining())
+				handOver();
+			int[] ints = staging.array();
+			int next = staging.position();
+			int end = Math.min(numMoved, i + staging.remaining() / 4);
+			for(; i < end; i++)
+			{
+				ints[next++] = round;
+				ints[next++] = pile.get(position + i);
+				ints[next++] = fromId;
+				ints[next++] = destinations[i] >= 0 ? destinations[i] : EXHAUSTED;
+			}
+			staging.position(next);
+		}
+		roundTransfers += numMoved;
+	}
+
+	/**
+	 * Does nothing, since the journal only marks where rounds start and end
+	 */
+	public void endProcessWinners() {
+	}
+
+	/**
+	 * Seals the round with its hash, which chains on from the hash of the round before
+	 * @param seatWon if processWinners gave out a seat this round
+	 */
+	public void endRound(boolean seatWon) {
+		putRecord(SEAL, round, roundTransfers, 0);
+		handOver();
+		filledBuffers.add(ROUND_END);
+	}
+
+	/**
+	 * Writes everything to disk and closes the file
+	 * @throws IOException if the file could not be written
+	 */
+	public void close() throws IOException {
+		if(channel == null)
+			return;
+		if(staging.position() > 0)
+			handOver(); //Records of a round that was never sealed, which the chain check reports
+		filledBuffers.add(END);
+		try
+		{
+			writer.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing " + file);
+		}
+		try
+		{
+			if(failure != null)
+				throw new IOException("Could not write " + file, failure);
+			channel.force(true);
+		}
+		finally
+		{
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Checks every round's hash in a journal file
+	 * @param file the journal file
+	 * @return what is wrong with the chain, or null if every round's hash matches
+	 * @throws IOException if the file could not be read
+	 */
+	public static String verifyChain(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			RecordReader reader = new RecordReader(channel);
+			ByteBuffer header = reader.readHeader();
+			if(header == null)
+				return file + " is not an audit journal";
+			MessageDigest digest = newDigest();
+			byte[] lastHash = digest.digest(header.array());
+			digest.update(lastHash);
+			boolean sealed = true; //If every record read so far belongs to a sealed round
+			ByteBuffer record;
+			while((record = reader.next()) != null)
+			{
+				digest.update(record.duplicate());
+				sealed = false;
+				if(record.getInt(0) != SEAL)
+					continue;
+				int sealedRound = record.getInt(4); //Read now, since the hash records are read into the same buffer
+				lastHash = digest.digest();
+				ByteBuffer storedHash = ByteBuffer.allocate(HASH_SIZE);
+				for(int i = 0; i < HASH_SIZE / RECORD_SIZE; i++)
+				{
+					ByteBuffer hashRecord = reader.next();
+					if(hashRecord == null)
+						return "round " + sealedRound + " has no hash";
+					storedHash.put(hashRecord);
+				}
+				if(!Arrays.equals(storedHash.array(), lastHash))
+					return "the hash of round " + sealedRound + " does not match its records";
+				digest.update(lastHash);
+				sealed = true;
+			}
+			if(reader.isTruncated())
+				return file + " ends part way through a record";
+			return sealed ? null : file + " has records after its last sealed round";
+		}
+	}
+
+	/**
+	 * Compares two journals record by record
+	 * @param expectedFile the journal being checked
+	 * @param actualFile the journal of a fresh count
+	 * @return the first difference, or null if they are the same
+	 * @throws IOException if a file could not be read
+	 */
+	public static String compare(Path expectedFile, Path actualFile) throws IOException {
+		try(FileChannel expectedChannel = FileChannel.open(expectedFile, StandardOpenOption.READ);
+				FileChannel actualChannel = FileChannel.open(actualFile, StandardOpenOption.READ))
+		{
+			RecordReader expected = new RecordReader(expectedChannel);
+			RecordReader actual = new RecordReader(actualChannel);
+			ByteBuffer expectedHeader = expected.readHeader();
+			ByteBuffer actualHeader = actual.readHeader();
+			if(expectedHeader == null || !expectedHeader.equals(actualHeader))
+				return "the journal is for different ballots or candidates";
+			for(long recordNumber = 0; ; recordNumber++)
+			{
+				ByteBuffer expectedRecord = expected.next();
+				ByteBuffer actualRecord = actual.next();
+				if(expectedRecord == null || actualRecord == null)
+				{
+					if(expectedRecord == actualRecord)
+						return null;
+					return expectedRecord == null ? "the journal ends before the fresh count does, at record " + recordNumber
+							: "the journal has more records than the fresh count, from record " + recordNumber;
+				}
+				if(!expectedRecord.equals(actualRecord))
+					return String.format("record %d is %s in the journal and %s in the fresh count", recordNumber, describe(expectedRecord), describe(actualRecord));
+			}
+		}
+	}
+
+	/**
+	 * Describes a record for a mismatch message
+	 * @param record the record
+	 * @return the description
+	 */
+	private static String describe(ByteBuffer record) {
+		if(record.getInt(0) == SEAL)
+			return String.format("the seal of round %d after %d transfers", record.getInt(4), record.getInt(8));
+		if(record.getInt(0) > 0)
+			return String.format("round %d ballot %d from candidate %d to %s", record.getInt(0), record.getInt(4), record.getInt(8),
+					record.getInt(12) == EXHAUSTED ? "exhausted" : "candidate " + record.getInt(12));
+		return "part of a round's hash";
+	}
+
+	/**
+	 * Writes one record at the end of the journal
+	 * @param a the first int
+	 * @param b the second int
+	 * @param c the third int
+	 * @param d the fourth int
+	 */
+	private void putRecord(int a, int b, int c, int d) {
+		if(!staging.hasRemaining())
+			handOver();
+		staging.put(a);
+		staging.put(b);
+		staging.put(c);
+		staging.put(d);
+	}
+
+	/**
+	 * Hands the staging buffer to the writer and waits for a free one to fill next
+	 */
+	private void handOver() {
+		staging.flip();
+		filledBuffers.add(staging);
+		try
+		{
+			staging = freeBuffers.take();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing " + file));
+		}
+	}
+
+	/**
+	 * Hashes every buffer handed over and writes it to the file, sealing each round with its hash, until END is handed over.
+	 * If writing fails the buffers are still given back, so the count is never left waiting, and close reports the failure.
+	 */
+	private void write() {
+		try
+		{
+			while(true)
+			{
+				IntBuffer buffer = filledBuffers.take();
+				if(buffer == END)
+					return;
+				if(failure != null)
+				{
+					if(buffer != ROUND_END)
+						freeBuffers.add(buffer.clear());
+					continue;
+				}
+				try
+				{
+					if(buffer == ROUND_END)
+					{
+						byte[] hash = digest.digest();
+						writeBytes(ByteBuffer.wrap(hash)); //Not part of the next round's hash, which starts from the hash itself
+						digest.update(hash);
+						continue;
+					}
+					recordBytes.clear();
+					recordBytes.asIntBuffer().put(buffer);
+					recordBytes.limit(buffer.limit() * 4);
+					digest.update(recordBytes.array(), 0, recordBytes.limit());
+					writeBytes(recordBytes);
+				}
+				catch(IOException e)
+				{
+					failure = e;
+				}
+				if(buffer != ROUND_END)
+					freeBuffers.add(buffer.clear());
+			}
+		}
+		catch(InterruptedException e)
+		{
+			return; //Nothing interrupts the writer, which is only stopped by END
+		}
+	}
+
+	/**
+	 * Writes bytes onto the end of the file. The file is only ever as long as what has been written, so close has nothing to cut off
+	 * @param bytes the bytes to write, from their position to their limit
+	 * @throws IOException if the bytes could not be written
+	 */
+	private void writeBytes(ByteBuffer bytes) throws IOException {
+		while(bytes.hasRemaining())
+		{
+			writePosition += channel.write(bytes, writePosition);
+		}
+	}
+
+	/**
+	 * Creates a SHA-256 digest
+	 * @return the digest
+	 */
+	private static MessageDigest newDigest() {
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is always available", e);
+		}
+	}
+
+	/**
+	 * Reads the records of a journal file one at a time, a buffer's worth of records at a time.
+	 * Nothing is memory mapped, so the file can be deleted as soon as its channel is closed, even on Windows.
+	 */
+	private static class RecordReader {
+
+		private FileChannel channel; //The open journal file
+		private long size; //Size of the file
+		private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN).limit(0); //Records read from the file and not yet returned
+		private long readPosition; //Position in the file after the records in the buffer
+		private ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN); //The record read last
+
+		/**
+		 * Constructor starts reading a journal file
+		 * @param channel the open journal file
+		 * @throws IOException if the size of the file could not be read
+		 */
+		private RecordReader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			size = channel.size();
+		}
+
+		/**
+		 * Reads the header
+		 * @return the header, or null if the file does not start with an audit journal header
+		 * @throws IOException if the file could not be read
+		 */
+		private ByteBuffer readHeader() throws IOException {
+			if(size < HEADER_SIZE)
+				return null;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0);
+			header.clear();
+			if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE)
+				return null;
+			readPosition = HEADER_SIZE;
+			return header;
+		}
+
+		/**
+		 * Reads the next record, which is reused by the next call
+		 * @return the record, or null at the end of the file
+		 * @throws IOException if the file could not be read
+		 */
+		private ByteBuffer next() throws IOException {
+			if(buffer.remaining() < RECORD_SIZE)
+			{
+				if(readPosition + RECORD_SIZE > size)
+					return null;
+				buffer.clear();
+				buffer.limit((int)(Math.min(READ_BUFFER_SIZE, size - readPosition) / RECORD_SIZE * RECORD_SIZE));
+				while(buffer.hasRemaining())
+				{
+					int numRead = channel.read(buffer, readPosition);
+					if(numRead < 0)
+						throw new EOFException("The journal got shorter while it was being read");
+					readPosition += numRead;
+				}
+				buffer.flip();
+			}
+			record.clear();
+			buffer.get(record.array());
+			return record;
+		}
+
+		/**
+		 * Checks if the file has bytes left over after its last whole record
+		 * @return if the file ends part way through a record
+		 */
+		private boolean isTruncated() {
+			return (size - HEADER_SIZE) % RECORD_SIZE != 0;
+		}
+
+	}
+
+}
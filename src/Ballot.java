@@ -1,97 +1,91 @@
 import java.util.ArrayList;
 
 public class Ballot {
-	
-	public static int numOfBallots = 0;
-	private ArrayList<Candidate> rankedVotes = new ArrayList<Candidate>(); //Ordered list of the ranked candidates from 1st to last
-	private int choice = 0; //Which of the ranked choices is this ballot currently on, this changes if the candidate before this choice were eliminated
-	private boolean isEliminated;
-	
+
+	private BallotStore ballotStore; //Store that holds the ranked choices and current choice of this ballot
+	private int index; //Index of this ballot in its store
+
+	/**
+	 * This constructor creates a view of a ballot that is already in a ballot store.
+	 * @param ballotStore the store that holds the ballot
+	 * @param index the index of the ballot in the store
+	 */
+	public Ballot(BallotStore ballotStore, int index) {
+		this.ballotStore = ballotStore;
+		this.index = index;
+	}
+
 	/**
-	 * This constructor takes an arraylist of type String as a parameter and creates a ballot with those candidates on it.
-	 * This arraylist should have the candidate names in ranked order from first choice to last choice.
-	 * @param inputVotes an ArrayList of type String with candidates listed in ranked order first to last
+	 * This constructor takes an arraylist of candidates as a parameter and creates a ballot with those candidates on it.
+	 * This arraylist should have the candidates in ranked order from first choice to last choice.
+	 * The ballot is added to the ballot store that the candidates belong to.
+	 * @param inputVotes an ArrayList of type Candidate with candidates listed in ranked order first to last
 	 */
 	public Ballot(ArrayList<Candidate> inputVotes) {
-		for(Candidate candidate : inputVotes)
-		{
-			rankedVotes.add(candidate);
-			candidate.incrementTotalVotes();
-		}
-		numOfBallots++;
-		isEliminated = false;
-		this.getCurrentCandidate().addBallot(this);
+		this(inputVotes.toArray(new Candidate[0]));
 	}
-	
+
 	/**
-	 * This constructor takes a list of type String as a parameter and creates a ballot with those candidates on it.
-	 * This list should have the candidate names in ranked order from first choice to last choice.
-	 * Any null values in the list will not be added, and will be skipped.
-	 * @param inputVotes an ArrayList of type String with candidates listed in ranked order first to last
+	 * This constructor takes an array of candidates as a parameter and creates a ballot with those candidates on it.
+	 * This array should have the candidates in ranked order from first choice to last choice.
+	 * Any null values in the array will not be added, and will be skipped.
+	 * The ballot is added to the ballot store that the candidates belong to.
+	 * @param inputVotes an array of type Candidate with candidates listed in ranked order first to last
 	 */
 	public Ballot(Candidate[] inputVotes) {
 		for(Candidate candidate : inputVotes)
 		{
-			if(candidate != null)
-			{
-				rankedVotes.add(candidate);
-				candidate.incrementTotalVotes();
-			}
+			if(candidate != null && ballotStore == null)
+				ballotStore = candidate.getBallotStore();
 		}
-		numOfBallots++;
-		isEliminated = false;
-		this.getCurrentCandidate().addBallot(this);
+		if(ballotStore == null)
+			throw new IllegalArgumentException("A ballot needs at least one candidate that belongs to a ballot store");
+
+		index = ballotStore.addBallot(inputVotes);
 	}
-	
+
 	/**
 	 * Gets which of the ranked choices the ballot currently counts towards
-	 * @return the index of the choice, going from 1 to number of choices
+	 * @return the index of the choice, going from 0 to number of choices - 1, or -1 if eliminated
 	 */
 	public int getCurrentChoice() {
-		return choice;
+		return ballotStore.getChoice(index);
 	}
-	
+
 	/**
 	 * This method checks if the ballot has been eliminated
 	 * @return if the ballot has been eliminated
 	 */
 	public boolean isEliminated() {
-		return isEliminated;
+		return ballotStore.isEliminated(index);
 	}
-	
+
 	/**
 	 * Eliminates this ballot
 	 */
 	public void eliminate() {
-		isEliminated = true;
-		choice = -1;
+		ballotStore.eliminateBallot(index);
 	}
-	
+
 	/**
-	 * This method will advance the ballots selected candidate to the next ranked candidate.
+	 * This method will advance the ballots selected candidate to the next ranked candidate that has not won or been eliminated.
 	 * If there are no more candidates, choice will be set to -1 and ballot will be marked as eliminated
 	 */
 	public void advanceChoice() {
-		choice++;
-		if(choice >= rankedVotes.size())
-		{
-			choice = -1;
-			eliminate(); //All candidates this person voted for have been eliminated, so ballot is eliminated.
-		}
-		else
-		{
-			this.getCurrentCandidate().addBallot(this);
-		}
+		ballotStore.advanceChoice(index);
 	}
-	
+
 	/**
-	 * This method will return the name of the candidate that is currently chosen.
-	 * @return The name of the candidate this ballot counts towards
+	 * This method will return the candidate that is currently chosen.
+	 * @return The candidate this ballot counts towards, or null if the ballot has been eliminated
 	 */
 	public Candidate getCurrentCandidate() {
-		return rankedVotes.get(getCurrentChoice());
+		int candidateId = ballotStore.getCurrentCandidateId(index);
+		if(candidateId < 0)
+			return null;
+		return ballotStore.getCandidate(candidateId);
 	}
-	
+
 	/**
 	 * This method gets the ranked candidate at the specified index (Directly from the candidate list).
 	 * If the index is greater than or equal to the list size, it will return an error message and null.
@@ -101,7 +95,7 @@ public class Ballot {
 	public Candidate getCandidate(int index) {
 		if(index < getBallotSize())
 		{
-			return rankedVotes.get(index);
+			return ballotStore.getCandidate(ballotStore.getRankedId(this.index, index));
 		}
 		else
 		{
@@ -109,13 +103,21 @@ public class Ballot {
 			return null;
 		}
 	}
-	
+
 	/**
 	 * This method returns the size of the ballot, i.e. the number of candidates on it.
 	 * @return the size of the ballot
 	 */
 	public int getBallotSize() {
-		return rankedVotes.size();
+		return ballotStore.getBallotSize(index);
 	}
-	
+
+	/**
+	 * Gets the index of this ballot in its ballot store
+	 * @return the index of the ballot
+	 */
+	public int getIndex() {
+		return index;
+	}
+
 }
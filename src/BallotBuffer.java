@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+public class BallotBuffer implements BallotSink {
+
+	private short[] rankings = new short[256]; //Ranked candidate ids of every ballot, packed one ballot after another
+	private int[] ends = new int[64]; //Where each ballot ends in rankings, ballot i starts where ballot i - 1 ends
+	private int[] totalVotes; //Number of ballots each candidate id shows up on
+	private int numOfBallots; //Number of ballots in the buffer
+	private int rankingsSize; //Number of used entries in rankings
+
+	/**
+	 * Constructor creates an empty buffer for ballots with the given number of candidates
+	 * @param numOfCandidates the number of candidate ids that can appear on the ballots
+	 */
+	public BallotBuffer(int numOfCandidates) {
+		totalVotes = new int[numOfCandidates];
+	}
+
+	/**
+	 * Constructor wraps packed ballots that have already been read, without copying them.
+	 * The buffer takes over the arrays and grows them if more ballots are added.
+	 * @param rankings the ranked candidate ids of every ballot, packed one ballot after another
+	 * @param ends where each ballot ends in rankings
+	 * @param totalVotes how many of the ballots each candidate id shows up on
+	 * @param numOfBallots the number of ballots in ends
+	 * @param rankingsSize the number of used entries in rankings
+	 */
+	public BallotBuffer(short[] rankings, int[] ends, int[] totalVotes, int numOfBallots, int rankingsSize) {
+		this.rankings = rankings.length > 0 ? rankings : new short[256];
+		this.ends = ends.length > 0 ? ends : new int[64];
+		this.totalVotes = totalVotes;
+		this.numOfBallots = numOfBallots;
+		this.rankingsSize = rankingsSize;
+	}
+
+	/**
+	 * Adds a ballot to the end of the buffer and counts it towards the total votes of every candidate on it.
+	 * @param candidateIds the ranked candidate ids
+	 * @param length how many of the ids in the array are on the ballot
+	 * @return the index of the new ballot within this buffer
+	 */
+	public int addBallot(int[] candidateIds, int length) {
+		if(numOfBallots == ends.length)
+			ends = Arrays.copyOf(ends, numOfBallots * 2);
+		if(rankingsSize + length > rankings.length)
+			rankings = Arrays.copyOf(rankings, Math.max(rankingsSize + length, rankings.length * 2));
+
+		for(int i = 0; i < length; i++)
+		{
+			rankings[rankingsSize++] = (short)candidateIds[i];
+			totalVotes[candidateIds[i]]++;
+		}
+		ends[numOfBallots] = rankingsSize;
+		return numOfBallots++;
+	}
+
+	/**
+	 * Adds every ballot in another buffer to the end of this buffer
+	 * @param buffer the ballots to add, which must use the same candidate ids
+	 */
+	public void addBallots(BallotBuffer buffer) {
+		if(numOfBallots + buffer.numOfBallots > ends.length)
+			ends = Arrays.copyOf(ends, Math.max(numOfBallots + buffer.numOfBallots, ends.length * 2));
+		if(rankingsSize + buffer.rankingsSize > rankings.length)
+			rankings = Arrays.copyOf(rankings, Math.max(rankingsSize + buffer.rankingsSize, rankings.length * 2));
+
+		System.arraycopy(buffer.rankings, 0, rankings, rankingsSize, buffer.rankingsSize);
+		for(int i = 0; i < buffer.numOfBallots; i++)
+		{
+			ends[numOfBallots + i] = rankingsSize + buffer.ends[i];
+		}
+		for(int id = 0; id < totalVotes.length; id++)
+		{
+			totalVotes[id] += buffer.totalVotes[id];
+		}
+		numOfBallots += buffer.numOfBallots;
+		rankingsSize += buffer.rankingsSize;
+	}
+
+	/**
+	 * Empties the buffer, keeping its arrays so that refilling it does not allocate
+	 */
+	public void clear() {
+		Arrays.fill(totalVotes, 0);
+		numOfBallots = 0;
+		rankingsSize = 0;
+	}
+
+	/**
+	 * Gets the number of ballots in the buffer
+	 * @return the number of ballots
+	 */
+	public int getNumBallots() {
+		return numOfBallots;
+	}
+
+	/**
+	 * Gets the number of ranked choices across all ballots in the buffer
+	 * @return the number of ranked choices
+	 */
+	public int getRankingsSize() {
+		return rankingsSize;
+	}
+
+	/**
+	 * Gets the packed rankings of the buffer. Only the first getRankingsSize() entries are used.
+	 * @return the packed rankings
+	 */
+	public short[] getRankings() {
+		return rankings;
+	}
+
+	/**
+	 * Gets where each ballot ends in the packed rankings. Only the first getNumBallots() entries are used.
+	 * @return the end of each ballot
+	 */
+	public int[] getEnds() {
+		return ends;
+	}
+
+	/**
+	 * Gets how many ballots in the buffer each candidate id shows up on
+	 * @return the total votes of each candidate id
+	 */
+	public int[] getTotalVotes() {
+		return totalVotes;
+	}
+
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+public class BallotPile {
+
+	private int[] ballots; //Indices of the ballots in this pile, in the order they were added
+	private int size; //Number of ballots in the pile
+
+	/**
+	 * Constructor creates an empty pile with a small starting capacity
+	 */
+	public BallotPile() {
+		ballots = new int[8];
+		size = 0;
+	}
+
+	/**
+	 * Constructor creates a pile holding the given ballot indices, in order
+	 * @param ballots the indices of the ballots, which the pile takes over
+	 * @param size the number of ballots in the array that are in the pile
+	 */
+	public BallotPile(int[] ballots, int size) {
+		this.ballots = ballots.length > 0 ? ballots : new int[8];
+		this.size = size;
+	}
+
+	/**
+	 * Adds a ballot index to the end of the pile
+	 * @param ballotIndex the index of the ballot in its ballot store
+	 */
+	public void add(int ballotIndex) {
+		if(size == ballots.length)
+		{
+			ballots = Arrays.copyOf(ballots, size * 2);
+		}
+		ballots[size++] = ballotIndex;
+	}
+
+	/**
+	 * Gets the ballot index at the given position in the pile
+	 * @param position the position in the pile, starting at 0 for the oldest ballot
+	 * @return the index of the ballot at that position
+	 */
+	public int get(int position) {
+		return ballots[position];
+	}
+
+	/**
+	 * Makes sure the pile can take the given number of extra ballots without growing again
+	 * @param numOfExtra the number of ballots about to be added
+	 */
+	public void reserve(int numOfExtra) {
+		if(size + numOfExtra > ballots.length)
+		{
+			ballots = Arrays.copyOf(ballots, Math.max(size + numOfExtra, ballots.length * 2));
+		}
+	}
+
+	/**
+	 * Grows the pile by the given number of places, to be filled with set before the pile is read.
+	 * @param numOfExtra the number of places to add
+	 * @return the position of the first new place
+	 */
+	public int extend(int numOfExtra) {
+		reserve(numOfExtra);
+		int start = size;
+		size += numOfExtra;
+		return start;
+	}
+
+	/**
+	 * Puts a ballot index at a position of the pile that was added by extend.
+	 * Different positions can be set by different threads at the same time.
+	 * @param position the position in the pile
+	 * @param ballotIndex the index of the ballot in its ballot store
+	 */
+	public void set(int position, int ballotIndex) {
+		ballots[position] = ballotIndex;
+	}
+
+	/**
+	 * Splits the pile in two. This pile keeps the ballots before the given position,
+	 * and every ballot from the position onwards is moved, in order, into the returned pile.
+	 * @param position the position of the first ballot to move
+	 * @return a pile holding the moved ballots
+	 */
+	public BallotPile split(int position) {
+		BallotPile tail = new BallotPile();
+		if(position < size)
+		{
+			tail.ballots = Arrays.copyOfRange(ballots, position, Math.max(size, position + 8));
+			tail.size = size - position;
+			size = position;
+		}
+		return tail;
+	}
+
+	/**
+	 * Drops every ballot from the given position onwards, keeping the ones before it
+	 * @param position the number of ballots to keep, which must not be more than the size of the pile
+	 */
+	public void truncate(int position) {
+		if(position > size)
+			throw new IndexOutOfBoundsException("Pile of " + size + " ballots cannot keep " + position);
+		size = position;
+	}
+
+	/**
+	 * Copies the ballot indices of the pile into a new array
+	 * @return the indices of the ballots in the pile, in order
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(ballots, size);
+	}
+
+	/**
+	 * Makes an independent copy of the pile
+	 * @return a pile holding the same ballots in the same order
+	 */
+	public BallotPile copy() {
+		BallotPile copy = new BallotPile();
+		copy.ballots = Arrays.copyOf(ballots, Math.max(size, 8));
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Empties the pile, keeping its array so that refilling it does not allocate
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of ballots in the pile
+	 * @return the number of ballots in the pile
+	 */
+	public int size() {
+		return size;
+	}
+
+}
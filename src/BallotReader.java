@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class BallotReader {
+
+	private static final long MAP_WINDOW_SIZE = 1L << 26; //How much of the file is memory mapped at a time
+
+	private CandidateNameTable nameTable; //Table used to turn names into candidate ids
+	private BallotValidator validator; //Checks each ballot for unknown names, repeated candidates and no choices
+	private byte[] token = new byte[64]; //Bytes of the name currently being read
+	private int tokenLength; //Number of bytes in the current name
+	private int tokenHash; //Running hash of the current name
+	private boolean pendingComma; //If the last byte was a comma that may be the start of a ", " separator
+	private boolean lineStarted; //If any byte of the current line has been read
+	private boolean skippingHeader; //If the instruction line at the top of the file is still being skipped
+	private int[] rankedIds = new int[16]; //Candidate ids of the ballot currently being read
+	private int numRanked; //Number of candidate ids on the current ballot
+	private int numOfBallots; //Number of ballots given to the sink so far
+
+	/**
+	 * Constructor creates a reader that resolves names through the given table, and leaves unknown names and repeated candidates off the ballots
+	 * @param nameTable the table of candidate names
+	 */
+	public BallotReader(CandidateNameTable nameTable) {
+		this(nameTable, new BallotValidator(BallotValidator.SKIP));
+	}
+
+	/**
+	 * Constructor creates a reader that resolves names through the given table and checks every ballot with the given validator
+	 * @param nameTable the table of candidate names
+	 * @param validator the validator, which must only be used by this reader while it reads
+	 */
+	public BallotReader(CandidateNameTable nameTable, BallotValidator validator) {
+		this.nameTable = nameTable;
+		this.validator = validator;
+	}
+
+	/**
+	 * Reads every ballot in a ballots file and gives it to the sink in the order they appear.
+	 * The first line of the file holds instructions and is skipped. Each other line is a ballot with candidate names
+	 * separated by a comma and space, and blank lines are ignored.
+	 * Every ballot is checked by the reader's validator before it is sent, and may be changed or left out by its policy.
+	 * A gzip compressed file is decompressed on another thread while it is read.
+	 * @param ballotsFile the path of the ballots file
+	 * @param sink where the ballots are sent
+	 * @return the number of ballots read
+	 * @throws IOException if the file could not be read
+	 */
+	public int read(Path ballotsFile, BallotSink sink) throws IOException {
+		if(GzipInput.isGzip(ballotsFile))
+		{
+			try(GzipInput input = new GzipInput(ballotsFile))
+			{
+				return read(input, sink);
+			}
+		}
+		try(FileChannel channel = FileChannel.open(ballotsFile, StandardOpenOption.READ))
+		{
+			return read(channel, 0, channel.size(), true, sink);
+		}
+	}
+
+	/**
+	 * Reads the ballots in part of a ballots file and gives them to the sink in the order they appear.
+	 * The range should start at the beginning of the file or just after a new line, and end at the end of the file or just after a new line.
+	 * @param channel the open ballots file
+	 * @param start the position of the first byte to read
+	 * @param end the position after the last byte to read
+	 * @param skipHeader if the first line of the range is an instruction line that should be skipped
+	 * @param sink where the ballots are sent
+	 * @return the number of ballots read
+	 * @throws IOException if the file could not be read
+	 */
+	public int read(FileChannel channel, long start, long end, boolean skipHeader, BallotSink sink) throws IOException {
+		reset(skipHeader);
+		for(long position = start; position < end; position += MAP_WINDOW_SIZE)
+		{
+			parse(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, end - position)), sink);
+		}
+		finish(sink);
+		return numOfBallots;
+	}
+
+	/**
+	 * Reads every ballot in a decompressing ballots file and gives it to the sink in the order they appear.
+	 * Each buffer is read as soon as it is decompressed, while the next one is being decompressed.
+	 * @param input the decompressing ballots file, whose first line is an instruction line
+	 * @param sink where the ballots are sent
+	 * @return the number of ballots read
+	 * @throws IOException if the file could not be read or decompressed
+	 */
+	public int read(GzipInput input, BallotSink sink) throws IOException {
+		reset(true);
+		ByteBuffer buffer;
+		while((buffer = input.take()) != null)
+		{
+			parse(buffer, sink);
+			input.release(buffer);
+		}
+		finish(sink);
+		return numOfBallots;
+	}
+
+	/**
+	 * Clears the state of the reader so that a new file can be read
+	 * @param skipHeader if the first line read should be skipped as an instruction line
+	 */
+	private void reset(boolean skipHeader) {
+		tokenLength = 0;
+		tokenHash = CandidateNameTable.EMPTY_HASH;
+		pendingComma = false;
+		lineStarted = false;
+		skippingHeader = skipHeader;
+		numRanked = 0;
+		numOfBallots = 0;
+	}
+
+	/**
+	 * Reads every byte remaining in the buffer. A ballot may be split across buffers, in which case the rest of it is read from the next buffer.
+	 * @param buffer the bytes to read
+	 * @param sink where finished ballots are sent
+	 */
+	private void parse(ByteBuffer buffer, BallotSink sink) {
+		while(buffer.hasRemaining())
+		{
+			byte b = buffer.get();
+			if(skippingHeader)
+			{
+				if(b == '\n')
+					skippingHeader = false;
+			}
+			else if(b == '\n')
+			{
+				endLine(sink);
+			}
+			else if(pendingComma)
+			{
+				pendingComma = false;
+				if(b == ' ')
+				{
+					endToken(); //", " separates two names
+				}
+				else
+				{
+					appendToToken((byte)',');
+					if(b == ',')
+						pendingComma = true;
+					else
+						appendToToken(b);
+				}
+			}
+			else if(b == ',')
+			{
+				pendingComma = true;
+				lineStarted = true;
+			}
+			else
+			{
+				appendToToken(b);
+			}
+		}
+	}
+
+	/**
+	 * Sends the last ballot to the sink if the file did not end with a new line
+	 * @param sink where the ballot is sent
+	 */
+	private void finish(BallotSink sink) {
+		if(!skippingHeader)
+			endLine(sink);
+	}
+
+	/**
+	 * Adds a byte to the name currently being read
+	 * @param b the byte to add
+	 */
+	private void appendToToken(byte b) {
+		if(tokenLength == token.length)
+			token = Arrays.copyOf(token, tokenLength * 2);
+		token[tokenLength++] = b;
+		tokenHash = CandidateNameTable.hash(tokenHash, b);
+		lineStarted = true;
+	}
+
+	/**
+	 * Looks up the name that was just read and adds its candidate to the current ballot
+	 */
+	private void endToken() {
+		int candidateId = nameTable.lookup(token, tokenLength, tokenHash);
+		if(candidateId < 0)
+		{
+			validator.unknownName(token, tokenLength, numRanked); //Reported once for the whole file instead of for every ballot
+		}
+		else
+		{
+			if(numRanked == rankedIds.length)
+				rankedIds = Arrays.copyOf(rankedIds, numRanked * 2);
+			rankedIds[numRanked++] = candidateId;
+		}
+		tokenLength = 0;
+		tokenHash = CandidateNameTable.EMPTY_HASH;
+	}
+
+	/**
+	 * Finishes the current line and sends its ballot to the sink once it has been checked, unless the line was blank
+	 * @param sink where the ballot is sent
+	 */
+	private void endLine(BallotSink sink) {
+		if(pendingComma)
+		{
+			appendToToken((byte)',');
+			pendingComma = false;
+		}
+		if(tokenLength > 0 && token[tokenLength - 1] == '\r') //Windows line ending
+		{
+			tokenLength--;
+			tokenHash = CandidateNameTable.hash(token, tokenLength);
+			if(tokenLength == 0 && numRanked == 0)
+				lineStarted = false;
+		}
+		if(lineStarted)
+		{
+			endToken();
+			int length = validator.check(rankedIds, numRanked);
+			if(length >= 0)
+			{
+				sink.addBallot(rankedIds, length);
+				numOfBallots++;
+			}
+		}
+		numRanked = 0;
+		lineStarted = false;
+	}
+
+}
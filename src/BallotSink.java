@@ -0,0 +1,19 @@
+public interface BallotSink {
+
+	/**
+	 * Adds a ballot with the given ranked candidate ids, from first choice to last choice.
+	 * The array may be reused by the caller once this method returns.
+	 * @param candidateIds the ranked candidate ids
+	 * @param length how many of the ids in the array are on the ballot
+	 * @return the index of the new ballot
+	 */
+	public int addBallot(int[] candidateIds, int length);
+
+	/**
+	 * Adds every ballot in a buffer, keeping the order they have in the buffer.
+	 * The total votes counted by the buffer are used instead of counting each ballot again.
+	 * @param buffer the ballots to add
+	 */
+	public void addBallots(BallotBuffer buffer);
+
+}
@@ -0,0 +1,633 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class BallotStore implements BallotSink {
+
+	private static final int PARALLEL_TRANSFER_SIZE = 1 << 16; //Fewest ballots a transfer moves before it is split across threads
+	private static final int MIN_TRANSFER_RANGE = 1 << 14; //Fewest ballots in each range of a parallel transfer
+
+	private ArrayList<Candidate> candidateList = new ArrayList<Candidate>(); //Candidates in the order of their ids
+	private short[] rankings; //Ranked candidate ids of every ballot, packed one ballot after another
+	private int[] offsets; //Where each ballot starts in rankings, offsets[i + 1] is where ballot i ends
+	private short[] choices; //Which ranked choice each ballot is currently on, or -1 if the ballot has been eliminated
+	private int numOfBallots; //Number of ballots in the store
+	private int rankingsSize; //Number of used entries in rankings
+	private boolean sharesRankings; //If rankings belongs to the store this store was copied from, so it must be copied before it is written to
+	private long numTransferred; //Number of times a ballot has been moved on from a candidate's pile
+	private int numExhausted; //Number of ballots eliminated because none of their remaining candidates are continuing
+	private long[] continuing = new long[1]; //One bit per candidate id, set while the candidate can still receive ballots
+	private int[] transferDestinations = new int[0]; //Scratch space for the candidate each transferred ballot moves to
+	private int[] transferCounts = new int[0]; //Scratch space for the number of ballots each candidate receives in a transfer
+	private ArrayList<TransferListener> transferListeners = new ArrayList<TransferListener>(); //Told about every transfer, such as the audit journal and checkpoints
+
+	/**
+	 * Constructor creates an empty ballot store with a small starting capacity
+	 */
+	public BallotStore() {
+		this(16, 64);
+	}
+
+	/**
+	 * Constructor creates an empty ballot store sized for the expected number of ballots and ranked choices.
+	 * The store will still grow past these sizes if needed.
+	 * @param expectedBallots the number of ballots expected to be added
+	 * @param expectedRankings the number of ranked choices expected across all ballots
+	 */
+	public BallotStore(int expectedBallots, int expectedRankings) {
+		rankings = new short[Math.max(expectedRankings, 1)];
+		offsets = new int[Math.max(expectedBallots, 1) + 1];
+		choices = new short[Math.max(expectedBallots, 1)];
+		numOfBallots = 0;
+		rankingsSize = 0;
+	}
+
+	/**
+	 * Adds a candidate to the store and gives them the next candidate id
+	 * @param candidate the candidate being added
+	 * @return the id given to the candidate
+	 */
+	public int addCandidate(Candidate candidate) {
+		if(candidateList.size() > Short.MAX_VALUE)
+			throw new IllegalStateException("A ballot store can hold at most " + (Short.MAX_VALUE + 1) + " candidates");
+
+		int id = candidateList.size();
+		candidateList.add(candidate);
+		candidate.setBallotStore(this, id);
+		if((id >> 6) >= continuing.length)
+			continuing = Arrays.copyOf(continuing, continuing.length * 2);
+		setContinuing(id, true);
+		return id;
+	}
+
+	/**
+	 * Checks if a candidate can still receive ballots, meaning they have not won or been eliminated
+	 * @param id the id of the candidate
+	 * @return if the candidate is continuing
+	 */
+	public boolean isContinuing(int id) {
+		return (continuing[id >> 6] & (1L << id)) != 0;
+	}
+
+	/**
+	 * Sets if a candidate can still receive ballots. Ballots that are advanced skip over candidates that are not continuing.
+	 * @param id the id of the candidate
+	 * @param isContinuing if the candidate is continuing
+	 */
+	public void setContinuing(int id, boolean isContinuing) {
+		if(isContinuing)
+			continuing[id >> 6] |= 1L << id;
+		else
+			continuing[id >> 6] &= ~(1L << id);
+	}
+
+	/**
+	 * Gets the candidate with the given id
+	 * @param id the id of the candidate
+	 * @return the candidate with that id
+	 */
+	public Candidate getCandidate(int id) {
+		return candidateList.get(id);
+	}
+
+	/**
+	 * Gets the number of candidates in the store
+	 * @return the number of candidates
+	 */
+	public int getNumCandidates() {
+		return candidateList.size();
+	}
+
+	/**
+	 * Gets a copy of the list of candidates, in the order of their ids
+	 * @return the list of candidates
+	 */
+	public ArrayList<Candidate> getCandidateList() {
+		return new ArrayList<>(candidateList);
+	}
+
+	/**
+	 * Adds a ballot with the given ranked candidate ids, from first choice to last choice.
+	 * Every ranked candidate has their total votes incremented, and the ballot is given to its first continuing choice.
+	 * A ballot with no continuing candidates is stored as already eliminated.
+	 * @param candidateIds the ranked candidate ids
+	 * @param length how many of the ids in the array are on the ballot
+	 * @return the index of the new ballot
+	 */
+	public int addBallot(int[] candidateIds, int length) {
+		ensureBallotCapacity(numOfBallots + 1);
+		ensureRankingCapacity(rankingsSize + length);
+
+		for(int i = 0; i < length; i++)
+		{
+			rankings[rankingsSize++] = (short)candidateIds[i];
+			candidateList.get(candidateIds[i]).incrementTotalVotes();
+		}
+
+		int index = numOfBallots++;
+		offsets[numOfBallots] = rankingsSize;
+		choices[index] = -1; //Advancing from before the first choice finds the first continuing candidate
+		advanceChoice(index);
+
+		return index;
+	}
+
+	/**
+	 * Adds a ballot with the given ranked candidates, from first choice to last choice.
+	 * Any null values in the array will be skipped.
+	 * @param inputVotes the ranked candidates, which must all belong to this store
+	 * @return the index of the new ballot
+	 */
+	public int addBallot(Candidate[] inputVotes) {
+		int[] candidateIds = new int[inputVotes.length];
+		int length = 0;
+		for(Candidate candidate : inputVotes)
+		{
+			if(candidate != null)
+				candidateIds[length++] = candidate.getId();
+		}
+		return addBallot(candidateIds, length);
+	}
+
+	/**
+	 * Adds every ballot in a buffer to the end of the store, keeping the order they have in the buffer.
+	 * The total votes counted by the buffer are added to each candidate in one step, and each ballot is given to its first continuing choice.
+	 * @param buffer the ballots to add, which must use the candidate ids of this store
+	 */
+	public void addBallots(BallotBuffer buffer) {
+		int bufferBallots = buffer.getNumBallots();
+		ensureBallotCapacity(numOfBallots + bufferBallots);
+		ensureRankingCapacity(rankingsSize + buffer.getRankingsSize());
+
+		int base = rankingsSize;
+		System.arraycopy(buffer.getRankings(), 0, rankings, base, buffer.getRankingsSize());
+		rankingsSize += buffer.getRankingsSize();
+
+		int[] ends = buffer.getEnds();
+		for(int i = 0; i < bufferBallots; i++)
+		{
+			int index = numOfBallots++;
+			offsets[numOfBallots] = base + ends[i];
+			choices[index] = -1; //Advancing from before the first choice finds the first continuing candidate
+			advanceChoice(index);
+		}
+
+		int[] bufferTotals = buffer.getTotalVotes();
+		for(int id = 0; id < bufferTotals.length; id++)
+		{
+			Candidate candidate = candidateList.get(id);
+			candidate.setTotalVotes(candidate.getTotalVotes() + bufferTotals[id]);
+		}
+	}
+
+	/**
+	 * Makes an independent copy of the count state of the store, with a copy of every candidate, pile and current choice.
+	 * Counting the copy leaves this store as it was, so a store that is still taking ballots, or that many counts start from, can be counted at any time.
+	 * The rankings never change once added, so the copy shares them with this store instead of copying them,
+	 * and only copies them if ballots are ever added to the copy.
+	 * @return the copy of the store
+	 */
+	public BallotStore copy() {
+		BallotStore copy = new BallotStore(1, 1);
+		for(Candidate candidate : candidateList)
+		{
+			copy.addCandidate(candidate.copy());
+		}
+		copy.rankings = rankings;
+		copy.offsets = offsets;
+		copy.sharesRankings = true;
+		copy.choices = Arrays.copyOf(choices, numOfBallots); //Adding a ballot to the copy grows this, which also gives it its own offsets
+		copy.numOfBallots = numOfBallots;
+		copy.rankingsSize = rankingsSize;
+		copy.numTransferred = numTransferred;
+		copy.numExhausted = numExhausted;
+		copy.continuing = continuing.clone();
+		return copy;
+	}
+
+	/**
+	 * Makes a copy of the store in the same way as copy, but as if some candidates had withdrawn before any ballots were cast.
+	 * Every ballot is given again, in order, to its first candidate that has not withdrawn, so the piles are the same as
+	 * if the withdrawn candidates had never been on the ballots. This store must not have been counted yet.
+	 * @param withdrawnIds the ids of the withdrawn candidates
+	 * @return the copy of the store
+	 */
+	public BallotStore copyWithdrawing(int[] withdrawnIds) {
+		BallotStore copy = copy();
+		if(withdrawnIds.length == 0)
+			return copy;
+
+		for(int id : withdrawnIds)
+		{
+			copy.setContinuing(id, false);
+		}
+		for(Candidate candidate : copy.candidateList)
+		{
+			candidate.setBallotIndices(new int[0]);
+		}
+		copy.numExhausted = 0;
+		for(int index = 0; index < numOfBallots; index++)
+		{
+			copy.choices[index] = -1; //Advancing from before the first choice finds the first continuing candidate
+			copy.advanceChoice(index);
+		}
+		return copy;
+	}
+
+	/**
+	 * Removes every ballot from the store and puts every candidate back in the running with no votes, ready to be filled and counted again.
+	 * The store keeps its arrays and the candidates keep their piles, so a store that is refilled many times only allocates while it grows.
+	 * Candidates are taken out of any ranking they were in, so a new Election has to be made for the next count.
+	 */
+	public void clear() {
+		for(Candidate candidate : candidateList)
+		{
+			candidate.setRanking(null);
+			candidate.clearBallots();
+			setContinuing(candidate.getId(), true);
+		}
+		if(sharesRankings) //The rankings and offsets belong to the store this was copied from, which must not be written over
+		{
+			sharesRankings = false;
+			rankings = new short[rankings.length];
+			offsets = new int[offsets.length];
+		}
+		numOfBallots = 0;
+		rankingsSize = 0;
+		numTransferred = 0;
+		numExhausted = 0;
+	}
+
+	/**
+	 * Gets a fingerprint of every ballot's ranking, used to check that a saved count belongs to the same ballots
+	 * @return a hash of the rankings and where each ballot starts
+	 */
+	public long getRankingsFingerprint() {
+		long fingerprint = numOfBallots * 31L + rankingsSize;
+		for(int i = 0; i < rankingsSize; i++)
+		{
+			fingerprint = fingerprint * 1000003 + rankings[i];
+		}
+		for(int i = 1; i <= numOfBallots; i++)
+		{
+			fingerprint = fingerprint * 1000003 + offsets[i];
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Copies the current choice of every ballot, for saving a count part way through
+	 * @return the current choice of each ballot, -1 for eliminated ballots
+	 */
+	public short[] copyChoices() {
+		return Arrays.copyOf(choices, numOfBallots);
+	}
+
+	/**
+	 * Copies the continuing bits of every candidate, for saving a count part way through
+	 * @return one bit per candidate id, set while the candidate can still receive ballots
+	 */
+	public long[] copyContinuing() {
+		return continuing.clone();
+	}
+
+	/**
+	 * Restores the cursors and counters of a count that was saved part way through. The candidates' piles are restored separately.
+	 * @param savedChoices the current choice of each ballot, as returned by copyChoices
+	 * @param savedContinuing the continuing bits, as returned by copyContinuing
+	 * @param savedTransferred the number of ballot transfers made so far
+	 * @param savedExhausted the number of exhausted ballots so far
+	 */
+	public void restoreCount(short[] savedChoices, long[] savedContinuing, long savedTransferred, int savedExhausted) {
+		if(savedChoices.length != numOfBallots)
+			throw new IllegalArgumentException("Saved count has " + savedChoices.length + " ballots, but the store has " + numOfBallots);
+		System.arraycopy(savedChoices, 0, choices, 0, numOfBallots);
+		continuing = Arrays.copyOf(savedContinuing, Math.max(savedContinuing.length, continuing.length));
+		numTransferred = savedTransferred;
+		numExhausted = savedExhausted;
+	}
+
+	/**
+	 * Restores the continuing bits and counters of a count that was saved part way through, leaving every ballot's choice as it is.
+	 * Used with setChoice when a saved count is rebuilt one round at a time.
+	 * @param savedContinuing the continuing bits, as returned by copyContinuing
+	 * @param savedTransferred the number of ballot transfers made so far
+	 * @param savedExhausted the number of exhausted ballots so far
+	 */
+	public void restoreCounters(long[] savedContinuing, long savedTransferred, int savedExhausted) {
+		continuing = Arrays.copyOf(savedContinuing, Math.max(savedContinuing.length, continuing.length));
+		numTransferred = savedTransferred;
+		numExhausted = savedExhausted;
+	}
+
+	/**
+	 * Sets which ranked choice a ballot is on, for restoring a count that was saved part way through
+	 * @param index the index of the ballot
+	 * @param choice the ranked choice, or -1 if the ballot has been eliminated
+	 */
+	public void setChoice(int index, int choice) {
+		if(choice >= offsets[index + 1] - offsets[index])
+			throw new IllegalArgumentException("Ballot " + index + " does not have a choice " + choice);
+		choices[index] = (short)choice;
+	}
+
+	/**
+	 * Gets a view of the ballot at the given index
+	 * @param index the index of the ballot
+	 * @return a ballot backed by this store
+	 */
+	public Ballot getBallot(int index) {
+		return new Ballot(this, index);
+	}
+
+	/**
+	 * Gets the number of ballots in the store
+	 * @return the number of ballots
+	 */
+	public int getNumBallots() {
+		return numOfBallots;
+	}
+
+	/**
+	 * Gets the number of times a ballot has been moved on from a candidate's pile by transferBallots
+	 * @return the number of ballot transfers so far
+	 */
+	public long getNumTransferred() {
+		return numTransferred;
+	}
+
+	/**
+	 * Gets the number of ballots that were eliminated because none of their remaining candidates are continuing,
+	 * including ballots that had no continuing candidates when they were added
+	 * @return the number of exhausted ballots
+	 */
+	public int getNumExhausted() {
+		return numExhausted;
+	}
+
+	/**
+	 * Gets the number of candidates ranked on a ballot
+	 * @param index the index of the ballot
+	 * @return the size of the ballot
+	 */
+	public int getBallotSize(int index) {
+		return offsets[index + 1] - offsets[index];
+	}
+
+	/**
+	 * Gets the id of the ranked candidate at the given position on a ballot
+	 * @param index the index of the ballot
+	 * @param position the position on the ballot, starting at 0 for the first choice
+	 * @return the candidate id at that position
+	 */
+	public int getRankedId(int index, int position) {
+		return rankings[offsets[index] + position];
+	}
+
+	/**
+	 * Gets which of the ranked choices a ballot currently counts towards
+	 * @param index the index of the ballot
+	 * @return the current choice, or -1 if the ballot has been eliminated
+	 */
+	public int getChoice(int index) {
+		return choices[index];
+	}
+
+	/**
+	 * Checks if a ballot has been eliminated
+	 * @param index the index of the ballot
+	 * @return if the ballot has been eliminated
+	 */
+	public boolean isEliminated(int index) {
+		return choices[index] < 0;
+	}
+
+	/**
+	 * Eliminates a ballot, so that it no longer counts towards any candidate
+	 * @param index the index of the ballot
+	 */
+	public void eliminateBallot(int index) {
+		choices[index] = -1;
+	}
+
+	/**
+	 * Adds a listener that is told about every transfer from now on. Copies of the store do not keep it.
+	 * @param listener the listener, told after the listeners added before it
+	 */
+	public void addTransferListener(TransferListener listener) {
+		transferListeners.add(listener);
+	}
+
+	/**
+	 * Stops telling a listener about transfers
+	 * @param listener the listener to remove
+	 */
+	public void removeTransferListener(TransferListener listener) {
+		transferListeners.remove(listener);
+	}
+
+	/**
+	 * Gets the id of the candidate a ballot currently counts towards
+	 * @param index the index of the ballot
+	 * @return the candidate id, or -1 if the ballot has been eliminated
+	 */
+	public int getCurrentCandidateId(int index) {
+		int choice = choices[index];
+		if(choice < 0)
+			return -1;
+		return rankings[offsets[index] + choice];
+	}
+
+	/**
+	 * Advances a ballot to its next ranked candidate that is still continuing and gives the ballot to that candidate.
+	 * If there are no more continuing candidates, the ballot will be eliminated.
+	 * @param index the index of the ballot
+	 */
+	public void advanceChoice(int index) {
+		int candidateId = nextChoice(index);
+		if(candidateId >= 0)
+			candidateList.get(candidateId).addBallot(index);
+	}
+
+	/**
+	 * Advances every ballot in a pile, from the given position to the end, to its next continuing ranked candidate.
+	 * Ballots are handed to their new candidates in the order they were in the pile, and each receiving pile grows
+	 * at most once, so the transfer costs one pass over the moved ballots.
+	 * Large transfers are split across threads when there is more than one processor, with the same result.
+	 * Ballots with no more candidates are eliminated.
+	 * @param pile the pile the ballots are leaving, which should no longer belong to a candidate
+	 * @param position the position of the first ballot to move
+	 */
+	public void transferBallots(BallotPile pile, int position) {
+		int numMoving = pile.size() - position;
+		if(numMoving <= 0)
+			return;
+		int fromId = transferListeners.isEmpty() ? -1 : getCurrentCandidateId(pile.get(position)); //Every ballot in a pile is on the same candidate until it moves
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		int numOfRanges = Math.min(parallelism * 4, numMoving / MIN_TRANSFER_RANGE);
+		if(numMoving >= PARALLEL_TRANSFER_SIZE && parallelism > 1 && numOfRanges > 1)
+			transferBallotsParallel(pile, position, numMoving, numOfRanges);
+		else
+			transferBallotsSequential(pile, position, numMoving);
+		for(TransferListener listener : transferListeners)
+		{
+			listener.recordTransfers(fromId, pile, position, numMoving, transferDestinations); //Both ways of transferring leave each ballot's destination here
+		}
+	}
+
+	/**
+	 * Transfers ballots in the same way as transferBallots, on the calling thread
+	 * @param pile the pile the ballots are leaving, which should no longer belong to a candidate
+	 * @param position the position of the first ballot to move
+	 * @param numMoving the number of ballots being moved
+	 */
+	private void transferBallotsSequential(BallotPile pile, int position, int numMoving) {
+		if(transferDestinations.length < numMoving)
+			transferDestinations = new int[Math.max(numMoving, transferDestinations.length * 2)];
+		if(transferCounts.length < candidateList.size())
+			transferCounts = new int[candidateList.size()];
+		numTransferred += numMoving;
+
+		for(int i = 0; i < numMoving; i++)
+		{
+			int candidateId = nextChoice(pile.get(position + i));
+			transferDestinations[i] = candidateId;
+			if(candidateId >= 0)
+				transferCounts[candidateId]++;
+		}
+		for(int id = 0; id < candidateList.size(); id++)
+		{
+			if(transferCounts[id] > 0)
+			{
+				candidateList.get(id).reserveVotes(transferCounts[id]);
+				transferCounts[id] = 0;
+			}
+		}
+		for(int i = 0; i < numMoving; i++)
+		{
+			if(transferDestinations[i] >= 0)
+				candidateList.get(transferDestinations[i]).addBallot(pile.get(position + i));
+		}
+	}
+
+	/**
+	 * Transfers ballots in the same way as transferBallots, with the pile split into ranges that are worked on by the common fork join pool.
+	 * Each range first advances its ballots and counts how many go to each candidate. The counts are then added up range by range,
+	 * which tells every range where its ballots go in each receiving pile, so the ranges can fill the piles at the same time
+	 * and every pile still ends up in the same order as a transfer done on one thread.
+	 * @param pile the pile the ballots are leaving, which should no longer belong to a candidate
+	 * @param position the position of the first ballot to move
+	 * @param numMoving the number of ballots being moved
+	 * @param numOfRanges the number of ranges to split the ballots into
+	 */
+	private void transferBallotsParallel(BallotPile pile, int position, int numMoving, int numOfRanges) {
+		if(transferDestinations.length < numMoving)
+			transferDestinations = new int[Math.max(numMoving, transferDestinations.length * 2)];
+		int numOfCandidates = candidateList.size();
+		int[][] rangeCounts = new int[numOfRanges][numOfCandidates + 1]; //Ballots each range gives each candidate, with the ballots it exhausts at the end
+		int[] destinations = transferDestinations;
+		numTransferred += numMoving;
+
+		IntStream.range(0, numOfRanges).parallel().forEach(range -> {
+			int[] counts = rangeCounts[range];
+			int end = (int)((long)numMoving * (range + 1) / numOfRanges);
+			for(int i = (int)((long)numMoving * range / numOfRanges); i < end; i++)
+			{
+				int candidateId = findNextChoice(pile.get(position + i));
+				destinations[i] = candidateId;
+				counts[candidateId >= 0 ? candidateId : numOfCandidates]++;
+			}
+		});
+
+		int[] starts = new int[numOfCandidates]; //Where the transferred ballots start in each receiving pile
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			int numReceived = 0;
+			for(int[] counts : rangeCounts)
+			{
+				int count = counts[id];
+				counts[id] = numReceived; //Each range's count becomes where its ballots start among the ballots the candidate receives
+				numReceived += count;
+			}
+			if(numReceived > 0)
+				starts[id] = candidateList.get(id).extendVotes(numReceived);
+		}
+		for(int[] counts : rangeCounts)
+		{
+			numExhausted += counts[numOfCandidates];
+		}
+
+		IntStream.range(0, numOfRanges).parallel().forEach(range -> {
+			int[] counts = rangeCounts[range];
+			int end = (int)((long)numMoving * (range + 1) / numOfRanges);
+			for(int i = (int)((long)numMoving * range / numOfRanges); i < end; i++)
+			{
+				int candidateId = destinations[i];
+				if(candidateId >= 0)
+					candidateList.get(candidateId).setExtendedVote(starts[candidateId] + counts[candidateId]++, pile.get(position + i));
+			}
+		});
+	}
+
+	/**
+	 * Moves a ballot's current choice on to its next continuing candidate without giving it to that candidate.
+	 * Candidates that have won or been eliminated are skipped in one step by checking the continuing bits.
+	 * If there are no more continuing candidates, the ballot will be eliminated.
+	 * @param index the index of the ballot
+	 * @return the id of the new candidate, or -1 if the ballot was eliminated
+	 */
+	private int nextChoice(int index) {
+		int candidateId = findNextChoice(index);
+		if(candidateId < 0)
+			numExhausted++;
+		return candidateId;
+	}
+
+	/**
+	 * Moves a ballot's current choice on in the same way as nextChoice, without counting exhausted ballots.
+	 * Only the ballot's own current choice is written, so different ballots can be moved on by different threads at the same time.
+	 * @param index the index of the ballot
+	 * @return the id of the new candidate, or -1 if the ballot was eliminated
+	 */
+	private int findNextChoice(int index) {
+		int end = offsets[index + 1];
+		for(int position = offsets[index] + choices[index] + 1; position < end; position++)
+		{
+			int candidateId = rankings[position];
+			if((continuing[candidateId >> 6] & (1L << candidateId)) != 0)
+			{
+				choices[index] = (short)(position - offsets[index]);
+				return candidateId;
+			}
+		}
+		choices[index] = -1; //All candidates this person voted for have won or been eliminated, so ballot is eliminated.
+		return -1;
+	}
+
+	/**
+	 * Makes sure the per ballot arrays can hold at least the given number of ballots
+	 * @param capacity the number of ballots needed
+	 */
+	private void ensureBallotCapacity(int capacity) {
+		if(capacity > choices.length)
+		{
+			int newCapacity = Math.max(capacity, choices.length * 2);
+			choices = Arrays.copyOf(choices, newCapacity);
+			offsets = Arrays.copyOf(offsets, newCapacity + 1);
+		}
+	}
+
+	/**
+	 * Makes sure the rankings array can hold at least the given number of ranked choices
+	 * @param capacity the number of ranked choices needed
+	 */
+	private void ensureRankingCapacity(int capacity) {
+		if(capacity > rankings.length || sharesRankings)
+		{
+			sharesRankings = false;
+			rankings = Arrays.copyOf(rankings, Math.max(capacity, rankings.length * 2));
+		}
+	}
+
+}
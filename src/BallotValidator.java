@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BallotValidator {
+
+	public static final int SKIP = 0; //Unknown names and repeats of a candidate already ranked are left off the ballot, and the rest of the ballot is kept
+	public static final int TRUNCATE = 1; //The ballot is cut off just before its first unknown name or repeated candidate
+	public static final int DROP = 2; //A ballot with any problem is left out of the count
+	public static final int FAIL = 3; //The count is stopped if any ballot has a problem
+	private static final String[] POLICY_NAMES = {"skip", "truncate", "drop", "fail"}; //Names of the policies in settings files and reports, in the order of their values
+	private static final int MAX_EXAMPLES = 20; //Most problem ballots described in the report
+	private static final int MAX_UNKNOWN_NAMES = 100; //Most different unknown names counted one by one in the report
+
+	private int policy; //What is done with a ballot that has a problem
+	private long[] ranked = new long[1]; //Bit for each candidate id already on the ballot being checked, all clear between ballots
+	private int numChecked; //Number of ballots checked
+	private int numProblemBallots; //Number of ballots with at least one problem
+	private int numUnknownNames; //Number of names that did not belong to any candidate
+	private int numRepeats; //Number of times a candidate was ranked again on the same ballot
+	private int numEmpty; //Number of ballots left with no choices
+	private int numDropped; //Number of ballots left out of the count
+	private int numTruncated; //Number of ballots cut short
+	private LinkedHashMap<String, Integer> unknownNameCounts = new LinkedHashMap<String, Integer>(); //Times each unknown name was seen, in the order first seen
+	private int numOtherUnknownNames; //Times unknown names were seen after MAX_UNKNOWN_NAMES different ones already had been
+	private ArrayList<Integer> exampleBallots = new ArrayList<Integer>(); //Number of each described problem ballot, counting from 1
+	private ArrayList<String> exampleProblems = new ArrayList<String>(); //Problems of each described problem ballot
+
+	private int ballotUnknowns; //Number of unknown names on the ballot being read
+	private int firstUnknownChoice; //Number of choices before the first unknown name on the ballot being read
+	private StringBuilder ballotProblems = new StringBuilder(); //Problems of the ballot being read, only kept while there is room for more examples
+
+	/**
+	 * Constructor creates a validator with nothing checked yet. Each thread reading ballots needs its own validator, and they can be merged once they are done.
+	 * @param policy what is done with a ballot that has a problem: SKIP, TRUNCATE, DROP or FAIL
+	 */
+	public BallotValidator(int policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets a policy from its name in a settings file
+	 * @param policyName the name of the policy, or null for the default
+	 * @return the policy, SKIP if the name is null
+	 * @throws IllegalArgumentException if the name is not a policy
+	 */
+	public static int parsePolicy(String policyName) {
+		if(policyName == null)
+			return SKIP;
+		for(int policy = 0; policy < POLICY_NAMES.length; policy++)
+		{
+			if(POLICY_NAMES[policy].equalsIgnoreCase(policyName.trim()))
+				return policy;
+		}
+		throw new IllegalArgumentException("Invalid ballot policy " + policyName + " must be one of " + String.join(", ", POLICY_NAMES));
+	}
+
+	/**
+	 * Gets the name of a policy as it is written in a settings file
+	 * @param policy SKIP, TRUNCATE, DROP or FAIL
+	 * @return the name of the policy
+	 */
+	public static String getPolicyName(int policy) {
+		return policy >= 0 && policy < POLICY_NAMES.length ? POLICY_NAMES[policy] : "unknown";
+	}
+
+	/**
+	 * Gets what is done with a ballot that has a problem
+	 * @return SKIP, TRUNCATE, DROP or FAIL
+	 */
+	public int getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Records a name on the ballot being read that does not belong to any candidate. It is never added to the ballot's ids.
+	 * @param name the bytes of the name
+	 * @param length how many of the bytes are in the name
+	 * @param choice the number of ids on the ballot before the name, which is where the ballot is cut off by TRUNCATE
+	 */
+	public void unknownName(byte[] name, int length, int choice) {
+		if(ballotUnknowns++ == 0)
+			firstUnknownChoice = choice;
+		numUnknownNames++;
+
+		String nameString = new String(name, 0, length, StandardCharsets.UTF_8);
+		Integer count = unknownNameCounts.get(nameString);
+		if(count != null)
+			unknownNameCounts.put(nameString, count + 1);
+		else if(unknownNameCounts.size() < MAX_UNKNOWN_NAMES)
+			unknownNameCounts.put(nameString, 1);
+		else
+			numOtherUnknownNames++;
+
+		if(exampleBallots.size() < MAX_EXAMPLES)
+			addProblem("unknown name " + nameString + " at choice " + (choice + 1));
+	}
+
+	/**
+	 * Checks a ballot that has been read and applies the policy to it. Repeated candidates are taken out of the ids whatever the policy.
+	 * @param candidateIds the ids of the ballot, which are changed in place
+	 * @param length how many of the ids are on the ballot
+	 * @return how many of the ids are kept, or -1 if the ballot should be left out of the count
+	 */
+	public int check(int[] candidateIds, int length) {
+		numChecked++;
+		int truncatedLength = ballotUnknowns > 0 ? firstUnknownChoice : length; //Ids before the first problem
+		int numBallotRepeats = 0;
+		for(int i = 0; i < length; i++)
+		{
+			int id = candidateIds[i];
+			int word = id >>> 6;
+			if(word >= ranked.length)
+				ranked = Arrays.copyOf(ranked, Math.max(word + 1, ranked.length * 2));
+			long bit = 1L << id;
+			if((ranked[word] & bit) != 0)
+			{
+				numBallotRepeats++;
+				truncatedLength = Math.min(truncatedLength, i);
+				if(exampleBallots.size() < MAX_EXAMPLES)
+					addProblem("choice " + (i + 1) + " repeats choice " + (indexOf(candidateIds, i, id) + 1));
+			}
+			ranked[word] |= bit;
+		}
+		clearRanked(candidateIds, length);
+
+		int kept = length;
+		if(numBallotRepeats > 0) //Take out every repeat, which leaves the ids before the first repeat where they were
+		{
+			numRepeats += numBallotRepeats;
+			kept = 0;
+			for(int i = 0; i < length; i++)
+			{
+				int id = candidateIds[i];
+				long bit = 1L << id;
+				if((ranked[id >>> 6] & bit) == 0)
+				{
+					ranked[id >>> 6] |= bit;
+					candidateIds[kept++] = id;
+				}
+			}
+			clearRanked(candidateIds, kept);
+		}
+
+		int newLength = policy == TRUNCATE ? truncatedLength : kept;
+		boolean hasProblem = ballotUnknowns > 0 || kept < length || newLength == 0;
+		if(newLength == 0)
+		{
+			numEmpty++;
+			if(exampleBallots.size() < MAX_EXAMPLES)
+				addProblem("no choices");
+		}
+		if(hasProblem)
+		{
+			numProblemBallots++;
+			if(exampleBallots.size() < MAX_EXAMPLES)
+			{
+				exampleBallots.add(numChecked);
+				exampleProblems.add(ballotProblems.toString());
+			}
+			if(policy == DROP)
+				numDropped++;
+			if(policy == DROP || policy == FAIL)
+				newLength = -1;
+			else if(policy == TRUNCATE && newLength < kept)
+				numTruncated++;
+		}
+		ballotUnknowns = 0;
+		ballotProblems.setLength(0);
+		return newLength;
+	}
+
+	/**
+	 * Adds the counts and examples of a validator that checked the ballots straight after this one's, such as the next chunk of the same file
+	 * @param next the validator to add, which must be done checking
+	 */
+	public void merge(BallotValidator next) {
+		for(int i = 0; i < next.exampleBallots.size() && exampleBallots.size() < MAX_EXAMPLES; i++)
+		{
+			exampleBallots.add(numChecked + next.exampleBallots.get(i));
+			exampleProblems.add(next.exampleProblems.get(i));
+		}
+		for(Map.Entry<String, Integer> entry : next.unknownNameCounts.entrySet())
+		{
+			Integer count = unknownNameCounts.get(entry.getKey());
+			if(count != null)
+				unknownNameCounts.put(entry.getKey(), count + entry.getValue());
+			else if(unknownNameCounts.size() < MAX_UNKNOWN_NAMES)
+				unknownNameCounts.put(entry.getKey(), entry.getValue());
+			else
+				numOtherUnknownNames += entry.getValue();
+		}
+		numOtherUnknownNames += next.numOtherUnknownNames;
+		numChecked += next.numChecked;
+		numProblemBallots += next.numProblemBallots;
+		numUnknownNames += next.numUnknownNames;
+		numRepeats += next.numRepeats;
+		numEmpty += next.numEmpty;
+		numDropped += next.numDropped;
+		numTruncated += next.numTruncated;
+	}
+
+	/**
+	 * Gets the number of ballots with at least one problem
+	 * @return the number of problem ballots
+	 */
+	public int getNumProblemBallots() {
+		return numProblemBallots;
+	}
+
+	/**
+	 * Gets a one line summary of the problems found, for the console
+	 * @return the summary
+	 */
+	public String getSummary() {
+		return String.format("%d of %d ballots had problems: %d unknown names, %d repeated candidates, %d empty ballots. Policy is %s, %d ballots were left out and %d were cut short",
+				numProblemBallots, numChecked, numUnknownNames, numRepeats, numEmpty, POLICY_NAMES[policy], numDropped, numTruncated);
+	}
+
+	/**
+	 * Writes every count, the unknown names and the first problem ballots as one JSON object
+	 * @param output where the report is written
+	 */
+	public void writeReport(PrintWriter output) {
+		output.printf("{\"policy\":%s,\"ballots_checked\":%d,\"problem_ballots\":%d,\"unknown_names\":%d,\"repeated_candidates\":%d,\"empty_ballots\":%d,"
+				+ "\"dropped_ballots\":%d,\"truncated_ballots\":%d,\n", CountMetrics.quote(POLICY_NAMES[policy]), numChecked, numProblemBallots,
+				numUnknownNames, numRepeats, numEmpty, numDropped, numTruncated);
+		output.print("\"unknown_name_counts\":[");
+		String separator = "";
+		for(Map.Entry<String, Integer> entry : unknownNameCounts.entrySet())
+		{
+			output.printf("%s\n{\"name\":%s,\"count\":%d}", separator, CountMetrics.quote(entry.getKey()), entry.getValue());
+			separator = ",";
+		}
+		output.printf("],\n\"other_unknown_names\":%d,\n\"examples\":[", numOtherUnknownNames);
+		separator = "";
+		for(int i = 0; i < exampleBallots.size(); i++)
+		{
+			output.printf("%s\n{\"ballot\":%d,\"problems\":%s}", separator, exampleBallots.get(i), CountMetrics.quote(exampleProblems.get(i)));
+			separator = ",";
+		}
+		output.printf("],\n\"examples_left_out\":%d}\n", numProblemBallots - exampleBallots.size());
+	}
+
+	/**
+	 * Stops the count if the policy is FAIL and any ballot had a problem
+	 * @throws IOException describing the first problem ballot
+	 */
+	public void checkPolicy() throws IOException {
+		if(policy == FAIL && numProblemBallots > 0)
+			throw new IOException(String.format("Ballot %d has problems (%s), and %d ballots have problems in total. The invalid ballot policy is fail",
+					exampleBallots.get(0), exampleProblems.get(0), numProblemBallots));
+	}
+
+	/**
+	 * Adds a problem to the description of the ballot being read
+	 * @param problem the problem
+	 */
+	private void addProblem(String problem) {
+		if(ballotProblems.length() > 0)
+			ballotProblems.append("; ");
+		ballotProblems.append(problem);
+	}
+
+	/**
+	 * Clears the bits of a ballot's ids, which leaves every bit clear
+	 * @param candidateIds the ids of the ballot
+	 * @param length how many of the ids are on the ballot
+	 */
+	private void clearRanked(int[] candidateIds, int length) {
+		for(int i = 0; i < length; i++)
+		{
+			ranked[candidateIds[i] >>> 6] = 0; //Every set bit belongs to one of the ids
+		}
+	}
+
+	/**
+	 * Finds the first place an id is on a ballot. Only used to describe repeats, so it never slows down a valid ballot.
+	 * @param candidateIds the ids of the ballot
+	 * @param end the position of the repeat, which is not searched
+	 * @param id the id to find
+	 * @return the position of the first choice with the id, among the choices before the repeat
+	 */
+	private static int indexOf(int[] candidateIds, int end, int id) {
+		for(int i = 0; i < end; i++)
+		{
+			if(candidateIds[i] == id)
+				return i;
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,92 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchElection {
+
+	/**
+	 * Counts every election listed in a manifest in one JVM, several at a time, and writes one report for all of them.
+	 * Arguments are the manifest path, then optionally the report path (the report goes to the console if it is left out)
+	 * and the number of elections to count at once (the number of processors if it is left out).
+	 * The first line of the manifest is an instruction line, and each line after it is the path of one election's settings file.
+	 * Blank lines are skipped. Each election still writes its own winners file as set in its settings.
+	 * @param args the manifest path, report path and number of threads
+	 * @throws IOException if the manifest could not be read or the report could not be written
+	 * @throws InterruptedException if the thread was interrupted while waiting for the elections
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 1)
+		{
+			System.out.println("Usage: BatchElection <manifest file> [report file] [number of threads]");
+			return;
+		}
+		List<String> lines = Files.readAllLines(new File(args[0]).toPath(), StandardCharsets.UTF_8);
+		ArrayList<File> settingsFiles = new ArrayList<File>();
+		for(int i = 1; i < lines.size(); i++) //First line is the instruction line
+		{
+			if(!lines.get(i).trim().isEmpty())
+				settingsFiles.add(new File(lines.get(i).trim()));
+		}
+		int numOfThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		PrintWriter report = args.length > 1 ? new PrintWriter(new File(args[1]), "UTF-8") : new PrintWriter(System.out);
+		runBatch(settingsFiles, numOfThreads, report);
+		report.flush();
+		if(args.length > 1)
+			report.close();
+	}
+
+	/**
+	 * Counts a list of elections on a fixed number of threads and writes a report of every election, in the order they were listed.
+	 * Each election is counted by PerformElection.runElection on one thread and shares nothing with the others.
+	 * An election that fails is reported as failed without stopping the rest.
+	 * @param settingsFiles the settings file of each election
+	 * @param numOfThreads the most elections to count at once
+	 * @param report where to write the report
+	 * @return the number of elections that failed
+	 * @throws InterruptedException if the thread was interrupted while waiting for the elections
+	 */
+	public static int runBatch(List<File> settingsFiles, int numOfThreads, PrintWriter report) throws InterruptedException {
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(numOfThreads, 1));
+		ArrayList<Future<ElectionResult>> results = new ArrayList<Future<ElectionResult>>();
+		for(File settingsFile : settingsFiles)
+		{
+			results.add(executor.submit(() -> PerformElection.runElection(new ElectionSettings(settingsFile), 1))); //The batch already keeps every thread busy
+		}
+		executor.shutdown();
+
+		StringBuilder details = new StringBuilder();
+		int numFailed = 0;
+		for(int i = 0; i < results.size(); i++)
+		{
+			details.append(String.format("Election %d: %s\n", i + 1, settingsFiles.get(i)));
+			try
+			{
+				ElectionResult result = results.get(i).get();
+				details.append(String.format("Counted %d ballots in %d ms\n", result.getNumBallots(), result.getCountTimeNanos() / 1000000));
+				details.append(result.getWinners());
+			}
+			catch(ExecutionException e)
+			{
+				details.append("Failed: ").append(e.getCause()).append('\n');
+				numFailed++;
+			}
+			details.append('\n');
+		}
+
+		report.printf("Counted %d elections on %d threads in %d ms, %d failed\n\n", settingsFiles.size(), Math.max(numOfThreads, 1),
+				(System.nanoTime() - start) / 1000000, numFailed);
+		report.print(details);
+		return numFailed;
+	}
+
+}
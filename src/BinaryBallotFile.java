@@ -0,0 +1,342 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+public class BinaryBallotFile {
+
+	public static final int MAGIC = 0x42565453; //"STVB" read as a little endian int, the first four bytes of every binary ballot file
+	public static final int VERSION = 3; //Version of the layout written by this class
+
+	private static final int FIXED_HEADER_SIZE = 40; //Bytes in the header before the candidate table
+	private static final int CHECKSUM_POSITION = 32; //Where the checksum is in the header
+	private static final int WRITE_BUFFER_SIZE = 1 << 20; //Bytes written to the file at a time
+	private static final int READ_CHUNK_BALLOTS = 1 << 16; //Ballots handed to the sink at a time, so the file's ballots are never all copied onto the heap at once
+
+	/*
+	 * Layout, with every number little endian:
+	 * 0  int   MAGIC
+	 * 4  int   VERSION
+	 * 8  int   header size, which is where the ballot ends start
+	 * 12 int   number of candidates
+	 * 16 int   number of ballots
+	 * 20 int   number of ranked choices across all ballots
+	 * 24 int   invalid ballot policy the text file was converted with
+	 * 28 int   number of ballots that had problems when the text file was converted
+	 * 32 long  CRC32C of the whole file, read with these 8 bytes as 0
+	 * 40       candidate table, each name as a short byte count followed by its UTF-8 bytes, in the order of their ids
+	 * then     one int per ballot with where it ends in the rankings, ballot i starts where ballot i - 1 ends
+	 * then     one short per ranked choice with its candidate id, packed one ballot after another
+	 */
+
+	/**
+	 * Converts a ballots file in the text format into a binary ballot file.
+	 * Arguments are the candidates file, the text ballots file, the binary file to write and optionally the invalid ballot policy, skip if left out.
+	 * The ballots are checked with the policy as they are converted, and the policy is kept in the file so that it is only read with the same policy.
+	 * @param args the candidates file, ballots file, output file and policy
+	 * @throws IOException if a file could not be read or written, or the policy is fail and a ballot has a problem
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3)
+		{
+			System.out.println("Usage: BinaryBallotFile <candidates file> <ballots file> <binary ballots file to write> [skip|truncate|drop|fail]");
+			return;
+		}
+		ArrayList<Candidate> candidateList = PerformElection.readCandidates(new File(args[0]), new BallotStore()); //The store only gives the candidates their ids
+
+		long start = System.nanoTime();
+		BallotBuffer ballots = new BallotBuffer(candidateList.size());
+		BallotValidator validator = new BallotValidator(BallotValidator.parsePolicy(args.length > 3 ? args[3] : null));
+		new BallotReader(new CandidateNameTable(candidateList), validator).read(Paths.get(args[1]), ballots);
+		if(validator.getNumProblemBallots() > 0)
+			System.out.println(validator.getSummary());
+		validator.checkPolicy();
+		write(Paths.get(args[2]), candidateList, ballots, validator.getPolicy(), validator.getNumProblemBallots());
+		System.out.printf("Converted %d ballots in %d ms%n", ballots.getNumBallots(), (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Checks if a file starts like a binary ballot file
+	 * @param file the file to check
+	 * @return if the file starts with the binary ballot file magic number
+	 * @throws IOException if the file could not be read
+	 */
+	public static boolean isBinary(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while(magic.hasRemaining() && channel.read(magic) >= 0);
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Writes ballots to a binary ballot file
+	 * @param file the file to write
+	 * @param candidateList the candidates, in the order of the ids used by the ballots
+	 * @param ballots the ballots
+	 * @param policy the invalid ballot policy the ballots were checked with
+	 * @param numProblemBallots the number of ballots that had problems when they were checked
+	 * @throws IOException if the file could not be written
+	 */
+	public static void write(Path file, List<Candidate> candidateList, BallotBuffer ballots, int policy, int numProblemBallots) throws IOException {
+		ArrayList<byte[]> names = new ArrayList<byte[]>();
+		int headerSize = FIXED_HEADER_SIZE;
+		for(Candidate candidate : candidateList)
+		{
+			byte[] name = candidate.getName().getBytes(StandardCharsets.UTF_8);
+			if(name.length > Short.MAX_VALUE)
+				throw new IllegalArgumentException("Candidate name is too long for a binary ballot file: " + candidate.getName());
+			names.add(name);
+			headerSize += 2 + name.length;
+		}
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			CRC32C checksum = new CRC32C();
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(headerSize);
+			buffer.putInt(candidateList.size());
+			buffer.putInt(ballots.getNumBallots());
+			buffer.putInt(ballots.getRankingsSize());
+			buffer.putInt(policy);
+			buffer.putInt(numProblemBallots);
+			buffer.putLong(0); //The checksum is filled in last, and counts as 0 while it is worked out
+			for(byte[] name : names)
+			{
+				if(buffer.remaining() < 2 + name.length)
+					flush(channel, buffer, checksum);
+				buffer.putShort((short)name.length);
+				buffer.put(name);
+			}
+
+			int[] ends = ballots.getEnds();
+			for(int i = 0; i < ballots.getNumBallots(); i++)
+			{
+				if(buffer.remaining() < 4)
+					flush(channel, buffer, checksum);
+				buffer.putInt(ends[i]);
+			}
+			short[] rankings = ballots.getRankings();
+			for(int i = 0; i < ballots.getRankingsSize(); i++)
+			{
+				if(buffer.remaining() < 2)
+					flush(channel, buffer, checksum);
+				buffer.putShort(rankings[i]);
+			}
+			flush(channel, buffer, checksum);
+
+			buffer.putLong(checksum.getValue());
+			buffer.flip();
+			channel.write(buffer, CHECKSUM_POSITION);
+		}
+	}
+
+	/**
+	 * Reads every ballot in a binary ballot file and gives them to the sink in the order they were written, a chunk of ballots at a time.
+	 * The ballot sections are memory mapped and each chunk is copied from them in bulk, so no names are parsed and only one chunk is on the heap at a time,
+	 * which keeps a disk counted election within its memory budget however big the file is.
+	 * Candidate ids in the file are matched to the given table by name. If the table has every candidate in the file, the ballots were
+	 * already checked when the file was made and are not checked again. Otherwise every ballot is checked with the validator,
+	 * with the candidates that are not running treated as unknown names, in the same way as reading the text file would.
+	 * @param file the binary ballot file
+	 * @param nameTable the table of the candidates running
+	 * @param numOfCandidates the number of candidates in the table
+	 * @param sink where the ballots are sent
+	 * @param validator the validator whose policy the ballots are read with
+	 * @return the number of ballots sent to the sink
+	 * @throws IOException if the file could not be read, is not a binary ballot file, fails its checksum,
+	 * or had problem ballots when it was made with a different policy from the validator's
+	 */
+	public static int read(Path file, CandidateNameTable nameTable, int numOfCandidates, BallotSink sink, BallotValidator validator) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer header = readFully(channel, 0, FIXED_HEADER_SIZE);
+			if(header.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a binary ballot file");
+			if(header.getInt(4) != VERSION)
+				throw new IOException(file + " is binary ballot file version " + header.getInt(4) + ", only version " + VERSION + " can be read, convert the ballots again");
+			int headerSize = header.getInt(8);
+			int fileCandidates = header.getInt(12);
+			int numOfBallots = header.getInt(16);
+			int rankingsSize = header.getInt(20);
+			int filePolicy = header.getInt(24);
+			int fileProblemBallots = header.getInt(28);
+			long expectedChecksum = header.getLong(CHECKSUM_POSITION);
+			long endsSize = 4L * numOfBallots;
+			if(headerSize < FIXED_HEADER_SIZE || numOfBallots < 0 || rankingsSize < 0 || headerSize + endsSize + 2L * rankingsSize != channel.size())
+				throw new IOException(file + " is not the size its header says it is");
+
+			ByteBuffer table = readFully(channel, FIXED_HEADER_SIZE, headerSize - FIXED_HEADER_SIZE);
+			MappedByteBuffer endsSection = channel.map(FileChannel.MapMode.READ_ONLY, headerSize, endsSize);
+			MappedByteBuffer rankingsSection = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + endsSize, 2L * rankingsSize);
+			CRC32C checksum = new CRC32C(); //Covers the header and candidate table too, so a changed name or count is found as well as changed ballots
+			header.putLong(CHECKSUM_POSITION, 0);
+			checksum.update(header.array(), 0, FIXED_HEADER_SIZE);
+			checksum.update(table.array(), 0, headerSize - FIXED_HEADER_SIZE);
+			checksum.update(endsSection);
+			checksum.update(rankingsSection);
+			if(checksum.getValue() != expectedChecksum)
+				throw new IOException(file + " does not match its checksum");
+			if(fileProblemBallots > 0 && filePolicy != validator.getPolicy()) //The ballots as they were before the policy was applied are not in the file
+				throw new IOException(String.format("%s was converted with the %s invalid ballot policy and %d of its ballots had problems, convert it again with the %s policy",
+						file, BallotValidator.getPolicyName(filePolicy), fileProblemBallots, BallotValidator.getPolicyName(validator.getPolicy())));
+
+			int[] idMap = new int[fileCandidates]; //Id in the name table of each candidate id in the file, or -1 if they are not running
+			byte[][] names = new byte[fileCandidates][];
+			boolean allRunning = true;
+			for(int id = 0; id < fileCandidates; id++)
+			{
+				names[id] = new byte[table.getShort()];
+				table.get(names[id]);
+				idMap[id] = nameTable.lookup(names[id], names[id].length, CandidateNameTable.hash(names[id], names[id].length));
+				allRunning &= idMap[id] >= 0;
+			}
+
+			endsSection.rewind(); //The checksum read them to the end
+			rankingsSection.rewind();
+			IntBuffer ends = endsSection.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			ShortBuffer rankings = rankingsSection.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+			//Each chunk is copied from the mapped file in bulk, then its ids are matched to the running candidates in place
+			int[] chunkEnds = new int[Math.min(numOfBallots, READ_CHUNK_BALLOTS)]; //Where each ballot of the chunk ends, reused for every chunk
+			short[] chunkRankings = new short[Math.min(rankingsSize, 16 * READ_CHUNK_BALLOTS)]; //Rankings of the chunk, grown if its ballots are long
+			int[] totalVotes = new int[numOfCandidates];
+			int numKeptBallots = 0;
+			int chunkStart = 0; //Where the chunk starts in the rankings
+			for(int first = 0; first < numOfBallots; first += chunkEnds.length)
+			{
+				int numInChunk = Math.min(chunkEnds.length, numOfBallots - first);
+				ends.get(first, chunkEnds, 0, numInChunk);
+				int chunkEnd = chunkEnds[numInChunk - 1];
+				if(chunkEnd < chunkStart || chunkEnd > rankingsSize)
+					throw new IOException(file + " has a ballot that ends outside of the rankings");
+				if(chunkEnd - chunkStart > chunkRankings.length)
+					chunkRankings = new short[chunkEnd - chunkStart];
+				rankings.get(chunkStart, chunkRankings, 0, chunkEnd - chunkStart);
+
+				Arrays.fill(totalVotes, 0);
+				int numKeptInChunk = matchChunk(file, chunkRankings, chunkEnds, numInChunk, chunkStart, chunkEnd - chunkStart, idMap, names, allRunning, validator, totalVotes);
+				int kept = numKeptInChunk == 0 ? 0 : chunkEnds[numKeptInChunk - 1];
+				chunkStart = chunkEnd;
+				sink.addBallots(new BallotBuffer(chunkRankings, chunkEnds, totalVotes, numKeptInChunk, kept)); //The sink copies what it keeps, so the arrays are reused
+				numKeptBallots += numKeptInChunk;
+			}
+			return numKeptBallots;
+		}
+	}
+
+	/**
+	 * Matches the candidate ids of a chunk of ballots to the running candidates and counts their total votes, in one pass that also
+	 * checks the ballots with the validator if any of the file's candidates are not running. The chunk is packed again in place without
+	 * the ballots the policy leaves out. Kept in its own method so that it is compiled after the first few chunks rather than run slowly in the loop that calls it.
+	 * @param file the binary ballot file, for error messages
+	 * @param chunkRankings the file's candidate ids of the chunk, replaced by the matched ids
+	 * @param chunkEnds where each ballot of the chunk ends in the file's rankings, replaced by where each kept ballot ends in chunkRankings
+	 * @param numInChunk the number of ballots in the chunk
+	 * @param chunkStart where the chunk starts in the file's rankings
+	 * @param chunkLength the number of ranked choices in the chunk
+	 * @param idMap the id in the name table of each candidate id in the file, or -1 if they are not running
+	 * @param names the name of each candidate in the file, as UTF-8 bytes
+	 * @param allRunning if every candidate in the file is running, in which case the ballots are not checked again
+	 * @param validator the validator the ballots are checked with
+	 * @param totalVotes where the total votes of each running candidate are counted
+	 * @return the number of ballots kept
+	 * @throws IOException if a ballot ends outside of the chunk or names a candidate id that is not in the file
+	 */
+	private static int matchChunk(Path file, short[] chunkRankings, int[] chunkEnds, int numInChunk, int chunkStart, int chunkLength, int[] idMap, byte[][] names,
+			boolean allRunning, BallotValidator validator, int[] totalVotes) throws IOException {
+		int[] ballotIds = new int[Math.max(idMap.length, 1)]; //Ids of the ballot being checked, as the validator takes them
+		int kept = 0;
+		int numKept = 0;
+		int ballotStart = 0;
+		for(int i = 0; i < numInChunk; i++)
+		{
+			int ballotEnd = chunkEnds[i] - chunkStart;
+			if(ballotEnd < ballotStart || ballotEnd > chunkLength)
+				throw new IOException(file + " has a ballot that ends outside of the rankings");
+			int length = 0;
+			for(int position = ballotStart; position < ballotEnd; position++)
+			{
+				int fileId = chunkRankings[position];
+				if(fileId < 0 || fileId >= idMap.length)
+					throw new IOException(file + " has a ballot with candidate id " + fileId + ", which is not in its candidate table");
+				if(idMap[fileId] >= 0)
+				{
+					if(length == ballotIds.length)
+						ballotIds = Arrays.copyOf(ballotIds, length * 2);
+					ballotIds[length++] = idMap[fileId];
+				}
+				else
+					validator.unknownName(names[fileId], names[fileId].length, length);
+			}
+			ballotStart = ballotEnd;
+			if(!allRunning)
+				length = validator.check(ballotIds, length);
+			if(length < 0)
+				continue; //Left out by the policy
+			for(int choice = 0; choice < length; choice++)
+			{
+				chunkRankings[kept++] = (short)ballotIds[choice]; //Never ahead of the position being read, since no ballot grows
+				totalVotes[ballotIds[choice]]++;
+			}
+			chunkEnds[numKept++] = kept;
+		}
+		return numKept;
+	}
+
+	/**
+	 * Writes out everything in the buffer and clears it
+	 * @param channel the file being written
+	 * @param buffer the bytes to write
+	 * @param checksum the checksum to add the bytes to, or null if they are not checked
+	 * @throws IOException if the file could not be written
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer, CRC32C checksum) throws IOException {
+		buffer.flip();
+		if(checksum != null)
+		{
+			checksum.update(buffer);
+			buffer.rewind();
+		}
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads part of a file into a new little endian buffer
+	 * @param channel the file
+	 * @param position where to start reading
+	 * @param length the number of bytes to read
+	 * @return the bytes, ready to be read from the start
+	 * @throws IOException if the file ends before the given number of bytes
+	 */
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Binary ballot file ends in the middle of its header");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+}
@@ -2,9 +2,12 @@ import java.util.ArrayList;
 
 public class Candidate implements Comparable<Candidate> {
 
-	private ArrayList<Ballot> currentVotes = new ArrayList<Ballot>(); //Ballots with this candidate as their current choice
+	private BallotPile currentVotes = new BallotPile(); //Indices of the ballots with this candidate as their current choice
 	private int totalVotes; //Total votes across all ballots for this candidate
 	private String name; //Name of candidate
+	private BallotStore ballotStore; //Store that holds the ballots this candidate is ranked on
+	private int id = -1; //Id of this candidate in its ballot store
+	private CandidateRanking ranking; //Ranking to tell when this candidate's votes change, null if the candidate is not ranked
 	
 	/**
 	 * Constructor sets candidate name, but does not add any ballots. Sets the default total votes to 0.
@@ -20,8 +23,8 @@ public class Candidate implements Comparable<Candidate> {
 	 * @param votes a list of ballots that will be added to this candidate if their current choice is this candidate
 	 */
 	public Candidate(String name, ArrayList<Ballot> votes) {
-		addBallotList(votes);
 		setName(name);
+		addBallotList(votes);
 		setTotalVotes(getVotes());
 	}
 	
@@ -32,16 +35,62 @@ public class Candidate implements Comparable<Candidate> {
 	public void setName(String name) {
 		this.name = name;
 	}
+	/**
+	 * This method sets the ballot store this candidate belongs to, along with the candidates id in that store
+	 * @param ballotStore the store holding the ballots
+	 * @param id the id of the candidate in the store
+	 */
+	public void setBallotStore(BallotStore ballotStore, int id) {
+		this.ballotStore = ballotStore;
+		this.id = id;
+	}
 	/**
 	 * This method adds the given ballot to the candidate, so long as the ballots choice is this candidate
 	 * @param vote the ballot being added
 	 */
 	public void addBallot(Ballot vote) {
-		if(vote.getCurrentCandidate().equals(this))
+		if(equals(vote.getCurrentCandidate()))
 		{
-			currentVotes.add(vote); //Ballot matches candidate
+			currentVotes.add(vote.getIndex()); //Ballot matches candidate
+			votesChanged();
 		}
 	}
+	/**
+	 * This method adds the ballot at the given index of the ballot store to the candidate.
+	 * The ballots current choice must already be this candidate.
+	 * @param ballotIndex the index of the ballot in the ballot store
+	 */
+	public void addBallot(int ballotIndex) {
+		currentVotes.add(ballotIndex);
+		votesChanged();
+	}
+	/**
+	 * This method makes room for the given number of ballots about to be added to the candidate
+	 * @param numOfBallots the number of ballots about to be added
+	 */
+	public void reserveVotes(int numOfBallots) {
+		currentVotes.reserve(numOfBallots);
+	}
+	/**
+	 * This method adds places for the given number of ballots to the end of the candidate's pile, to be filled with setExtendedVote.
+	 * The candidate's votes count the new places straight away.
+	 * @param numOfBallots the number of ballots about to be added
+	 * @return the position in the pile of the first new place
+	 */
+	public int extendVotes(int numOfBallots) {
+		int start = currentVotes.extend(numOfBallots);
+		votesChanged();
+		return start;
+	}
+	/**
+	 * This method fills a place added by extendVotes with a ballot whose current choice is already this candidate.
+	 * Different places can be filled by different threads at the same time.
+	 * @param position the position in the pile
+	 * @param ballotIndex the index of the ballot in the ballot store
+	 */
+	public void setExtendedVote(int position, int ballotIndex) {
+		currentVotes.set(position, ballotIndex);
+	}
 	/**
 	 * This method adds all valid ballots to the candidate.
 	 * A ballot is valid if it's current choice is the candidate it is being added to.
@@ -60,6 +109,7 @@ public class Candidate implements Comparable<Candidate> {
 	 */
 	public void setTotalVotes(int totalVotes) {
 		this.totalVotes = totalVotes;
+		votesChanged();
 	}
 	/**
 	 * This method increments the total number of votes this candidate has received.
@@ -67,6 +117,7 @@ public class Candidate implements Comparable<Candidate> {
 	 */
 	public void incrementTotalVotes() {
 		totalVotes++;
+		votesChanged();
 	}
 	/**
 	 * This method will declare the current candidate as having won a seat if they meet the threshold.
@@ -78,17 +129,13 @@ public class Candidate implements Comparable<Candidate> {
 	public boolean wonSeat(int threshold) {
 		if(getVotes() >= threshold)
 		{
+			ballotStore.setContinuing(id, false); //Surplus ballots skip over this candidate from now on
 			for(int i = 0; i < threshold; i++)
 			{
-				currentVotes.get(i).eliminate(); //Eliminates ballots that counted towards winning
-			}
-			while(getVotes() > threshold)
-			{
-				Ballot ballot = currentVotes.remove(threshold);
-				ballot.advanceChoice();
-				if(!ballot.isEliminated()) //If the ballot was not eliminated, add it to the list of votes for its new chosen candidate
-					ballot.getCurrentCandidate().addBallot(ballot);
+				ballotStore.eliminateBallot(currentVotes.get(i)); //Eliminates ballots that counted towards winning
 			}
+			ballotStore.transferBallots(currentVotes.split(threshold), 0); //Gives the surplus ballots to their next continuing candidates, if there are any
+			votesChanged();
 			
 			return true;
 		}
@@ -98,16 +145,84 @@ public class Candidate implements Comparable<Candidate> {
 	
 	/**
 	 * This method eliminates the current candidate.
-	 * This is done by removing all the current votes for this candidate, and advancing the ballots to their next choice.
+	 * This is done by removing all the current votes for this candidate, and advancing the ballots to their next continuing choice.
 	 */
 	public void eliminate() {
-		while(getVotes() > 0)
-		{
-			Ballot ballot = currentVotes.removeFirst();
-			ballot.advanceChoice();
-			if(!ballot.isEliminated()) //If the ballot was not eliminated, add it to the list of votes for its new chosen candidate
-				ballot.getCurrentCandidate().addBallot(ballot);
-		}
+		ballotStore.setContinuing(id, false); //Ballots skip over this candidate from now on
+		BallotPile outgoing = currentVotes;
+		currentVotes = new BallotPile();
+		ballotStore.transferBallots(outgoing, 0); //Gives the ballots to their next continuing candidates, if there are any
+		votesChanged();
+	}
+	
+	/**
+	 * This method gets the ballots this candidate currently holds.
+	 * @return the indices of the ballots in the candidate's pile, in the order they were received
+	 */
+	public int[] getBallotIndices() {
+		return currentVotes.toArray();
+	}
+	/**
+	 * This method replaces the ballots this candidate holds, for restoring a count that was saved part way through.
+	 * The ballots must already have this candidate as their current choice, or have been kept by this candidate when they won.
+	 * @param ballotIndices the indices of the ballots, in the order they were received
+	 */
+	public void setBallotIndices(int[] ballotIndices) {
+		currentVotes = new BallotPile(ballotIndices, ballotIndices.length);
+		votesChanged();
+	}
+	
+	/**
+	 * This method drops the ballots at the end of the candidate's pile, for restoring a count that was saved part way through.
+	 * @param numOfBallots the number of ballots to keep, from the start of the pile
+	 */
+	public void keepBallots(int numOfBallots) {
+		currentVotes.truncate(numOfBallots);
+		votesChanged();
+	}
+	
+	/**
+	 * This method empties the candidate's pile and sets their total votes to 0, for filling their ballot store again.
+	 * The pile keeps its size, so refilling it does not allocate.
+	 */
+	public void clearBallots() {
+		currentVotes.clear();
+		totalVotes = 0;
+		votesChanged();
+	}
+	
+	/**
+	 * This method makes a copy of the candidate with the same name, total votes and ballots, for counting a copy of its ballot store.
+	 * The copy does not belong to a ballot store or ranking until it is added to one.
+	 * @return the copy of the candidate
+	 */
+	public Candidate copy() {
+		Candidate copy = new Candidate(name);
+		copy.totalVotes = totalVotes;
+		copy.currentVotes = currentVotes.copy();
+		return copy;
+	}
+	
+	/**
+	 * This method sets the ranking that is told whenever this candidate's votes change.
+	 * @param ranking the ranking holding this candidate, or null if the candidate is no longer ranked
+	 */
+	public void setRanking(CandidateRanking ranking) {
+		this.ranking = ranking;
+	}
+	/**
+	 * This method gets the ranking that is told whenever this candidate's votes change.
+	 * @return the ranking holding this candidate, or null if the candidate is not ranked
+	 */
+	public CandidateRanking getRanking() {
+		return ranking;
+	}
+	/**
+	 * This method tells the candidate's ranking, if there is one, that the candidate's votes have changed.
+	 */
+	private void votesChanged() {
+		if(ranking != null)
+			ranking.markChanged(this);
 	}
 	
 	/**
@@ -131,9 +246,34 @@ public class Candidate implements Comparable<Candidate> {
 	public int getTotalVotes() {
 		return totalVotes;
 	}
+	/**
+	 * This method gets the ballot store this candidate belongs to.
+	 * @return the ballot store, or null if the candidate has not been added to one
+	 */
+	public BallotStore getBallotStore() {
+		return ballotStore;
+	}
+	/**
+	 * This method gets the id of this candidate in its ballot store.
+	 * @return the id of the candidate, or -1 if the candidate has not been added to a store
+	 */
+	public int getId() {
+		return id;
+	}
 	
 	public String toString() {
-		return String.format("Candidate %s with %d votes and %d total votes", getName(), getVotes(), getTotalVotes());
+		return describe(getName(), getVotes(), getTotalVotes());
+	}
+	
+	/**
+	 * This method describes a candidate in the same way as toString, for counts that keep votes outside of Candidate objects.
+	 * @param name the name of the candidate
+	 * @param votes the number of votes the candidate has
+	 * @param totalVotes the number of ballots the candidate shows up on
+	 * @return the description of the candidate
+	 */
+	public static String describe(String name, int votes, int totalVotes) {
+		return String.format("Candidate %s with %d votes and %d total votes", name, votes, totalVotes);
 	}
 	
 	public boolean equals(Object obj) {
@@ -0,0 +1,115 @@
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class CandidateNameTable {
+
+	public static final int EMPTY_HASH = 0x811C9DC5; //Hash of a name with no bytes, the FNV-1a offset basis
+	private static final int HASH_PRIME = 0x01000193; //FNV-1a prime
+
+	private byte[][] names; //UTF-8 bytes of the name in each slot, null if the slot is empty
+	private int[] hashes; //Hash of the name in each slot
+	private int[] ids; //Candidate id of the name in each slot
+	private int mask; //Number of slots minus one, the number of slots is always a power of 2
+
+	/**
+	 * Constructor builds the table from a list of candidates that have already been added to a ballot store.
+	 * If two candidates share a name, the name will resolve to the first of them.
+	 * @param candidateList the candidates to look up by name
+	 */
+	public CandidateNameTable(List<Candidate> candidateList) {
+		int numOfSlots = Integer.highestOneBit(Math.max(candidateList.size(), 1) * 4 - 1) * 2; //Keeps the table at most half full
+		names = new byte[numOfSlots][];
+		hashes = new int[numOfSlots];
+		ids = new int[numOfSlots];
+		mask = numOfSlots - 1;
+
+		for(Candidate candidate : candidateList)
+		{
+			byte[] name = candidate.getName().getBytes(StandardCharsets.UTF_8);
+			int hash = hash(name, name.length);
+			if(lookup(name, name.length, hash) < 0) //Duplicate names keep the first candidate
+			{
+				int slot = hash & mask;
+				while(names[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+				names[slot] = name;
+				hashes[slot] = hash;
+				ids[slot] = candidate.getId();
+			}
+		}
+	}
+
+	/**
+	 * Adds one more byte to a running name hash, starting from EMPTY_HASH
+	 * @param hash the hash of the bytes so far
+	 * @param b the next byte of the name
+	 * @return the hash including the new byte
+	 */
+	public static int hash(int hash, byte b) {
+		return (hash ^ (b & 0xFF)) * HASH_PRIME;
+	}
+
+	/**
+	 * Hashes the first length bytes of a name
+	 * @param name the bytes of the name
+	 * @param length how many bytes of the array are part of the name
+	 * @return the hash of the name
+	 */
+	public static int hash(byte[] name, int length) {
+		int hash = EMPTY_HASH;
+		for(int i = 0; i < length; i++)
+		{
+			hash = hash(hash, name[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Finds the id of the candidate whose name matches the first length bytes of the array
+	 * @param name the UTF-8 bytes of the name
+	 * @param length how many bytes of the array are part of the name
+	 * @param hash the hash of the name, as returned by hash(name, length)
+	 * @return the id of the candidate, or -1 if no candidate has that name
+	 */
+	public int lookup(byte[] name, int length, int hash) {
+		int slot = hash & mask;
+		while(names[slot] != null)
+		{
+			if(hashes[slot] == hash && matches(names[slot], name, length))
+				return ids[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the id of the candidate with the given name
+	 * @param name the name of the candidate
+	 * @return the id of the candidate, or -1 if no candidate has that name
+	 */
+	public int lookup(String name) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		return lookup(nameBytes, nameBytes.length, hash(nameBytes, nameBytes.length));
+	}
+
+	/**
+	 * Checks if a stored name is equal to the first length bytes of another name
+	 * @param stored the stored name
+	 * @param name the name being looked up
+	 * @param length how many bytes of name to compare
+	 * @return if the names are equal
+	 */
+	private static boolean matches(byte[] stored, byte[] name, int length) {
+		if(stored.length != length)
+			return false;
+		for(int i = 0; i < length; i++)
+		{
+			if(stored[i] != name[i])
+				return false;
+		}
+		return true;
+	}
+
+}
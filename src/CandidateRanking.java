@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class CandidateRanking {
+
+	private static final long UNRANKED = Long.MAX_VALUE; //Key of a candidate who is not in the ranking, above every ranked key
+
+	private BallotStore ballotStore; //Store the ranked candidates belong to
+	private long[] keys; //Votes and total votes of each candidate as of when they were last updated, packed so that a lower key is a lower place. UNRANKED if they are not ranked.
+	private int numRanked; //Number of candidates in the ranking
+	private boolean[] changed; //If a candidate's votes have changed since their key was last updated
+	private int[] changedIds; //Ids of the changed candidates
+	private int numChanged; //Number of changed candidates
+	private long[] sortedKeys; //Keys of the ranked candidates put in order by countMathematicallyExcluded, reused between rounds
+
+	/**
+	 * Constructor creates an empty ranking for candidates of the given ballot store.
+	 * Every candidate's place is kept as one key in a dense array indexed by candidate id, and each search is one pass over that array,
+	 * which for hundreds of candidates is quicker than keeping them in a tree that has to be rebalanced whenever votes move.
+	 * @param ballotStore the store the candidates belong to
+	 */
+	public CandidateRanking(BallotStore ballotStore) {
+		this.ballotStore = ballotStore;
+		int numOfCandidates = ballotStore.getNumCandidates();
+		keys = new long[numOfCandidates];
+		Arrays.fill(keys, UNRANKED);
+		numRanked = 0;
+		changed = new boolean[numOfCandidates];
+		changedIds = new int[numOfCandidates];
+		numChanged = 0;
+		sortedKeys = new long[numOfCandidates];
+	}
+
+	/**
+	 * Adds a candidate to the ranking. The candidate will tell the ranking whenever their votes change.
+	 * @param candidate the candidate to add, which must belong to the ranking's ballot store
+	 */
+	public void add(Candidate candidate) {
+		int id = candidate.getId();
+		if(keys[id] == UNRANKED)
+		{
+			numRanked++;
+			candidate.setRanking(this);
+		}
+		keys[id] = key(candidate);
+	}
+
+	/**
+	 * Removes a candidate from the ranking
+	 * @param candidate the candidate to remove
+	 * @return if the candidate was in the ranking
+	 */
+	public boolean remove(Candidate candidate) {
+		if(candidate.getId() < 0 || candidate.getRanking() != this)
+			return false;
+		update();
+		candidate.setRanking(null);
+		if(keys[candidate.getId()] == UNRANKED)
+			return false;
+		keys[candidate.getId()] = UNRANKED;
+		numRanked--;
+		return true;
+	}
+
+	/**
+	 * Records that a candidate's votes have changed, so that their place is updated before the ranking is next read.
+	 * This is called by the candidate, and only costs a flag check when the candidate has already changed.
+	 * @param candidate the candidate whose votes changed
+	 */
+	public void markChanged(Candidate candidate) {
+		int id = candidate.getId();
+		if(!changed[id] && ballotStore.isContinuing(id)) //Candidates that have won or been eliminated never move again
+		{
+			changed[id] = true;
+			changedIds[numChanged++] = id;
+		}
+	}
+
+	/**
+	 * Gets the number of candidates in the ranking
+	 * @return the number of candidates
+	 */
+	public int size() {
+		return numRanked;
+	}
+
+	/**
+	 * Gets the candidate in last place, which is the candidate with the fewest votes, or fewest total votes if there is a tie.
+	 * Candidates tied on both are placed in the order of their ids.
+	 * @return the last place candidate, or null if the ranking is empty
+	 */
+	public Candidate getLastPlace() {
+		update();
+		int id = lowestAtLeast(0);
+		return id < 0 ? null : ballotStore.getCandidate(id);
+	}
+
+	/**
+	 * Gets every candidate tied for last place, in ranked order. Candidates are tied if compareTo between them returns 0.
+	 * @return the tied candidates, which is empty if the ranking is empty
+	 */
+	public ArrayList<Candidate> getLastPlaceGroup() {
+		update();
+		ArrayList<Candidate> group = new ArrayList<Candidate>();
+		int lastId = lowestAtLeast(0);
+		if(lastId >= 0)
+		{
+			long lastKey = keys[lastId];
+			for(int id = lastId; id < keys.length; id++) //Tied candidates are placed in the order of their ids, and none come before the first
+			{
+				if(keys[id] == lastKey)
+					group.add(ballotStore.getCandidate(id));
+			}
+		}
+		return group;
+	}
+
+	/**
+	 * Counts the candidates who are mathematically excluded: the most candidates from last place up, such that their votes added together
+	 * are fewer than the votes of the next candidate up. No transfer between them can lift any of them past that candidate.
+	 * @param maxExcluded the most candidates that can be excluded without leaving a seat empty
+	 * @return the number of excluded candidates, which is 0 if not even the last place candidate is certain to be excluded
+	 */
+	public int countMathematicallyExcluded(int maxExcluded) {
+		update();
+		int numOfKeys = 0;
+		for(long key : keys)
+		{
+			if(key != UNRANKED)
+				sortedKeys[numOfKeys++] = key;
+		}
+		Arrays.sort(sortedKeys, 0, numOfKeys); //Candidates tied on both votes have the same key, so the order of their ids does not matter here
+		int numExcluded = 0;
+		long excludedVotes = 0; //Votes of every candidate below the one being looked at
+		for(int place = 0; place < numOfKeys && place <= maxExcluded; place++)
+		{
+			int votes = votes(sortedKeys[place]);
+			if(place > 0 && excludedVotes < votes)
+				numExcluded = place;
+			excludedVotes += votes;
+		}
+		return numExcluded;
+	}
+
+	/**
+	 * Gets the lowest ranked candidate with at least the given number of votes
+	 * @param threshold the number of votes needed
+	 * @return the lowest ranked candidate with enough votes, or null if no candidate has enough
+	 */
+	public Candidate getLowestReaching(int threshold) {
+		update();
+		int id = lowestAtLeast(Math.max(threshold, 0));
+		return id < 0 ? null : ballotStore.getCandidate(id);
+	}
+
+	/**
+	 * Gets the candidate at the given place, counting from last place at 0.
+	 * This puts every ranked candidate in order, so it is slower than the other searches.
+	 * @param place the place of the candidate
+	 * @return the candidate at that place, or null if the place is out of bounds
+	 */
+	public Candidate get(int place) {
+		update();
+		if(place < 0 || place >= numRanked)
+			return null;
+		Integer[] rankedIds = new Integer[numRanked];
+		int numOfIds = 0;
+		for(int id = 0; id < keys.length; id++)
+		{
+			if(keys[id] != UNRANKED)
+				rankedIds[numOfIds++] = id;
+		}
+		Arrays.sort(rankedIds, (id1, id2) -> keys[id1] != keys[id2] ? Long.compare(keys[id1], keys[id2]) : Integer.compare(id1, id2));
+		return ballotStore.getCandidate(rankedIds[place]);
+	}
+
+	/**
+	 * Finds the lowest ranked candidate with at least the given number of votes in one pass over the keys.
+	 * Ties are broken by the lower id, since the first lowest key found is kept.
+	 * @param minVotes the fewest votes the candidate can have
+	 * @return the id of the candidate, or -1 if no ranked candidate has that many votes
+	 */
+	private int lowestAtLeast(int minVotes) {
+		long minKey = (long)minVotes << 32;
+		long lowestKey = UNRANKED;
+		int lowestId = -1;
+		for(int id = 0; id < keys.length; id++)
+		{
+			long key = keys[id];
+			if(key >= minKey && key < lowestKey)
+			{
+				lowestKey = key;
+				lowestId = id;
+			}
+		}
+		return lowestId;
+	}
+
+	/**
+	 * Updates the key of every changed candidate
+	 */
+	private void update() {
+		for(int i = 0; i < numChanged; i++)
+		{
+			int id = changedIds[i];
+			changed[id] = false;
+			if(ballotStore.isContinuing(id) && keys[id] != UNRANKED) //Candidates that left the ranking are not put back
+				keys[id] = key(ballotStore.getCandidate(id));
+		}
+		numChanged = 0;
+	}
+
+	/**
+	 * Packs a candidate's votes and total votes into one key. Both are never negative, so comparing keys compares votes, then total votes, as Candidate.compareTo does.
+	 * @param candidate the candidate
+	 * @return the key of the candidate
+	 */
+	private static long key(Candidate candidate) {
+		return (long)candidate.getVotes() << 32 | candidate.getTotalVotes();
+	}
+
+	/**
+	 * Gets the votes packed into a key
+	 * @param key the key
+	 * @return the votes
+	 */
+	private static int votes(long key) {
+		return (int)(key >>> 32);
+	}
+
+}
@@ -0,0 +1,483 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+public class CountCheckpoint {
+
+	public static final int MAGIC = 0x43565453; //"STVC" read as a little endian int, the first four bytes of every checkpoint file
+	public static final int VERSION = 2; //Version of the layout written by this class
+
+	private static final int BUFFER_SIZE = 1 << 20; //Bytes read or written at a time
+
+	private int round; //Number of rounds finished when the checkpoint was taken
+	private int numOfBallots; //Number of ballots in the election
+	private long rankingsFingerprint; //Fingerprint of the ballots' rankings, to check the checkpoint is resumed with the same ballots
+	private short[] choices; //Current choice of each ballot, -1 for eliminated ballots
+	private long[] continuing; //Continuing bit of each candidate
+	private long numTransferred; //Ballot transfers made so far
+	private int numExhausted; //Ballots exhausted so far
+	private int[][] piles; //Ballot indices held by each candidate, in order
+	private boolean[] ranked; //If each candidate is still in the ranking of candidates in the running
+	private List<Integer> winnerIds; //Id of each winner so far, in the order they won, or -1 for Vacant and Tied seats
+	private List<String> winnerNames; //Name of each winner so far
+	private boolean runoffNeeded; //If the count had found an unbreakable tie
+
+	/*
+	 * Layout, with every number little endian:
+	 * int MAGIC, int VERSION, int round, int number of ballots, long rankings fingerprint,
+	 * long ballot transfers, int exhausted ballots, int number of candidates, int number of continuing words, int number of winners, byte runoff needed,
+	 * then the continuing words as longs, one byte per candidate for if they are ranked,
+	 * each winner as an int id followed by a short byte count and the UTF-8 bytes of their name,
+	 * each candidate's pile as an int size followed by the ballot indices as ints,
+	 * one short per ballot with its current choice, and last a long CRC32C of everything before it
+	 */
+
+	/**
+	 * Constructor holds a saved count. The arrays are kept, not copied, so they must not be changed afterwards.
+	 * @param round the number of rounds finished
+	 * @param numOfBallots the number of ballots in the election
+	 * @param rankingsFingerprint the fingerprint of the ballots' rankings
+	 * @param choices the current choice of each ballot
+	 * @param continuing the continuing bit of each candidate
+	 * @param numTransferred the ballot transfers made so far
+	 * @param numExhausted the ballots exhausted so far
+	 * @param piles the ballot indices held by each candidate
+	 * @param ranked if each candidate is still in the running
+	 * @param winnerIds the id of each winner, or -1 for Vacant and Tied seats
+	 * @param winnerNames the name of each winner
+	 * @param runoffNeeded if the count had found an unbreakable tie
+	 */
+	public CountCheckpoint(int round, int numOfBallots, long rankingsFingerprint, short[] choices, long[] continuing, long numTransferred,
+			int numExhausted, int[][] piles, boolean[] ranked, List<Integer> winnerIds, List<String> winnerNames, boolean runoffNeeded) {
+		this.round = round;
+		this.numOfBallots = numOfBallots;
+		this.rankingsFingerprint = rankingsFingerprint;
+		this.choices = choices;
+		this.continuing = continuing;
+		this.numTransferred = numTransferred;
+		this.numExhausted = numExhausted;
+		this.piles = piles;
+		this.ranked = ranked;
+		this.winnerIds = winnerIds;
+		this.winnerNames = winnerNames;
+		this.runoffNeeded = runoffNeeded;
+	}
+
+	/**
+	 * Writes the checkpoint to a file. It is written to a temporary file next to it first and then moved into place,
+	 * so the file always holds a whole checkpoint even if the program stops part way through writing.
+	 * @param file the checkpoint file
+	 * @throws IOException if the file could not be written
+	 */
+	public void write(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			CRC32C checksum = new CRC32C();
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(round);
+			buffer.putInt(numOfBallots);
+			buffer.putLong(rankingsFingerprint);
+			buffer.putLong(numTransferred);
+			buffer.putInt(numExhausted);
+			buffer.putInt(piles.length);
+			buffer.putInt(continuing.length);
+			buffer.putInt(winnerIds.size());
+			buffer.put((byte)(runoffNeeded ? 1 : 0));
+			for(long word : continuing)
+			{
+				ensureRoom(channel, buffer, checksum, 8);
+				buffer.putLong(word);
+			}
+			for(boolean isRanked : ranked)
+			{
+				ensureRoom(channel, buffer, checksum, 1);
+				buffer.put((byte)(isRanked ? 1 : 0));
+			}
+			for(int i = 0; i < winnerIds.size(); i++)
+			{
+				byte[] name = winnerNames.get(i).getBytes(StandardCharsets.UTF_8);
+				ensureRoom(channel, buffer, checksum, 6 + name.length);
+				buffer.putInt(winnerIds.get(i));
+				buffer.putShort((short)name.length);
+				buffer.put(name);
+			}
+			for(int[] pile : piles)
+			{
+				ensureRoom(channel, buffer, checksum, 4);
+				buffer.putInt(pile.length);
+				for(int written = 0; written < pile.length; )
+				{
+					ensureRoom(channel, buffer, checksum, 4);
+					int count = Math.min(pile.length - written, buffer.remaining() / 4);
+					buffer.asIntBuffer().put(pile, written, count);
+					buffer.position(buffer.position() + count * 4);
+					written += count;
+				}
+			}
+			for(int written = 0; written < choices.length; )
+			{
+				ensureRoom(channel, buffer, checksum, 2);
+				int count = Math.min(choices.length - written, buffer.remaining() / 2);
+				buffer.asShortBuffer().put(choices, written, count);
+				buffer.position(buffer.position() + count * 2);
+				written += count;
+			}
+			flush(channel, buffer, checksum);
+			buffer.putLong(checksum.getValue());
+			flush(channel, buffer, null);
+			channel.force(false);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint written by write
+	 * @param file the checkpoint file
+	 * @return the checkpoint
+	 * @throws IOException if the file could not be read, is not a checkpoint, or fails its checksum
+	 */
+	public static CountCheckpoint read(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long checkedSize = channel.size() - 8;
+			ByteBuffer stored = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			if(checkedSize < 0 || channel.read(stored, checkedSize) != 8)
+				throw new IOException(file + " is not a checkpoint file");
+			CRC32C checksum = new CRC32C();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for(long position = 0; position < checkedSize; )
+			{
+				buffer.clear();
+				buffer.limit((int)Math.min(BUFFER_SIZE, checkedSize - position));
+				int read = channel.read(buffer, position);
+				if(read <= 0)
+					throw new IOException(file + " could not be read");
+				buffer.flip();
+				checksum.update(buffer);
+				position += read;
+			}
+			if(checksum.getValue() != stored.getLong(0))
+				throw new IOException(file + " does not match its checksum");
+
+			CheckpointInput input = new CheckpointInput(channel);
+			if(input.getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint file");
+			if(input.getInt() != VERSION)
+				throw new IOException(file + " was written by a different version of the program");
+			int round = input.getInt();
+			int numOfBallots = input.getInt();
+			long rankingsFingerprint = input.getLong();
+			long numTransferred = input.getLong();
+			int numExhausted = input.getInt();
+			int numOfCandidates = input.getInt();
+			long[] continuing = new long[input.getInt()];
+			int numOfWinners = input.getInt();
+			boolean runoffNeeded = input.get() != 0;
+			for(int i = 0; i < continuing.length; i++)
+			{
+				continuing[i] = input.getLong();
+			}
+			boolean[] ranked = new boolean[numOfCandidates];
+			for(int id = 0; id < numOfCandidates; id++)
+			{
+				ranked[id] = input.get() != 0;
+			}
+			ArrayList<Integer> winnerIds = new ArrayList<Integer>();
+			ArrayList<String> winnerNames = new ArrayList<String>();
+			for(int i = 0; i < numOfWinners; i++)
+			{
+				winnerIds.add(input.getInt());
+				byte[] name = new byte[input.getShort()];
+				input.get(name);
+				winnerNames.add(new String(name, StandardCharsets.UTF_8));
+			}
+			int[][] piles = new int[numOfCandidates][];
+			for(int id = 0; id < numOfCandidates; id++)
+			{
+				piles[id] = new int[input.getInt()];
+				input.get(piles[id]);
+			}
+			short[] choices = new short[numOfBallots];
+			input.get(choices);
+			return new CountCheckpoint(round, numOfBallots, rankingsFingerprint, choices, continuing, numTransferred, numExhausted,
+					piles, ranked, winnerIds, winnerNames, runoffNeeded);
+		}
+	}
+
+	/**
+	 * Gets the number of rounds finished when the checkpoint was taken
+	 * @return the round number
+	 */
+	public int getRound() {
+		return round;
+	}
+	/**
+	 * Gets the number of ballots in the election
+	 * @return the number of ballots
+	 */
+	public int getNumBallots() {
+		return numOfBallots;
+	}
+	/**
+	 * Gets the fingerprint of the rankings of the ballots the checkpoint was taken with
+	 * @return the fingerprint
+	 */
+	public long getRankingsFingerprint() {
+		return rankingsFingerprint;
+	}
+	/**
+	 * Gets the current choice of each ballot
+	 * @return the choices, -1 for eliminated ballots
+	 */
+	public short[] getChoices() {
+		return choices;
+	}
+	/**
+	 * Gets the continuing bit of each candidate
+	 * @return the continuing bits, 64 candidates per word
+	 */
+	public long[] getContinuing() {
+		return continuing;
+	}
+	/**
+	 * Gets the number of ballot transfers made before the checkpoint
+	 * @return the number of transfers
+	 */
+	public long getNumTransferred() {
+		return numTransferred;
+	}
+	/**
+	 * Gets the number of ballots exhausted before the checkpoint
+	 * @return the number of exhausted ballots
+	 */
+	public int getNumExhausted() {
+		return numExhausted;
+	}
+	/**
+	 * Gets the number of candidates in the election
+	 * @return the number of candidates
+	 */
+	public int getNumCandidates() {
+		return piles.length;
+	}
+	/**
+	 * Gets the ballots a candidate held
+	 * @param id the id of the candidate
+	 * @return the ballot indices, in order
+	 */
+	public int[] getPile(int id) {
+		return piles[id];
+	}
+	/**
+	 * Checks if a candidate was still in the running
+	 * @param id the id of the candidate
+	 * @return if the candidate was ranked
+	 */
+	public boolean isRanked(int id) {
+		return ranked[id];
+	}
+	/**
+	 * Gets the number of winners so far
+	 * @return the number of winners
+	 */
+	public int getNumWinners() {
+		return winnerIds.size();
+	}
+	/**
+	 * Gets the id of a winner
+	 * @param place the order they won in, starting at 0
+	 * @return the id of the winner, or -1 for Vacant and Tied seats
+	 */
+	public int getWinnerId(int place) {
+		return winnerIds.get(place);
+	}
+	/**
+	 * Gets the name of a winner
+	 * @param place the order they won in, starting at 0
+	 * @return the name of the winner
+	 */
+	public String getWinnerName(int place) {
+		return winnerNames.get(place);
+	}
+
+	/**
+	 * Checks if the count had found an unbreakable tie
+	 * @return if a runoff is needed
+	 */
+	public boolean isRunoffNeeded() {
+		return runoffNeeded;
+	}
+
+	/**
+	 * Writes out the buffer if it does not have room for the given number of bytes
+	 * @param channel the file being written
+	 * @param buffer the bytes waiting to be written
+	 * @param checksum the checksum the written bytes are added to
+	 * @param needed the number of bytes about to be put in the buffer
+	 * @throws IOException if the file could not be written
+	 */
+	private static void ensureRoom(FileChannel channel, ByteBuffer buffer, CRC32C checksum, int needed) throws IOException {
+		if(buffer.remaining() < needed)
+			flush(channel, buffer, checksum);
+	}
+
+	/**
+	 * Writes out everything in the buffer and clears it
+	 * @param channel the file being written
+	 * @param buffer the bytes to write
+	 * @param checksum the checksum to add the bytes to, or null if they are not checked
+	 * @throws IOException if the file could not be written
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer, CRC32C checksum) throws IOException {
+		buffer.flip();
+		if(checksum != null)
+		{
+			checksum.update(buffer);
+			buffer.rewind();
+		}
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads little endian values from a checkpoint file through one reused buffer
+	 */
+	private static class CheckpointInput {
+
+		private FileChannel channel; //The checkpoint file
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN); //Bytes read from the file and not used yet
+		private long position; //Position in the file of the next byte to read into the buffer
+
+		/**
+		 * Constructor starts reading a file from the beginning
+		 * @param channel the file
+		 */
+		public CheckpointInput(FileChannel channel) {
+			this.channel = channel;
+			buffer.limit(0);
+		}
+
+		/**
+		 * Makes sure the buffer holds at least the given number of unread bytes
+		 * @param needed the number of bytes
+		 * @throws IOException if the file ends first
+		 */
+		private void fill(int needed) throws IOException {
+			if(buffer.remaining() >= needed)
+				return;
+			buffer.compact();
+			while(buffer.position() < needed)
+			{
+				int read = channel.read(buffer, position);
+				if(read <= 0)
+					throw new IOException("Checkpoint file ends early");
+				position += read;
+			}
+			buffer.flip();
+		}
+
+		/**
+		 * Reads one byte
+		 * @return the byte
+		 * @throws IOException if the file ends first
+		 */
+		public byte get() throws IOException {
+			fill(1);
+			return buffer.get();
+		}
+
+		/**
+		 * Reads a short
+		 * @return the short
+		 * @throws IOException if the file ends first
+		 */
+		public short getShort() throws IOException {
+			fill(2);
+			return buffer.getShort();
+		}
+
+		/**
+		 * Reads an int
+		 * @return the int
+		 * @throws IOException if the file ends first
+		 */
+		public int getInt() throws IOException {
+			fill(4);
+			return buffer.getInt();
+		}
+
+		/**
+		 * Reads a long
+		 * @return the long
+		 * @throws IOException if the file ends first
+		 */
+		public long getLong() throws IOException {
+			fill(8);
+			return buffer.getLong();
+		}
+
+		/**
+		 * Reads bytes until the array is full
+		 * @param array the array to fill
+		 * @throws IOException if the file ends first
+		 */
+		public void get(byte[] array) throws IOException {
+			for(int done = 0; done < array.length; )
+			{
+				fill(1);
+				int count = Math.min(array.length - done, buffer.remaining());
+				buffer.get(array, done, count);
+				done += count;
+			}
+		}
+
+		/**
+		 * Reads ints until the array is full
+		 * @param array the array to fill
+		 * @throws IOException if the file ends first
+		 */
+		public void get(int[] array) throws IOException {
+			for(int done = 0; done < array.length; )
+			{
+				fill(4);
+				int count = Math.min(array.length - done, buffer.remaining() / 4);
+				buffer.asIntBuffer().get(array, done, count);
+				buffer.position(buffer.position() + count * 4);
+				done += count;
+			}
+		}
+
+		/**
+		 * Reads shorts until the array is full
+		 * @param array the array to fill
+		 * @throws IOException if the file ends first
+		 */
+		public void get(short[] array) throws IOException {
+			for(int done = 0; done < array.length; )
+			{
+				fill(2);
+				int count = Math.min(array.length - done, buffer.remaining() / 2);
+				buffer.asShortBuffer().get(array, done, count);
+				buffer.position(buffer.position() + count * 2);
+				done += count;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+public class CountCheckpointDelta {
+
+	public static final int LOG_MAGIC = 0x44565453; //"STVD" read as a little endian int, the first four bytes of every checkpoint log
+	public static final int LOG_VERSION = 1; //Version of the log layout written by this class
+	public static final int LOG_HEADER_SIZE = 24; //Bytes at the start of a log before its first round
+
+	private int round; //Number of rounds finished once this round is applied
+	private long numTransferred; //Ballot transfers made by the end of the round
+	private int numExhausted; //Ballots exhausted by the end of the round
+	private boolean runoffNeeded; //If the count had found an unbreakable tie by the end of the round
+	private long[] continuing; //Continuing bit of each candidate at the end of the round
+	private boolean[] ranked; //If each candidate was still in the ranking of candidates in the running at the end of the round
+	private int[] pileSizes; //Number of ballots each candidate held at the end of the round
+	private List<Integer> winnerIds; //Id of each winner so far, in the order they won, or -1 for Vacant and Tied seats
+	private List<String> winnerNames; //Name of each winner so far
+	private int[] transferredBallots; //Every ballot that moved in the round, in the order they moved
+	private short[] transferredChoices; //Choice each moved ballot moved on to, -1 if it was exhausted
+
+	/*
+	 * A log starts with a header of int LOG_MAGIC, int LOG_VERSION, int number of ballots, int number of candidates, long rankings fingerprint.
+	 * Each round after it is one frame: an int payload size, the payload, and a long CRC32C of the payload.
+	 * Payload, with every number little endian:
+	 * int round, long ballot transfers, int exhausted ballots, byte runoff needed, int number of candidates, int number of continuing words,
+	 * int number of winners, int number of transferred ballots, then the continuing words as longs, one byte per candidate for if they are ranked,
+	 * one int per candidate with their pile size, each winner as an int id followed by a short byte count and the UTF-8 bytes of their name,
+	 * the transferred ballots as ints and last the choices they moved on to as shorts
+	 */
+
+	/**
+	 * Constructor holds the changes made by one round. The arrays are kept, not copied, so they must not be changed afterwards.
+	 * @param round the number of rounds finished once this round is applied
+	 * @param numTransferred the ballot transfers made by the end of the round
+	 * @param numExhausted the ballots exhausted by the end of the round
+	 * @param runoffNeeded if an unbreakable tie had been found by the end of the round
+	 * @param continuing the continuing bit of each candidate at the end of the round
+	 * @param ranked if each candidate was still in the running at the end of the round
+	 * @param pileSizes the number of ballots each candidate held at the end of the round
+	 * @param winnerIds the id of each winner, or -1 for Vacant and Tied seats
+	 * @param winnerNames the name of each winner
+	 * @param transferredBallots every ballot that moved in the round, in the order they moved
+	 * @param transferredChoices the choice each moved ballot moved on to, -1 if it was exhausted
+	 */
+	public CountCheckpointDelta(int round, long numTransferred, int numExhausted, boolean runoffNeeded, long[] continuing, boolean[] ranked,
+			int[] pileSizes, List<Integer> winnerIds, List<String> winnerNames, int[] transferredBallots, short[] transferredChoices) {
+		this.round = round;
+		this.numTransferred = numTransferred;
+		this.numExhausted = numExhausted;
+		this.runoffNeeded = runoffNeeded;
+		this.continuing = continuing;
+		this.ranked = ranked;
+		this.pileSizes = pileSizes;
+		this.winnerIds = winnerIds;
+		this.winnerNames = winnerNames;
+		this.transferredBallots = transferredBallots;
+		this.transferredChoices = transferredChoices;
+	}
+
+	/**
+	 * Writes the header a log starts with
+	 * @param channel the log file, which must be empty
+	 * @param numOfBallots the number of ballots in the election
+	 * @param numOfCandidates the number of candidates in the election
+	 * @param rankingsFingerprint the fingerprint of the ballots' rankings
+	 * @throws IOException if the file could not be written
+	 */
+	public static void writeLogHeader(FileChannel channel, int numOfBallots, int numOfCandidates, long rankingsFingerprint) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOG_MAGIC);
+		header.putInt(LOG_VERSION);
+		header.putInt(numOfBallots);
+		header.putInt(numOfCandidates);
+		header.putLong(rankingsFingerprint);
+		header.flip();
+		writeFully(channel, header, 0);
+	}
+
+	/**
+	 * Checks the header of a log
+	 * @param channel the log file
+	 * @param numOfBallots the number of ballots in the election being resumed
+	 * @param numOfCandidates the number of candidates in the election being resumed
+	 * @param rankingsFingerprint the fingerprint of the ballots being resumed
+	 * @return if the log has a whole header, false if the program stopped before the header was written
+	 * @throws IOException if the file could not be read, or the log belongs to a different election
+	 */
+	public static boolean checkLogHeader(FileChannel channel, int numOfBallots, int numOfCandidates, long rankingsFingerprint) throws IOException {
+		if(channel.size() < LOG_HEADER_SIZE)
+			return false;
+		ByteBuffer header = readFully(channel, 0, LOG_HEADER_SIZE);
+		if(header.getInt(0) != LOG_MAGIC || header.getInt(4) != LOG_VERSION)
+			throw new IOException("Checkpoint log was written by a different version of the program");
+		if(header.getInt(8) != numOfBallots || header.getInt(12) != numOfCandidates || header.getLong(16) != rankingsFingerprint)
+			throw new IOException("Checkpoint log was saved from a count of different ballots or candidates");
+		return true;
+	}
+
+	/**
+	 * Gets the number of bytes the round takes up in a log
+	 * @return the size of the frame, including its size and checksum
+	 */
+	public long getFrameSize() {
+		return 12L + getPayloadSize();
+	}
+
+	/**
+	 * Adds the round to the end of a log in one write
+	 * @param channel the log file, which must already have its header
+	 * @throws IOException if the file could not be written
+	 */
+	public void append(FileChannel channel) throws IOException {
+		int payloadSize = getPayloadSize();
+		ByteBuffer frame = ByteBuffer.allocate(payloadSize + 12).order(ByteOrder.LITTLE_ENDIAN);
+		frame.putInt(payloadSize);
+		frame.putInt(round);
+		frame.putLong(numTransferred);
+		frame.putInt(numExhausted);
+		frame.put((byte)(runoffNeeded ? 1 : 0));
+		frame.putInt(ranked.length);
+		frame.putInt(continuing.length);
+		frame.putInt(winnerIds.size());
+		frame.putInt(transferredBallots.length);
+		for(long word : continuing)
+		{
+			frame.putLong(word);
+		}
+		for(boolean isRanked : ranked)
+		{
+			frame.put((byte)(isRanked ? 1 : 0));
+		}
+		frame.asIntBuffer().put(pileSizes);
+		frame.position(frame.position() + 4 * pileSizes.length);
+		for(int i = 0; i < winnerIds.size(); i++)
+		{
+			byte[] name = winnerNames.get(i).getBytes(StandardCharsets.UTF_8);
+			frame.putInt(winnerIds.get(i));
+			frame.putShort((short)name.length);
+			frame.put(name);
+		}
+		frame.asIntBuffer().put(transferredBallots);
+		frame.position(frame.position() + 4 * transferredBallots.length);
+		frame.asShortBuffer().put(transferredChoices);
+		frame.position(frame.position() + 2 * transferredChoices.length);
+		CRC32C checksum = new CRC32C();
+		checksum.update(frame.array(), 4, payloadSize);
+		frame.putLong(checksum.getValue());
+		frame.flip();
+		writeFully(channel, frame, channel.size());
+	}
+
+	/**
+	 * Reads the round that starts at the given position of a log
+	 * @param channel the log file
+	 * @param position where the frame starts
+	 * @return the round, or null if the log ends part way through the frame or the frame does not match its checksum,
+	 * which happens when the program stopped while the round was being written
+	 * @throws IOException if the file could not be read
+	 */
+	public static CountCheckpointDelta read(FileChannel channel, long position) throws IOException {
+		if(channel.size() - position < 12)
+			return null;
+		int payloadSize = readFully(channel, position, 4).getInt(0);
+		if(payloadSize < 33 || payloadSize > channel.size() - position - 12)
+			return null;
+		ByteBuffer payload = readFully(channel, position + 4, payloadSize);
+		CRC32C checksum = new CRC32C();
+		checksum.update(payload.array(), 0, payloadSize);
+		if(checksum.getValue() != readFully(channel, position + 4 + payloadSize, 8).getLong(0))
+			return null;
+
+		int round = payload.getInt();
+		long numTransferred = payload.getLong();
+		int numExhausted = payload.getInt();
+		boolean runoffNeeded = payload.get() != 0;
+		int numOfCandidates = payload.getInt();
+		long[] continuing = new long[payload.getInt()];
+		int numOfWinners = payload.getInt();
+		int numOfTransfers = payload.getInt();
+		for(int i = 0; i < continuing.length; i++)
+		{
+			continuing[i] = payload.getLong();
+		}
+		boolean[] ranked = new boolean[numOfCandidates];
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			ranked[id] = payload.get() != 0;
+		}
+		int[] pileSizes = new int[numOfCandidates];
+		payload.asIntBuffer().get(pileSizes);
+		payload.position(payload.position() + 4 * numOfCandidates);
+		ArrayList<Integer> winnerIds = new ArrayList<Integer>();
+		ArrayList<String> winnerNames = new ArrayList<String>();
+		for(int i = 0; i < numOfWinners; i++)
+		{
+			winnerIds.add(payload.getInt());
+			byte[] name = new byte[payload.getShort()];
+			payload.get(name);
+			winnerNames.add(new String(name, StandardCharsets.UTF_8));
+		}
+		int[] transferredBallots = new int[numOfTransfers];
+		payload.asIntBuffer().get(transferredBallots);
+		payload.position(payload.position() + 4 * numOfTransfers);
+		short[] transferredChoices = new short[numOfTransfers];
+		payload.asShortBuffer().get(transferredChoices);
+		return new CountCheckpointDelta(round, numTransferred, numExhausted, runoffNeeded, continuing, ranked, pileSizes,
+				winnerIds, winnerNames, transferredBallots, transferredChoices);
+	}
+
+	/**
+	 * Gets the number of rounds finished once this round is applied
+	 * @return the round number
+	 */
+	public int getRound() {
+		return round;
+	}
+	/**
+	 * Gets the number of ballot transfers made by the end of the round
+	 * @return the number of transfers
+	 */
+	public long getNumTransferred() {
+		return numTransferred;
+	}
+	/**
+	 * Gets the number of ballots exhausted by the end of the round
+	 * @return the number of exhausted ballots
+	 */
+	public int getNumExhausted() {
+		return numExhausted;
+	}
+	/**
+	 * Checks if the count had found an unbreakable tie by the end of the round
+	 * @return if a runoff is needed
+	 */
+	public boolean isRunoffNeeded() {
+		return runoffNeeded;
+	}
+	/**
+	 * Gets the continuing bit of each candidate at the end of the round
+	 * @return the continuing bits, 64 candidates per word
+	 */
+	public long[] getContinuing() {
+		return continuing;
+	}
+	/**
+	 * Gets the number of candidates in the election
+	 * @return the number of candidates
+	 */
+	public int getNumCandidates() {
+		return ranked.length;
+	}
+	/**
+	 * Checks if a candidate was still in the running at the end of the round
+	 * @param id the id of the candidate
+	 * @return if the candidate was ranked
+	 */
+	public boolean isRanked(int id) {
+		return ranked[id];
+	}
+	/**
+	 * Gets the number of ballots a candidate held at the end of the round
+	 * @param id the id of the candidate
+	 * @return the size of the candidate's pile
+	 */
+	public int getPileSize(int id) {
+		return pileSizes[id];
+	}
+	/**
+	 * Gets the number of winners by the end of the round
+	 * @return the number of winners
+	 */
+	public int getNumWinners() {
+		return winnerIds.size();
+	}
+	/**
+	 * Gets the id of a winner
+	 * @param place the order they won in, starting at 0
+	 * @return the id of the winner, or -1 for Vacant and Tied seats
+	 */
+	public int getWinnerId(int place) {
+		return winnerIds.get(place);
+	}
+	/**
+	 * Gets the name of a winner
+	 * @param place the order they won in, starting at 0
+	 * @return the name of the winner
+	 */
+	public String getWinnerName(int place) {
+		return winnerNames.get(place);
+	}
+	/**
+	 * Gets the number of ballot moves made in the round
+	 * @return the number of moves
+	 */
+	public int getNumTransfers() {
+		return transferredBallots.length;
+	}
+	/**
+	 * Gets a ballot that moved in the round
+	 * @param i the position of the move in the round, starting at 0
+	 * @return the index of the ballot
+	 */
+	public int getTransferredBallot(int i) {
+		return transferredBallots[i];
+	}
+	/**
+	 * Gets the choice a ballot moved on to
+	 * @param i the position of the move in the round, starting at 0
+	 * @return the ranked choice, or -1 if the ballot was exhausted
+	 */
+	public int getTransferredChoice(int i) {
+		return transferredChoices[i];
+	}
+
+	/**
+	 * Works out the number of bytes in the payload of the round's frame
+	 * @return the size of the payload
+	 */
+	private int getPayloadSize() {
+		long size = 33L + 8L * continuing.length + 5L * ranked.length + 6L * transferredBallots.length;
+		for(String name : winnerNames)
+		{
+			size += 6 + name.getBytes(StandardCharsets.UTF_8).length;
+		}
+		if(size > Integer.MAX_VALUE - 12)
+			throw new IllegalStateException("Round " + round + " moved too many ballots to save in one checkpoint frame");
+		return (int)size;
+	}
+
+	/**
+	 * Writes every byte of a buffer at a position of a file
+	 * @param channel the file
+	 * @param buffer the bytes to write
+	 * @param position where to write them
+	 * @throws IOException if the file could not be written
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Reads part of a file into a new little endian buffer
+	 * @param channel the file
+	 * @param position where to start reading
+	 * @param length the number of bytes to read
+	 * @return the bytes, ready to be read from the start
+	 * @throws IOException if the file ends before the given number of bytes
+	 */
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Checkpoint log ends early");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+}
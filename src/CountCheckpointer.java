@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class CountCheckpointer implements CountObserver, TransferListener {
+
+	private Election election; //The election being counted
+	private Path checkpointFile; //Where the last full snapshot of the count is kept, if one has been taken
+	private Path logFile; //Where each round since the snapshot is kept, next to the checkpoint file
+	private long rankingsFingerprint; //Fingerprint of the election's ballots, worked out once since ballots never change during a count
+	private int round; //Number of rounds finished so far
+	private int[] transferredBallots = new int[1024]; //Ballots moved so far in the current round, in the order they moved
+	private short[] transferredChoices = new short[1024]; //Choice each of those ballots moved on to
+	private int numOfTransfers; //Number of ballot moves so far in the current round
+	private long logSize; //Bytes the log will hold once every round handed to the writer is written
+	private long snapshotSize; //Rough size of a full snapshot, the log is folded into a new snapshot once it grows past this
+	private ExecutorService writer; //Single thread that writes checkpoints in order while the count goes on
+	private FileChannel log; //The open log, only used by the writer thread
+	private volatile IOException writeError; //First error the writer ran into, reported once the count ends
+
+	/*
+	 * A checkpoint is the snapshot file, if there is one, and the log file named after it with ".log" on the end.
+	 * Each round only adds the ballots it moved to the log, so a round costs about as much to save as it did to count.
+	 * With no snapshot, the log starts from the count before its first round, which needs nothing saved since it comes straight from the ballots.
+	 */
+
+	/**
+	 * Constructor sets up checkpoints for an election, saved after every round
+	 * @param election the election being counted, which must not have started counting
+	 * @param checkpointFile the file snapshots are written to, with the rounds after them in a ".log" file next to it
+	 */
+	public CountCheckpointer(Election election, Path checkpointFile) {
+		this.election = election;
+		this.checkpointFile = checkpointFile;
+		logFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".log");
+		rankingsFingerprint = election.getRankingsFingerprint();
+		snapshotSize = 6L * election.getNumBallots() + 8L * election.getNumCandidates();
+		election.addTransferListener(this);
+		writer = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "checkpoint writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Puts the election back in the state of the checkpoint if there is one, so the count carries on from where it stopped.
+	 * The snapshot is restored first and then every whole round in the log after it. A round cut short by the program stopping is dropped.
+	 * @return the number of rounds that were already finished, or 0 if there was no checkpoint
+	 * @throws IOException if the checkpoint could not be read or belongs to different ballots
+	 */
+	public int resume() throws IOException {
+		if(Files.exists(checkpointFile))
+		{
+			CountCheckpoint checkpoint = CountCheckpoint.read(checkpointFile);
+			if(checkpoint.getRankingsFingerprint() != rankingsFingerprint || checkpoint.getNumBallots() != election.getNumBallots()
+					|| checkpoint.getNumCandidates() != election.getNumCandidates())
+				throw new IOException(checkpointFile + " was saved from a count of different ballots or candidates");
+			election.restore(checkpoint);
+			round = checkpoint.getRound();
+		}
+		if(Files.exists(logFile))
+		{
+			try(FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				long wholeRoundsEnd = 0; //Where the last whole round in the log ends
+				if(CountCheckpointDelta.checkLogHeader(channel, election.getNumBallots(), election.getNumCandidates(), rankingsFingerprint))
+				{
+					wholeRoundsEnd = CountCheckpointDelta.LOG_HEADER_SIZE;
+					CountCheckpointDelta delta;
+					while((delta = CountCheckpointDelta.read(channel, wholeRoundsEnd)) != null && delta.getRound() <= round + 1)
+					{
+						if(delta.getRound() == round + 1) //Rounds up to the snapshot's are left over from before it was taken
+						{
+							election.restore(delta);
+							round++;
+						}
+						wholeRoundsEnd += delta.getFrameSize();
+					}
+				}
+				channel.truncate(wholeRoundsEnd);
+				logSize = wholeRoundsEnd;
+			}
+		}
+		return round;
+	}
+
+	/**
+	 * Does nothing, since checkpoints are only taken between rounds
+	 */
+	public void startRound() {
+	}
+
+	/**
+	 * Does nothing, since checkpoints are only taken between rounds
+	 */
+	public void endProcessWinners() {
+	}
+
+	/**
+	 * Keeps the ballots that moved and the choices they moved on to, for the round being counted
+	 * @param fromId the id of the candidate the ballots left
+	 * @param pile the pile the ballots left
+	 * @param position the position in the pile of the first ballot that moved
+	 * @param numMoved the number of ballots that moved
+	 * @param destinations the id of the candidate each moved ballot went to, or -1 if it was exhausted
+	 */
+	public void recordTransfers(int fromId, BallotPile pile, int position, int numMoved, int[] destinations) {
+		if(numOfTransfers + numMoved > transferredBallots.length)
+		{
+			int capacity = Math.max(numOfTransfers + numMoved, transferredBallots.length * 2);
+			transferredBallots = Arrays.copyOf(transferredBallots, capacity);
+			transferredChoices = Arrays.copyOf(transferredChoices, capacity);
+		}
+		for(int i = 0; i < numMoved; i++)
+		{
+			int index = pile.get(position + i);
+			transferredBallots[numOfTransfers] = index;
+			transferredChoices[numOfTransfers++] = (short)election.getChoice(index);
+		}
+	}
+
+	/**
+	 * Takes a checkpoint after a round, which is written to disk on another thread in the order the rounds finished.
+	 * Usually only the ballots moved in the round are saved, added to the log. Once the log is bigger than a full snapshot would be,
+	 * a full snapshot is taken instead, which costs one copy of the ballot cursors and piles, and the log starts again after it.
+	 * @param seatWon if processWinners gave out a seat this round
+	 */
+	public void endRound(boolean seatWon) {
+		round++;
+		CountCheckpointDelta delta = election.checkpointRound(round, Arrays.copyOf(transferredBallots, numOfTransfers),
+				Arrays.copyOf(transferredChoices, numOfTransfers));
+		numOfTransfers = 0;
+		if(logSize + delta.getFrameSize() > snapshotSize)
+		{
+			CountCheckpoint checkpoint = election.checkpoint(round, rankingsFingerprint);
+			logSize = CountCheckpointDelta.LOG_HEADER_SIZE;
+			writer.execute(() -> writeSnapshot(checkpoint));
+		}
+		else
+		{
+			logSize = Math.max(logSize, CountCheckpointDelta.LOG_HEADER_SIZE) + delta.getFrameSize();
+			writer.execute(() -> appendRound(delta));
+		}
+	}
+
+	/**
+	 * Waits for the last checkpoint to be written, then deletes the checkpoint files because the count is finished
+	 * @throws IOException if a checkpoint could not be written or the files could not be deleted
+	 * @throws InterruptedException if the thread was interrupted while waiting for the writer
+	 */
+	public void finish() throws IOException, InterruptedException {
+		writer.shutdown();
+		writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		if(log != null)
+			log.close();
+		if(writeError != null)
+			throw writeError;
+		Files.deleteIfExists(logFile);
+		Files.deleteIfExists(checkpointFile);
+	}
+
+	/**
+	 * Gets the number of rounds finished so far, including rounds finished before a resume
+	 * @return the number of rounds
+	 */
+	public int getRound() {
+		return round;
+	}
+
+	/**
+	 * Checks if the count has found an unbreakable tie, including one found before the count was resumed
+	 * @return if a runoff election is needed
+	 */
+	public boolean isRunoffNeeded() {
+		return election.isRunoffNeeded();
+	}
+
+	/**
+	 * Adds a round to the end of the log, run on the writer thread. The log is forced to disk before the next round is written.
+	 * @param delta the round
+	 */
+	private void appendRound(CountCheckpointDelta delta) {
+		if(writeError != null)
+			return;
+		try
+		{
+			if(log == null)
+				log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			if(log.size() < CountCheckpointDelta.LOG_HEADER_SIZE)
+			{
+				log.truncate(0);
+				CountCheckpointDelta.writeLogHeader(log, election.getNumBallots(), election.getNumCandidates(), rankingsFingerprint);
+			}
+			delta.append(log);
+			log.force(false);
+		}
+		catch(IOException e)
+		{
+			writeError = e;
+		}
+	}
+
+	/**
+	 * Writes a full snapshot and then empties the log, run on the writer thread.
+	 * If the program stops in between, the rounds left in the log are skipped on resume because the snapshot already has them.
+	 * @param checkpoint the snapshot
+	 */
+	private void writeSnapshot(CountCheckpoint checkpoint) {
+		if(writeError != null)
+			return;
+		try
+		{
+			checkpoint.write(checkpointFile);
+			if(log != null)
+			{
+				log.truncate(CountCheckpointDelta.LOG_HEADER_SIZE);
+				log.force(false);
+			}
+			else
+				Files.deleteIfExists(logFile);
+		}
+		catch(IOException e)
+		{
+			writeError = e;
+		}
+	}
+
+}
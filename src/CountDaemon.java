@@ -0,0 +1,321 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import jdk.net.ExtendedSocketOptions;
+
+public class CountDaemon {
+
+	private static final String END_OF_REPLY = "END"; //Line that ends every reply, since the winners themselves have blank lines
+	private static final String SHUTDOWN_JOB = "Shutdown"; //Job that stops the daemon instead of counting an election
+	private static final String TCP_FLAG = "--tcp"; //Argument that asks for a loopback port instead of a Unix domain socket
+	private static final String RESULTS_STREAM_SETTING = "Results_Stream"; //Job setting that sends the results of each round back on the connection, as json or csv
+
+	private ServerSocketChannel server; //Socket jobs are sent to, only reachable from this machine
+	private Path socketFile; //File of a Unix domain socket, deleted when the daemon stops, null for a loopback port
+	private UserPrincipal owner; //User the daemon runs as, the only user whose jobs are counted on a Unix domain socket
+	private ExecutorService workers; //Threads the elections are counted on
+	private ExecutorService connections; //Threads that read jobs and write replies, so a slow client never holds a worker
+	private int numOfReadThreads; //Most threads each election reads its ballots with
+
+	/**
+	 * Runs a count daemon that keeps one JVM up and counts elections sent to it over a local socket, so each count skips the JVM start and runs warmed up code.
+	 * Arguments are the path of a Unix domain socket, or --tcp and a loopback port number, then optionally the number of elections to count at once (the number of processors if it is left out).
+	 * Jobs read and write whatever files their settings name, so the socket only takes jobs from the user running the daemon.
+	 * A loopback port takes jobs from every user of the machine, which is why it has to be asked for with --tcp.
+	 * A job is the text of a settings file, in the same layout, ended by a blank line or the end of the connection. Many jobs can be sent on one connection.
+	 * The reply to each job is a line saying how many ballots were counted and how long it took, or why it failed, then the winners, then a line reading END.
+	 * A job with "Results_Stream = json" or "Results_Stream = csv" also gets the results of each round as it is counted, in the layout of the results files, before that first line.
+	 * Each election still writes its own winners file and any other files set in its settings. A job of just "Shutdown" stops the daemon.
+	 * @param args the socket path or --tcp and the port, and the number of threads
+	 * @throws IOException if the socket could not be opened
+	 * @throws InterruptedException if the thread was interrupted while the daemon was stopping
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		boolean loopbackPort = args.length > 0 && args[0].equals(TCP_FLAG);
+		int firstArg = loopbackPort ? 1 : 0; //Index of the port or socket path
+		if(args.length <= firstArg)
+		{
+			System.out.println("Usage: CountDaemon <socket path> [number of threads]");
+			System.out.println("   or: CountDaemon --tcp <port> [number of threads]");
+			return;
+		}
+		if(!loopbackPort && args[firstArg].matches("\\d+"))
+		{
+			System.out.println("A port takes jobs from every user of this machine, which can read and write any file the daemon can. Use --tcp " + args[firstArg] + " to listen on it anyway");
+			return;
+		}
+		int numOfThreads = args.length > firstArg + 1 ? Integer.parseInt(args[firstArg + 1]) : Runtime.getRuntime().availableProcessors();
+		CountDaemon daemon = new CountDaemon(args[firstArg], loopbackPort, numOfThreads);
+		System.out.println("Counting elections sent to " + args[firstArg] + " on " + Math.max(numOfThreads, 1) + " threads");
+		daemon.serve();
+	}
+
+	/**
+	 * Constructor opens the socket, which is a port on the loopback address or a Unix domain socket that only the user running the daemon can connect to
+	 * @param address the port number or socket path
+	 * @param loopbackPort if the address is a port number on the loopback address rather than a socket path
+	 * @param numOfThreads the most elections to count at once
+	 * @throws IOException if the socket could not be opened, such as when the socket file is left over from a daemon that did not stop cleanly
+	 */
+	public CountDaemon(String address, boolean loopbackPort, int numOfThreads) throws IOException {
+		SocketAddress socketAddress;
+		if(loopbackPort)
+		{
+			server = ServerSocketChannel.open(StandardProtocolFamily.INET);
+			socketAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+		}
+		else
+		{
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			socketFile = Path.of(address);
+			socketAddress = UnixDomainSocketAddress.of(socketFile);
+		}
+		try
+		{
+			server.bind(socketAddress);
+		}
+		catch(IOException e)
+		{
+			server.close();
+			throw new IOException("Could not open " + address + (socketFile != null && Files.exists(socketFile) ? ", delete the file if no daemon is using it" : ""), e);
+		}
+		if(socketFile != null)
+		{
+			try
+			{
+				owner = Files.getOwner(socketFile);
+				Files.setPosixFilePermissions(socketFile, PosixFilePermissions.fromString("rw-------")); //Other users cannot connect at all where connecting needs write permission
+			}
+			catch(UnsupportedOperationException e)
+			{
+				//No POSIX permissions here, so only the check of each connection's user keeps other users out
+			}
+			catch(IOException e)
+			{
+				server.close();
+				Files.deleteIfExists(socketFile);
+				throw e;
+			}
+		}
+		workers = Executors.newFixedThreadPool(Math.max(numOfThreads, 1));
+		connections = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task);
+			thread.setDaemon(true); //An idle client must not keep the daemon up once it is told to stop
+			return thread;
+		});
+		numOfReadThreads = Math.max(Runtime.getRuntime().availableProcessors() / Math.max(numOfThreads, 1), 1); //Share the processors out between the elections counted at once
+	}
+
+	/**
+	 * Accepts connections until a shutdown job is sent, then waits for the elections being counted and closes the socket
+	 * @throws IOException if a connection could not be accepted
+	 * @throws InterruptedException if the thread was interrupted while waiting for the elections
+	 */
+	public void serve() throws IOException, InterruptedException {
+		try
+		{
+			while(true)
+			{
+				SocketChannel connection;
+				try
+				{
+					connection = server.accept();
+				}
+				catch(ClosedChannelException e)
+				{
+					break; //Closed by a shutdown job, during the accept or before it
+				}
+				connections.execute(() -> handle(connection));
+			}
+		}
+		finally
+		{
+			server.close();
+			if(socketFile != null)
+				Files.deleteIfExists(socketFile);
+			connections.shutdown();
+			workers.shutdown();
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Reads the jobs of one connection, counts each one on a worker, and writes each reply as soon as its election is counted
+	 * @param connection the connection
+	 */
+	private void handle(SocketChannel connection) {
+		if(!isFromOwner(connection))
+		{
+			System.out.println("Refused a connection from another user");
+			try
+			{
+				connection.close();
+			}
+			catch(IOException e)
+			{
+				//The connection is dropped either way
+			}
+			return;
+		}
+		try(connection;
+				BufferedReader input = new BufferedReader(new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8));
+				Writer output = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(connection), StandardCharsets.UTF_8)))
+		{
+			String job;
+			while((job = readJob(input)) != null)
+			{
+				if(job.trim().equals(SHUTDOWN_JOB))
+				{
+					output.write("Stopping\n" + END_OF_REPLY + "\n");
+					output.flush();
+					server.close(); //Ends the accept loop
+					return;
+				}
+				output.write(count(job, connection));
+				output.write(END_OF_REPLY + "\n");
+				output.flush();
+			}
+		}
+		catch(IOException e)
+		{
+			System.out.println("Connection failed: " + e);
+		}
+	}
+
+	/**
+	 * Checks that a connection comes from the user running the daemon. Connections to a loopback port are all let in, since their user cannot be known.
+	 * Where the system cannot say who connected, the socket file's permissions are relied on instead.
+	 * @param connection the connection
+	 * @return if the connection's jobs can be counted
+	 */
+	private boolean isFromOwner(SocketChannel connection) {
+		if(owner == null || !connection.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED))
+			return true;
+		try
+		{
+			return connection.getOption(ExtendedSocketOptions.SO_PEERCRED).user().equals(owner);
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Counts one job on a worker and waits for it. If the job asks for the results to be streamed, each round is written to the connection as it is counted.
+	 * @param job the settings of the election
+	 * @param connection the connection the job came in on
+	 * @return the reply to the job, without the line ending it
+	 */
+	private String count(String job, SocketChannel connection) {
+		Future<ElectionResult> future;
+		try
+		{
+			future = workers.submit(() -> {
+				ElectionSettings settings = new ElectionSettings(job);
+				String resultsStream = settings.getOptionalSetting(RESULTS_STREAM_SETTING); //Which results layout to send back, if any
+				if(resultsStream != null && !resultsStream.trim().equalsIgnoreCase("json") && !resultsStream.trim().equalsIgnoreCase("csv"))
+					throw new IllegalArgumentException(RESULTS_STREAM_SETTING + " must be json or csv, not " + resultsStream.trim());
+				WritableByteChannel resultsOutput = new UnclosedChannel(connection); //The count closes its results channels, which must not close the connection
+				boolean streamJson = resultsStream != null && resultsStream.trim().equalsIgnoreCase("json");
+				boolean streamCsv = resultsStream != null && resultsStream.trim().equalsIgnoreCase("csv");
+				return PerformElection.runElection(settings, numOfReadThreads, streamJson ? resultsOutput : null, streamCsv ? resultsOutput : null);
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			return "Failed: the daemon is stopping\n"; //A shutdown job came in on another connection
+		}
+		try
+		{
+			ElectionResult result = future.get();
+			return String.format("Counted %d ballots in %d ms\n%s", result.getNumBallots(), result.getCountTimeNanos() / 1000000, result.getWinners());
+		}
+		catch(ExecutionException e)
+		{
+			return "Failed: " + e.getCause() + "\n";
+		}
+		catch(InterruptedException e)
+		{
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			return "Failed: the daemon is stopping\n";
+		}
+	}
+
+	/**
+	 * Reads the lines of one job, up to a blank line or the end of the connection. Blank lines before the job are skipped.
+	 * @param input the connection's input
+	 * @return the job, or null if the connection ended first
+	 * @throws IOException if the connection could not be read
+	 */
+	private static String readJob(BufferedReader input) throws IOException {
+		StringBuilder job = new StringBuilder();
+		String line;
+		while((line = input.readLine()) != null)
+		{
+			if(!line.trim().isEmpty())
+				job.append(line).append('\n');
+			else if(job.length() > 0)
+				break;
+		}
+		return job.length() > 0 ? job.toString() : null;
+	}
+
+	/**
+	 * Channel that writes to a connection but leaves it open when closed, so a count can stream its results on a connection that carries more jobs after it
+	 */
+	private static class UnclosedChannel implements WritableByteChannel {
+
+		private WritableByteChannel connection; //Where the bytes are written
+
+		/**
+		 * Constructor wraps a connection
+		 * @param connection the connection
+		 */
+		UnclosedChannel(WritableByteChannel connection) {
+			this.connection = connection;
+		}
+
+		public int write(ByteBuffer source) throws IOException {
+			return connection.write(source);
+		}
+
+		public boolean isOpen() {
+			return connection.isOpen();
+		}
+
+		/**
+		 * Does nothing, since the connection is closed once its last job is answered
+		 */
+		public void close() {
+		}
+
+	}
+
+}
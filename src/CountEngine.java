@@ -0,0 +1,98 @@
+import java.io.PrintWriter;
+import java.util.List;
+
+public interface CountEngine {
+
+	/**
+	 * Gets the number of ballots cast in the election
+	 * @return The number of ballots
+	 */
+	public int getNumBallots();
+
+	/**
+	 * Checks to see if any candidate has reached the vote threshold, and if so gives them a seat and redistributes their surplus ballots.
+	 * @param threshold The minimum number of votes required to win a seat
+	 * @return If a candidate has won a seat or not
+	 */
+	public boolean processWinners(int threshold);
+
+	/**
+	 * Removes the last place candidate and everyone tied with them, or fills the remaining seats if that cannot be done.
+	 * @param numTotalSeats The number of seats that can be won in total (not remaining number of seats)
+	 * @return If candidates were removed or if all have won. If false is returned, there was an unbreakable tie.
+	 */
+	public boolean removeLastPlaceCandidates(int numTotalSeats);
+
+	/**
+	 * Gets number of candidates that have won so far
+	 * @return The number of candidates that have won so far
+	 */
+	public int getNumWinners();
+
+	/**
+	 * Gets the number of candidates that ran in the election, including those that have won or been eliminated
+	 * @return The number of candidates
+	 */
+	public int getNumCandidates();
+
+	/**
+	 * Gets the name of a candidate
+	 * @param id The id of the candidate
+	 * @return The name of the candidate
+	 */
+	public String getCandidateName(int id);
+
+	/**
+	 * Checks if a candidate is still in the running, meaning they have not won or been eliminated
+	 * @param id The id of the candidate
+	 * @return If the candidate is still in the running
+	 */
+	public boolean isContinuing(int id);
+
+	/**
+	 * Gets the number of ballots a candidate currently holds
+	 * @param id The id of the candidate
+	 * @return The number of votes the candidate has
+	 */
+	public int getVotes(int id);
+
+	/**
+	 * Gets the number of ballots a candidate shows up on at any position, which is used to break ties
+	 * @param id The id of the candidate
+	 * @return The total votes of the candidate
+	 */
+	public int getTotalVotes(int id);
+
+	/**
+	 * Gets the names of the candidates who have won so far, in the order they won.
+	 * Seats that could not be filled are named Vacant, and seats left to a runoff are named Tied.
+	 * @return The names of the winners
+	 */
+	public List<String> getWinnerNames();
+
+	/**
+	 * Gets the ids of the candidates who have won so far, in the same order as getWinnerNames
+	 * @return The id of each winner, or -1 for Vacant and Tied seats
+	 */
+	public List<Integer> getWinnerIds();
+
+	/**
+	 * Gets the number of times a ballot has been moved on from a candidate's pile so far
+	 * @return The number of ballot transfers
+	 */
+	public long getNumTransferred();
+
+	/**
+	 * Gets the number of ballots that no longer count towards anyone because all of their remaining candidates are out
+	 * @return The number of exhausted ballots
+	 */
+	public int getNumExhausted();
+
+	/**
+	 * Outputs a list of the winning candidates, in order of winning, to the file provided in the PrintWriter
+	 * @param output A PrintWriter object for the output file for the winning candidates
+	 * @param threshold The vote threshold that was used
+	 */
+	public void outputWinners(PrintWriter output, int threshold);
+
+}
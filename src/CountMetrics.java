@@ -0,0 +1,220 @@
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import jdk.jfr.EventType;
+
+public class CountMetrics implements CountObserver {
+
+	private CountEngine election; //The election being measured
+	private boolean keepRounds; //If each round is kept for the summary, otherwise rounds are only sent to JFR
+	private ArrayList<String> rounds = new ArrayList<String>(); //Summary of each finished round, as a JSON object
+	private com.sun.management.ThreadMXBean threadBean; //Measures allocation by the counting thread, null if the JVM cannot
+
+	private int roundsDone; //Rounds counted before these metrics started, when a count is resumed from a checkpoint
+	private int roundNumber; //Number of the current round, starting after roundsDone
+	private CountRoundEvent event; //JFR event for the current round
+	private boolean[] wasContinuing; //Which candidates were in the running when the current round started
+	private long countStart; //Time the first round measured started
+	private long roundStart; //Time the current round started
+	private long roundEnd; //Time the last finished round ended
+	private long processWinnersEnd; //Time processWinners returned in the current round
+	private long startAllocated; //Bytes the counting thread had allocated when the current round started
+	private long startTransferred; //Ballot transfers made before the current round
+	private int startExhausted; //Ballots exhausted before the current round
+	private int startWinners; //Seats given out before the current round
+
+	/**
+	 * Creates metrics for an election if anything will read them, so that a count without a summary or a JFR recording pays nothing.
+	 * Whether the JFR event is recorded is checked once here, so a recording has to be running before the count starts.
+	 * @param election the election being counted
+	 * @param keepRounds if each round should be kept for writeSummary
+	 * @param roundsDone the number of rounds already counted, 0 unless the count was resumed from a checkpoint
+	 * @return the metrics, or null if neither a summary nor JFR events are wanted
+	 */
+	public static CountMetrics create(CountEngine election, boolean keepRounds, int roundsDone) {
+		if(!keepRounds && !EventType.getEventType(CountRoundEvent.class).isEnabled())
+			return null;
+		return new CountMetrics(election, keepRounds, roundsDone);
+	}
+
+	/**
+	 * Constructor sets up metrics for an election. Rounds are always sent to JFR when it is recording them.
+	 * @param election the election being counted
+	 * @param keepRounds if each round should be kept for writeSummary
+	 * @param roundsDone the number of rounds already counted, so that the first round measured is numbered after them
+	 */
+	public CountMetrics(CountEngine election, boolean keepRounds, int roundsDone) {
+		this.election = election;
+		this.keepRounds = keepRounds;
+		this.roundsDone = roundsDone;
+		roundNumber = roundsDone;
+		wasContinuing = new boolean[election.getNumCandidates()];
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported())
+		{
+			threadBean = (com.sun.management.ThreadMXBean)bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	/**
+	 * Records the state of the election before a round. Must be called by the thread doing the count.
+	 */
+	public void startRound() {
+		roundNumber++;
+		event = new CountRoundEvent();
+		event.begin();
+		for(int id = 0; id < wasContinuing.length; id++)
+		{
+			wasContinuing[id] = election.isContinuing(id);
+		}
+		startTransferred = election.getNumTransferred();
+		startExhausted = election.getNumExhausted();
+		startWinners = election.getNumWinners();
+		startAllocated = getAllocatedBytes();
+		roundStart = System.nanoTime();
+		if(roundNumber == roundsDone + 1)
+			countStart = roundStart;
+		processWinnersEnd = roundStart;
+	}
+
+	/**
+	 * Records that processWinners has returned in the current round
+	 */
+	public void endProcessWinners() {
+		processWinnersEnd = System.nanoTime();
+	}
+
+	/**
+	 * Records the state of the election after a round, sends the round to JFR and keeps it for the summary
+	 * @param seatWon if processWinners gave out a seat this round
+	 */
+	public void endRound(boolean seatWon) {
+		roundEnd = System.nanoTime();
+		long allocated = startAllocated < 0 ? -1 : getAllocatedBytes() - startAllocated;
+		event.end();
+		boolean sendEvent = event.shouldCommit();
+		if(!sendEvent && !keepRounds)
+			return;
+
+		ArrayList<String> changed = new ArrayList<String>(); //Candidates that left the running this round
+		int numContinuing = 0;
+		int largestPile = 0;
+		int smallestPile = Integer.MAX_VALUE;
+		StringBuilder piles = keepRounds ? new StringBuilder("[") : null; //Pile of each continuing candidate for the summary, by id since names can repeat
+		for(int id = 0; id < wasContinuing.length; id++)
+		{
+			if(election.isContinuing(id))
+			{
+				int votes = election.getVotes(id);
+				if(piles != null)
+				{
+					if(numContinuing > 0)
+						piles.append(", ");
+					piles.append("{\"id\": ").append(id).append(", \"name\": ").append(quote(election.getCandidateName(id))).append(", \"votes\": ").append(votes).append('}');
+				}
+				numContinuing++;
+				largestPile = Math.max(largestPile, votes);
+				smallestPile = Math.min(smallestPile, votes);
+			}
+			else if(wasContinuing[id])
+				changed.add(election.getCandidateName(id));
+		}
+		if(numContinuing == 0)
+			smallestPile = 0;
+		String action = seatWon || election.getNumWinners() > startWinners && !changed.isEmpty() ? "elected" : changed.isEmpty() ? "tied" : "excluded";
+		long processWinnersTime = processWinnersEnd - roundStart;
+		long removeLastPlaceTime = seatWon ? 0 : roundEnd - processWinnersEnd;
+		long ballotsTransferred = election.getNumTransferred() - startTransferred;
+		int ballotsExhausted = election.getNumExhausted() - startExhausted;
+
+		if(sendEvent)
+		{
+			event.round = roundNumber;
+			event.action = action;
+			event.candidates = String.join(", ", changed);
+			event.processWinnersTime = processWinnersTime;
+			event.removeLastPlaceTime = removeLastPlaceTime;
+			event.allocated = allocated;
+			event.ballotsTransferred = ballotsTransferred;
+			event.ballotsExhausted = ballotsExhausted;
+			event.continuingCandidates = numContinuing;
+			event.largestPile = largestPile;
+			event.smallestPile = smallestPile;
+			event.commit();
+		}
+		if(keepRounds)
+		{
+			StringBuilder names = new StringBuilder("[");
+			for(String name : changed)
+			{
+				if(names.length() > 1)
+					names.append(", ");
+				names.append(quote(name));
+			}
+			names.append(']');
+			piles.append(']');
+			rounds.add(String.format("{\"round\": %d, \"action\": \"%s\", \"candidates\": %s, \"wallTimeNanos\": %d, \"processWinnersNanos\": %d, "
+					+ "\"removeLastPlaceNanos\": %d, \"allocatedBytes\": %d, \"ballotsTransferred\": %d, \"ballotsExhausted\": %d, \"piles\": %s}",
+					roundNumber, action, names, roundEnd - roundStart, processWinnersTime, removeLastPlaceTime, allocated,
+					ballotsTransferred, ballotsExhausted, piles));
+		}
+	}
+
+	/**
+	 * Writes every kept round as one JSON document, with one round per line so that it can also be read line by line
+	 * @param output where to write the summary
+	 * @param numOfSeats the number of seats being filled
+	 * @param threshold the vote threshold that was used
+	 */
+	public void writeSummary(PrintWriter output, int numOfSeats, int threshold) {
+		output.printf("{\"engine\": %s, \"ballots\": %d, \"candidates\": %d, \"seats\": %d, \"threshold\": %d, \"exhausted\": %d, \"countTimeNanos\": %d, \"resumedAfterRound\": %d, \"rounds\": [\n",
+				quote(election.getClass().getSimpleName()), election.getNumBallots(), election.getNumCandidates(), numOfSeats, threshold,
+				election.getNumExhausted(), roundEnd - countStart, roundsDone);
+		for(int i = 0; i < rounds.size(); i++)
+		{
+			output.print(rounds.get(i));
+			output.print(i + 1 < rounds.size() ? ",\n" : "\n");
+		}
+		output.print("]}\n");
+	}
+
+	/**
+	 * Gets the number of rounds started so far, including any counted before a resume
+	 * @return the number of rounds
+	 */
+	public int getNumRounds() {
+		return roundNumber;
+	}
+
+	/**
+	 * Gets how many bytes the current thread has allocated in total
+	 * @return the number of bytes, or -1 if the JVM cannot measure it
+	 */
+	private long getAllocatedBytes() {
+		if(threadBean == null)
+			return -1;
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Quotes a string as a JSON string, escaping the characters JSON does not allow inside one
+	 * @param value the string to quote
+	 * @return the quoted string
+	 */
+	public static String quote(String value) {
+		StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+		for(char c : value.toCharArray())
+		{
+			if(c == '"' || c == '\\')
+				quoted.append('\\').append(c);
+			else if(c < 0x20)
+				quoted.append(String.format("\\u%04x", (int)c));
+			else
+				quoted.append(c);
+		}
+		return quoted.append('"').toString();
+	}
+
+}
@@ -0,0 +1,19 @@
+public interface CountObserver {
+
+	/**
+	 * Called before each round of the count, on the thread doing the count
+	 */
+	public void startRound();
+
+	/**
+	 * Called in each round once processWinners has returned, before any candidates are removed
+	 */
+	public void endProcessWinners();
+
+	/**
+	 * Called after each round of the count, once every ballot of the round has moved
+	 * @param seatWon If processWinners gave out a seat this round
+	 */
+	public void endRound(boolean seatWon);
+
+}
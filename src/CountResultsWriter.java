@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CountResultsWriter implements CountObserver {
+
+	private static final String CSV_HEADER = "record,round,seat,candidate,status,votes_before,votes_after,change,total_votes\n"; //Columns of the CSV output
+
+	private CountEngine election; //The election being counted
+	private WritableByteChannel jsonOutput; //Where JSON Lines records are written, null to not write them
+	private WritableByteChannel csvOutput; //Where CSV rows are written, null to not write them
+	private CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder(); //Turns each round's text into bytes
+	private ByteBuffer buffer = ByteBuffer.allocate(1 << 16); //Bytes waiting to be written, reused for every round
+	private StringBuilder json = new StringBuilder(); //JSON Lines records of the current round
+	private StringBuilder csv = new StringBuilder(); //CSV rows of the current round
+	private IOException writeError; //First error writing the results, after which nothing more is written. Reported by finish.
+
+	private int roundNumber; //Number of the current round
+	private int[] votesBefore; //Votes of each candidate when the current round started, -1 if they were not continuing
+	private int startExhausted; //Ballots exhausted before the current round
+	private int startWinners; //Seats given out before the current round
+
+	/**
+	 * Opens results files for an election, replacing any files already there
+	 * @param election the election being counted
+	 * @param jsonFile the JSON Lines file, or null to not write one
+	 * @param csvFile the CSV file, or null to not write one
+	 * @return the writer, or null if neither file is wanted
+	 * @throws IOException if a file could not be opened
+	 */
+	public static CountResultsWriter open(CountEngine election, Path jsonFile, Path csvFile) throws IOException {
+		if(jsonFile == null && csvFile == null)
+			return null;
+		WritableByteChannel jsonOutput = jsonFile == null ? null : FileChannel.open(jsonFile,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		WritableByteChannel csvOutput = null;
+		try
+		{
+			csvOutput = csvFile == null ? null : FileChannel.open(csvFile,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		catch(IOException e)
+		{
+			if(jsonOutput != null)
+				jsonOutput.close();
+			throw e;
+		}
+		return new CountResultsWriter(election, jsonOutput, csvOutput);
+	}
+
+	/**
+	 * Constructor sets up results for an election, written to the given channels as the count goes.
+	 * Any channel works, so results can go to a file, a pipe or a socket, and a reader can start on them before the count finishes.
+	 * @param election the election being counted
+	 * @param jsonOutput where JSON Lines records are written, or null to not write them
+	 * @param csvOutput where CSV rows are written, or null to not write them
+	 */
+	public CountResultsWriter(CountEngine election, WritableByteChannel jsonOutput, WritableByteChannel csvOutput) {
+		this.election = election;
+		this.jsonOutput = jsonOutput;
+		this.csvOutput = csvOutput;
+		votesBefore = new int[election.getNumCandidates()];
+	}
+
+	/**
+	 * Writes the opening record, with the settings of the count and every candidate's first preferences
+	 * @param numOfSeats the number of seats being filled
+	 * @param voteThreshold the number of votes needed to win a seat
+	 * @param roundsDone the number of rounds already counted, if the count was resumed from a checkpoint
+	 * @throws IOException if the results could not be written
+	 */
+	public void start(int numOfSeats, int voteThreshold, int roundsDone) throws IOException {
+		roundNumber = roundsDone;
+		json.append("{\"record\": \"start\", \"seats\": ").append(numOfSeats).append(", \"threshold\": ").append(voteThreshold)
+				.append(", \"ballots\": ").append(election.getNumBallots()).append(", \"resumedAfterRound\": ").append(roundsDone).append(", \"candidates\": [");
+		if(csvOutput != null)
+			csv.append(CSV_HEADER);
+		for(int id = 0; id < votesBefore.length; id++)
+		{
+			if(id > 0)
+				json.append(", ");
+			json.append("{\"name\": ").append(CountMetrics.quote(election.getCandidateName(id))).append(", \"votes\": ").append(election.getVotes(id))
+					.append(", \"totalVotes\": ").append(election.getTotalVotes(id)).append(", \"continuing\": ").append(election.isContinuing(id)).append('}');
+		}
+		json.append("]}\n");
+		flush();
+	}
+
+	/**
+	 * Records the state of the election before a round
+	 */
+	public void startRound() {
+		roundNumber++;
+		for(int id = 0; id < votesBefore.length; id++)
+		{
+			votesBefore[id] = election.isContinuing(id) ? election.getVotes(id) : -1;
+		}
+		startExhausted = election.getNumExhausted();
+		startWinners = election.getNumWinners();
+	}
+
+	/**
+	 * Does nothing, since a round's transfers are only written once the round ends
+	 */
+	public void endProcessWinners() {
+	}
+
+	/**
+	 * Writes the transfer table of the round that just finished: the votes of every candidate who was in the running when it started,
+	 * before and after, and the ballots that were exhausted. The round is written out before this returns.
+	 * If it cannot be written, the count carries on and the error is thrown by finish.
+	 * @param seatWon if processWinners gave out a seat this round
+	 */
+	public void endRound(boolean seatWon) {
+		boolean elected = seatWon || election.getNumWinners() > startWinners;
+		ArrayList<String> changed = new ArrayList<String>(); //Candidates that left the running this round
+		for(int id = 0; id < votesBefore.length; id++)
+		{
+			if(votesBefore[id] >= 0 && !election.isContinuing(id))
+				changed.add(election.getCandidateName(id));
+		}
+		String action = elected && !changed.isEmpty() ? "elected" : changed.isEmpty() ? "tied" : "excluded";
+
+		json.append("{\"record\": \"round\", \"round\": ").append(roundNumber).append(", \"action\": \"").append(action).append("\", \"candidates\": [");
+		for(int i = 0; i < changed.size(); i++)
+		{
+			json.append(i > 0 ? ", " : "").append(CountMetrics.quote(changed.get(i)));
+		}
+		json.append("], \"transfers\": [");
+		boolean first = true;
+		for(int id = 0; id < votesBefore.length; id++)
+		{
+			if(votesBefore[id] < 0)
+				continue;
+			int votesAfter = election.getVotes(id);
+			String status = election.isContinuing(id) ? "continuing" : action;
+			json.append(first ? "" : ", ").append("{\"name\": ").append(CountMetrics.quote(election.getCandidateName(id))).append(", \"status\": \"").append(status)
+					.append("\", \"before\": ").append(votesBefore[id]).append(", \"after\": ").append(votesAfter).append(", \"change\": ").append(votesAfter - votesBefore[id]).append('}');
+			first = false;
+			appendCsvRow("transfer", roundNumber, "", election.getCandidateName(id), status, votesBefore[id], votesAfter, election.getTotalVotes(id));
+		}
+		int exhausted = election.getNumExhausted();
+		json.append("], \"exhausted\": {\"before\": ").append(startExhausted).append(", \"after\": ").append(exhausted)
+				.append(", \"change\": ").append(exhausted - startExhausted).append("}}\n");
+		appendCsvRow("exhausted", roundNumber, "", "", "", startExhausted, exhausted, -1);
+		try
+		{
+			flush();
+		}
+		catch(IOException e)
+		{
+			writeError = e;
+		}
+	}
+
+	/**
+	 * Writes the records that end the count: the candidates left in an unbreakable tie if there was one, then every seat in the order it was won
+	 * @param needsRunoffElection if the count ended in an unbreakable tie
+	 * @throws IOException if these or any earlier results could not be written
+	 */
+	public void finish(boolean needsRunoffElection) throws IOException {
+		if(needsRunoffElection)
+		{
+			json.append("{\"record\": \"tie\", \"round\": ").append(roundNumber).append(", \"candidates\": [");
+			boolean first = true;
+			for(int id : getTiedCandidates())
+			{
+				json.append(first ? "" : ", ").append("{\"name\": ").append(CountMetrics.quote(election.getCandidateName(id))).append(", \"votes\": ")
+						.append(election.getVotes(id)).append(", \"totalVotes\": ").append(election.getTotalVotes(id)).append('}');
+				first = false;
+				appendCsvRow("tie", roundNumber, "", election.getCandidateName(id), "tied", election.getVotes(id), election.getVotes(id), election.getTotalVotes(id));
+			}
+			json.append("]}\n");
+		}
+
+		List<String> winnerNames = election.getWinnerNames();
+		List<Integer> winnerIds = election.getWinnerIds(); //Ids rather than names, since a candidate may share a name with another candidate or with a Vacant or Tied seat
+		for(int seat = 1; seat <= winnerNames.size(); seat++)
+		{
+			String name = winnerNames.get(seat - 1);
+			int id = winnerIds.get(seat - 1);
+			int votes = id < 0 ? 0 : election.getVotes(id);
+			int totalVotes = id < 0 ? 0 : election.getTotalVotes(id);
+			json.append("{\"record\": \"seat\", \"seat\": ").append(seat).append(", \"name\": ").append(CountMetrics.quote(name))
+					.append(", \"votes\": ").append(votes).append(", \"totalVotes\": ").append(totalVotes).append("}\n");
+			appendCsvRow("seat", roundNumber, Integer.toString(seat), name, id < 0 ? name.toLowerCase() : "elected", votes, votes, totalVotes);
+		}
+		json.append("{\"record\": \"end\", \"rounds\": ").append(roundNumber).append(", \"runoff\": ").append(needsRunoffElection)
+				.append(", \"exhausted\": ").append(election.getNumExhausted()).append("}\n");
+		flush();
+		if(writeError != null)
+			throw writeError;
+	}
+
+	/**
+	 * Closes both channels
+	 * @throws IOException if a channel could not be closed
+	 */
+	public void close() throws IOException {
+		try
+		{
+			if(jsonOutput != null)
+				jsonOutput.close();
+		}
+		finally
+		{
+			if(csvOutput != null)
+				csvOutput.close();
+		}
+	}
+
+	/**
+	 * Finds the candidates left in an unbreakable tie, which are every continuing candidate tied with the last place candidate on votes and total votes
+	 * @return the ids of the tied candidates
+	 */
+	private ArrayList<Integer> getTiedCandidates() {
+		int lastPlace = -1;
+		for(int id = 0; id < votesBefore.length; id++)
+		{
+			if(election.isContinuing(id) && (lastPlace < 0 || election.getVotes(id) < election.getVotes(lastPlace)
+					|| election.getVotes(id) == election.getVotes(lastPlace) && election.getTotalVotes(id) < election.getTotalVotes(lastPlace)))
+				lastPlace = id;
+		}
+		ArrayList<Integer> tied = new ArrayList<Integer>();
+		for(int id = 0; lastPlace >= 0 && id < votesBefore.length; id++)
+		{
+			if(election.isContinuing(id) && election.getVotes(id) == election.getVotes(lastPlace) && election.getTotalVotes(id) == election.getTotalVotes(lastPlace))
+				tied.add(id);
+		}
+		return tied;
+	}
+
+	/**
+	 * Adds a row to the CSV output of the current round, if CSV is being written
+	 * @param record the kind of row
+	 * @param round the round number
+	 * @param seat the seat number, or empty
+	 * @param candidate the name of the candidate, or empty
+	 * @param status the candidate's status after the round, or empty
+	 * @param before the votes before the round
+	 * @param after the votes after the round
+	 * @param totalVotes the candidate's total votes, or -1 to leave it empty
+	 */
+	private void appendCsvRow(String record, int round, String seat, String candidate, String status, int before, int after, int totalVotes) {
+		if(csvOutput == null)
+			return;
+		csv.append(record).append(',').append(round).append(',').append(seat).append(',').append(csvQuote(candidate)).append(',').append(status)
+				.append(',').append(before).append(',').append(after).append(',').append(after - before).append(',');
+		if(totalVotes >= 0)
+			csv.append(totalVotes);
+		csv.append('\n');
+	}
+
+	/**
+	 * Quotes a value for CSV if it holds a comma, quote or line break
+	 * @param value the value
+	 * @return the value as it should appear in a CSV row
+	 */
+	private static String csvQuote(String value) {
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * Writes out everything added since the last flush, so readers see each round as soon as it is counted
+	 * @throws IOException if the results could not be written
+	 */
+	private void flush() throws IOException {
+		if(writeError != null)
+		{
+			json.setLength(0);
+			csv.setLength(0);
+			return;
+		}
+		if(jsonOutput != null)
+			write(json, jsonOutput);
+		if(csvOutput != null)
+			write(csv, csvOutput);
+		json.setLength(0);
+		csv.setLength(0);
+	}
+
+	/**
+	 * Encodes text into the reused buffer a piece at a time and writes it to a channel
+	 * @param text the text to write
+	 * @param output the channel to write to
+	 * @throws IOException if the text could not be written
+	 */
+	private void write(CharSequence text, WritableByteChannel output) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+		encoder.reset();
+		boolean done = false;
+		while(!done)
+		{
+			done = !encoder.encode(chars, buffer, true).isOverflow();
+			if(done)
+				encoder.flush(buffer);
+			buffer.flip();
+			while(buffer.hasRemaining())
+			{
+				output.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("election.CountRound")
+@Label("Count Round")
+@Category("Election")
+@Description("One round of the count, which either gives out a seat or removes last place candidates")
+public class CountRoundEvent extends jdk.jfr.Event {
+
+	@Label("Round")
+	public int round; //Round number, starting at 1
+
+	@Label("Action")
+	@Description("elected, excluded or tied")
+	public String action; //What happened to the candidates this round
+
+	@Label("Candidates")
+	public String candidates; //Names of the candidates elected or excluded this round, separated by a comma and space
+
+	@Label("Process Winners Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long processWinnersTime; //Time spent checking for and giving out a seat
+
+	@Label("Remove Last Place Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long removeLastPlaceTime; //Time spent removing last place candidates, 0 if a seat was won
+
+	@Label("Allocated")
+	@DataAmount
+	public long allocated; //Bytes allocated by the counting thread during the round, or -1 if the JVM cannot measure it
+
+	@Label("Ballots Transferred")
+	public long ballotsTransferred; //Ballots moved on from a candidate's pile during the round
+
+	@Label("Ballots Exhausted")
+	public int ballotsExhausted; //Ballots left with no continuing candidates during the round
+
+	@Label("Continuing Candidates")
+	public int continuingCandidates; //Candidates still in the running after the round
+
+	@Label("Largest Pile")
+	public int largestPile; //Most votes held by a continuing candidate after the round
+
+	@Label("Smallest Pile")
+	public int smallestPile; //Fewest votes held by a continuing candidate after the round
+
+}
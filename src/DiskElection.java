@@ -0,0 +1,170 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class DiskElection extends TallyElection implements BallotSink, Closeable {
+
+	private static final int MIN_BUFFER_SIZE = 4 << 10; //Smallest buffer given to each pile, whatever the memory budget
+	private static final int MAX_BUFFER_SIZE = 4 << 20; //Largest buffer given to each pile, past which bigger writes stop helping
+
+	private Path spillDirectory; //Directory holding the segment file of every pile, deleted by close
+
+	private SpillPile[] piles; //Ballots with each candidate as their current choice, kept on disk
+	private ByteBuffer readBuffer; //Buffer every pile is read through, big enough for the largest ballot
+	private int[] rankedIds; //Choices of the ballot being read or added
+
+	/**
+	 * Constructor creates an election with no ballots whose piles are kept in segment files on disk, so only the tallies and the pile buffers are held in memory.
+	 * The memory budget is shared out between the piles' buffers, which decide how much is written or read at a time.
+	 * Ballots are then added through addBallot or addBallots, and the count gives the same results as Election.
+	 * @param candidateList the candidates running, in the order of their ids
+	 * @param parentDirectory the directory the segment files are made in
+	 * @param memoryBudget the bytes of buffers the piles can use between them
+	 * @throws IOException if the directory for the segment files could not be made
+	 */
+	public DiskElection(List<Candidate> candidateList, Path parentDirectory, long memoryBudget) throws IOException {
+		super(candidateList);
+		spillDirectory = Files.createTempDirectory(parentDirectory, "count-spill");
+
+		int bufferSize = (int)Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, memoryBudget / (numOfCandidates + 1)));
+		piles = new SpillPile[numOfCandidates];
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			piles[id] = new SpillPile(spillDirectory.resolve("pile" + id), bufferSize);
+		}
+		readBuffer = ByteBuffer.allocateDirect(bufferSize);
+		rankedIds = new int[Math.max(numOfCandidates, 1)];
+	}
+
+	/**
+	 * Adds a ballot to the end of its first choice's pile
+	 * @param candidateIds the ranked candidate ids
+	 * @param length how many of the ids in the array are on the ballot
+	 * @return the index of the new ballot
+	 */
+	public int addBallot(int[] candidateIds, int length) {
+		for(int i = 0; i < length; i++)
+		{
+			totalVotes[candidateIds[i]]++;
+		}
+		addToFirstChoice(candidateIds, length);
+		return numOfBallots++;
+	}
+
+	/**
+	 * Adds every ballot in a buffer, keeping the order they have in the buffer
+	 * @param buffer the ballots to add, which must use the candidate ids of this election
+	 */
+	public void addBallots(BallotBuffer buffer) {
+		short[] bufferRankings = buffer.getRankings();
+		int[] ends = buffer.getEnds();
+		int start = 0;
+		for(int i = 0; i < buffer.getNumBallots(); i++)
+		{
+			int length = ends[i] - start;
+			if(length > rankedIds.length)
+				rankedIds = new int[length];
+			for(int j = 0; j < length; j++)
+			{
+				rankedIds[j] = bufferRankings[start + j];
+			}
+			addToFirstChoice(rankedIds, length);
+			start = ends[i];
+		}
+
+		int[] bufferTotals = buffer.getTotalVotes();
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			totalVotes[id] += bufferTotals[id];
+		}
+		numOfBallots += buffer.getNumBallots();
+	}
+
+	/**
+	 * Gets the number of ballots in a candidate's pile
+	 * @param id The id of the candidate
+	 * @return The number of votes the candidate has
+	 */
+	public int getVotes(int id) {
+		return piles[id].size();
+	}
+
+	/**
+	 * Deletes every segment file and the directory holding them
+	 * @throws IOException if a file could not be deleted
+	 */
+	public void close() throws IOException {
+		for(SpillPile pile : piles)
+		{
+			pile.delete();
+		}
+		Files.deleteIfExists(spillDirectory);
+	}
+
+	/**
+	 * Adds a ballot to the pile of its first choice, or counts it as exhausted if it has no choices
+	 * @param candidateIds the ranked candidate ids
+	 * @param length how many of the ids in the array are on the ballot
+	 */
+	private void addToFirstChoice(int[] candidateIds, int length) {
+		if(length == 0)
+		{
+			numExhausted++;
+			return;
+		}
+		if(4 + 2 * length > readBuffer.capacity())
+			readBuffer = ByteBuffer.allocateDirect(4 + 2 * length);
+		try
+		{
+			piles[candidateIds[0]].append(candidateIds, length, 0);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Could not write to " + spillDirectory, e);
+		}
+	}
+
+	/**
+	 * Streams a pile's ballots, after the given number of kept ballots, to the next continuing candidate on each ballot in order.
+	 * A winner's segment file is then cut down to the kept ballots, and an eliminated candidate's file is deleted.
+	 * @param id the id of the candidate whose pile is moving
+	 * @param numKept the number of ballots at the start of the pile that stay with the candidate, 0 if they were eliminated
+	 */
+	protected void transferPile(int id, int numKept) {
+		SpillPile pile = piles[id];
+		try
+		{
+			pile.startReading(readBuffer);
+			int position = 0;
+			int length;
+			while((length = pile.readBallot(rankedIds)) >= 0)
+			{
+				if(position++ < numKept)
+					continue;
+				numTransferred++;
+				int choice = pile.getReadChoice() + 1;
+				while(choice < length && !continuing[rankedIds[choice]])
+				{
+					choice++;
+				}
+				if(choice < length) //Otherwise every candidate on the ballot is out and it is exhausted
+					piles[rankedIds[choice]].append(rankedIds, length, choice);
+				else
+					numExhausted++;
+			}
+			if(numKept > 0)
+				pile.keepFirst(numKept);
+			else
+				pile.delete();
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Could not move the ballots of " + getCandidateName(id) + " in " + spillDirectory, e);
+		}
+	}
+
+}
@@ -1,78 +1,68 @@
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.io.PrintWriter;
 
-public class Election {
+public class Election implements CountEngine {
 	
-	private ArrayList<Ballot> ballotList; //List of all cast ballots
-	private ArrayList<Candidate> candidateList; //List of all candidates
+	private BallotStore ballotStore; //Packed store of all cast ballots
+	private CandidateRanking candidateRanking; //Candidates still in the running, ranked from last place to first place
 	private Queue<Candidate> electionWinners; //Array that contains the winning candidates
+	private int voteThreshold; //Threshold of the last processWinners call, a bulk exclusion stops as soon as a candidate reaches it
+	private boolean runoffNeeded; //If removeLastPlaceCandidates has found an unbreakable tie, kept so that a resumed count still knows
+	private boolean quiet; //If nothing is printed during the count, for analyses that count many samples
 	
 	/**
 	 * Constructor for the Election class, which is designed to perform the important operations 
 	 * that are needed for an election
-	 * @param ballotList List of ballots cast
-	 * @param candidateList List of candidates running
+	 * @param ballotStore Store of the ballots cast, which also holds the candidates running
 	 * @param numOfWinners How many seats are there
 	 */
-	public Election(ArrayList<Ballot> ballotList, ArrayList<Candidate> candidateList, int numOfWinners) {
-		this.ballotList = new ArrayList<>(ballotList);
-		this.candidateList = new ArrayList<>(candidateList);
-		Collections.sort(candidateList); //Sorts the candidate list in order of votes
+	public Election(BallotStore ballotStore, int numOfWinners) {
+		this.ballotStore = ballotStore;
+		candidateRanking = new CandidateRanking(ballotStore);
+		for(Candidate candidate : ballotStore.getCandidateList())
+		{
+			candidateRanking.add(candidate); //The ranking keeps itself in order of votes as ballots move
+		}
 		electionWinners = new LinkedList<Candidate>();
 	}
 	
 	/**
-	 * Sets the ballot at a given index to another ballot object
-	 * @param index The index to set the new ballot
-	 * @param ballot The new ballot object
-	 */
-	public void setBallot(int index, Ballot ballot) {
-		ballotList.set(index, ballot);
-	}
-	/**
-	 * Adds a ballot to the end of the ballot list
-	 * @param ballot The ballot being added
-	 */
-	public void addBallot(Ballot ballot) {
-		ballotList.add(ballot);
-	}
-	/**
-	 * Removes a ballot from the list at the first index where it occurs.
-	 * @param ballot The ballot to be removed
-	 * @return True if a ballot was removed, false if no ballot was removed
+	 * Adds a ballot to the end of the ballot store
+	 * @param rankedCandidates The candidates on the ballot in ranked order, null values are skipped
+	 * @return The ballot that was added
 	 */
-	public boolean removeBallot(Ballot ballot) {
-		return ballotList.remove(ballot);
+	public Ballot addBallot(Candidate[] rankedCandidates) {
+		return ballotStore.getBallot(ballotStore.addBallot(rankedCandidates));
 	}
 	/**
-	 * Sets an index in the list of candidates to a candidate object
-	 * @param index The index to be set
-	 * @param candidate The new candidate object
+	 * Replaces the candidate at the given place in the ranking with another candidate
+	 * @param index The place to be replaced, counting from last place at 0
+	 * @param candidate The new candidate object, which must belong to this election's ballot store
 	 */
 	public void setCandidate(int index, Candidate candidate) {
-		candidateList.set(index, candidate);
-		Collections.sort(candidateList); //Sorts the candidate list in order of votes
+		Candidate replaced = candidateRanking.get(index);
+		if(replaced == null)
+			throw new IndexOutOfBoundsException("No candidate at place " + index);
+		candidateRanking.remove(replaced);
+		candidateRanking.add(candidate);
 	}
 	/**
-	 * Add a candidate to the end of the list
-	 * @param candidate The candidate to be added
+	 * Add a candidate to the ranking of candidates still in the running
+	 * @param candidate The candidate to be added, which must belong to this election's ballot store
 	 */
 	public void addCandidate(Candidate candidate) {
-		candidateList.add(candidate);
-		Collections.sort(candidateList); //Sorts the candidate list in order of votes
+		candidateRanking.add(candidate);
 	}
 	/**
-	 * Remove a candidate at the first index where it occurs
+	 * Remove a candidate from the ranking of candidates still in the running
 	 * @param candidate The candidate to be removed
 	 * @return If the candidate was found and removed or not
 	 */
 	public boolean removeCandidate(Candidate candidate) {
-		boolean wasRemoved = candidateList.remove(candidate);
-		Collections.sort(candidateList); //Sorts the candidate list in order of votes
-		return wasRemoved;
+		return candidateRanking.remove(candidate);
 	}
 	/**
 	 * Adds a candidate to the list of candidates that have won
@@ -88,21 +78,18 @@ public class Election {
 	 * @return The ballot at the provided index, or null if the index is out of bounds
 	 */
 	public Ballot getBallot(int index) {
-		if(index >= ballotList.size() || index < 0) 
+		if(index >= ballotStore.getNumBallots() || index < 0) 
 			return null;
 		else
-			return ballotList.get(index);
+			return ballotStore.getBallot(index);
 	}
 	/**
-	 * Returns the candidate at the given index. If the index is out of bounds, null is returned
-	 * @param index Index of the candidate to return
-	 * @return The candidate at the provided index, or null if the index is out of bounds
+	 * Returns the candidate at the given place in the ranking, counting from last place at 0. If the index is out of bounds, null is returned
+	 * @param index Place of the candidate to return
+	 * @return The candidate at the provided place, or null if the index is out of bounds
 	 */
 	public Candidate getCandidate(int index) {
-		if(index >= candidateList.size() || index < 0) 
-			return null;
-		else
-			return candidateList.get(index);
+		return candidateRanking.get(index);
 	}
 	/**
 	 * Removes a winner from the list of winners in the order that they won (1st, 2nd, 3rd, etc)
@@ -111,6 +98,87 @@ public class Election {
 	public Candidate removeWinner() {
 		return electionWinners.poll();
 	}
+	/**
+	 * Gets the number of ballots cast in this election
+	 * @return The number of ballots
+	 */
+	public int getNumBallots() {
+		return ballotStore.getNumBallots();
+	}
+	/**
+	 * Gets the number of candidates that ran in this election, including those that have won or been eliminated
+	 * @return The number of candidates
+	 */
+	public int getNumCandidates() {
+		return ballotStore.getNumCandidates();
+	}
+	/**
+	 * Gets the name of a candidate
+	 * @param id The id of the candidate in the ballot store
+	 * @return The name of the candidate
+	 */
+	public String getCandidateName(int id) {
+		return ballotStore.getCandidate(id).getName();
+	}
+	/**
+	 * Checks if a candidate is still in the ranking of candidates in the running
+	 * @param id The id of the candidate in the ballot store
+	 * @return If the candidate is still in the running
+	 */
+	public boolean isContinuing(int id) {
+		return ballotStore.getCandidate(id).getRanking() == candidateRanking;
+	}
+	/**
+	 * Gets the number of ballots a candidate currently holds
+	 * @param id The id of the candidate in the ballot store
+	 * @return The number of votes the candidate has
+	 */
+	public int getVotes(int id) {
+		return ballotStore.getCandidate(id).getVotes();
+	}
+	/**
+	 * Gets the number of ballots a candidate shows up on at any position
+	 * @param id The id of the candidate in the ballot store
+	 * @return The total votes of the candidate
+	 */
+	public int getTotalVotes(int id) {
+		return ballotStore.getCandidate(id).getTotalVotes();
+	}
+	/**
+	 * Gets the names of the candidates who have won so far, in the order they won
+	 * @return The names of the winners, including Vacant and Tied seats
+	 */
+	public List<String> getWinnerNames() {
+		ArrayList<String> winnerNames = new ArrayList<String>();
+		for(Candidate winner : electionWinners)
+		{
+			winnerNames.add(winner.getName());
+		}
+		return winnerNames;
+	}
+	/**
+	 * Gets the ids of the candidates who have won so far, in the order they won
+	 * @return The id of each winner, or -1 for Vacant and Tied seats
+	 */
+	public List<Integer> getWinnerIds() {
+		ArrayList<Integer> winnerIds = new ArrayList<Integer>();
+		copyWinners(winnerIds, new ArrayList<String>());
+		return winnerIds;
+	}
+	/**
+	 * Gets the number of times a ballot has been moved on from a candidate's pile so far
+	 * @return The number of ballot transfers
+	 */
+	public long getNumTransferred() {
+		return ballotStore.getNumTransferred();
+	}
+	/**
+	 * Gets the number of ballots that no longer count towards anyone because all of their remaining candidates are out
+	 * @return The number of exhausted ballots
+	 */
+	public int getNumExhausted() {
+		return ballotStore.getNumExhausted();
+	}
 	/**
 	 * Gets number of candidates that have won so far
 	 * @return The number of candidates that have won so far
@@ -125,14 +193,13 @@ public class Election {
 	 * @return If a candidate has won a seat or not
 	 */
 	public boolean processWinners(int threshold) { //Returns true if a seat has been won
-		for(Candidate candidate : candidateList)
+		voteThreshold = threshold;
+		Candidate candidate = candidateRanking.getLowestReaching(threshold); //Lowest ranked candidate at or above the threshold
+		if(candidate != null && candidate.wonSeat(threshold)) //wonSeat will also redistribute the excess ballots to the next candidates on its own if the candidate won
 		{
-			if(candidate.wonSeat(threshold)) //wonSeat will also redistribute the excess ballots to the next candidates on its own if the candidate won
-			{
-				addWinner(candidate);
-				removeCandidate(candidate);
-				return true; //A candidate won a seat
-			}
+			addWinner(candidate);
+			removeCandidate(candidate);
+			return true; //A candidate won a seat
 		}
 		return false; //No seats were won
 	}
@@ -143,44 +210,39 @@ public class Election {
 	 * Second: If every tied candidate can be eliminated without leaving seats vacant, eliminate them
 	 * Third: If every tied candidate can win without going over the number of available seats, they all win
 	 * Fourth: If all candidates cannot win or be eliminated, the seats are tied and a runoff must be held
+	 * When candidates are eliminated, every other candidate who is mathematically excluded is eliminated in the same round:
+	 * the lowest candidates whose votes added together are fewer than the votes of the candidate above them, who can never catch up.
+	 * They are eliminated one last place group at a time, in the order later rounds would have eliminated them, and the round stops early
+	 * if a transfer takes a candidate to the threshold, so the winners and the order of every pile are the same as eliminating them round by round.
 	 * @param numTotalSeats The number of seats that can be won in total (not remaining number of seats)
 	 * @return If candidates were removed or if all have won. If false is returned, there was an unbreakable tie.
 	 */
 	public boolean removeLastPlaceCandidates(int numTotalSeats) { //Returns false if there is an unbreakable tie
-		int numTied = 1; //If the candidate is tied with the next one, then that means there are 2 tied candidates overall, so by default there is 1 tied candidate.
-		boolean noMoreTied = false;
+		ArrayList<Candidate> tiedCandidates = candidateRanking.getLastPlaceGroup(); //Last place candidate and everyone tied with them, decided by votes and then total votes
+		int numTied = tiedCandidates.size();
 		int availableSeats = numTotalSeats - getNumWinners();
 		
-		int index = 0;
-		while(!noMoreTied)
-		{
-			if((index + 1) < candidateList.size() && candidateList.get(index).compareTo(candidateList.get(++index)) == 0) //This increments the index too
-			{
-				numTied++; //There is another tied candidate
-			}
-			else
-				noMoreTied = true;
-		}
-		
-		int numOfLosers = candidateList.size() - availableSeats; //Number of total candidates that have not won minus available seats
+		int numOfLosers = candidateRanking.size() - availableSeats; //Number of total candidates that have not won minus available seats
 		if(numTied <= numOfLosers) //If all remaining candidates can lose, eliminate them
 		{
-			while(numTied > 0)
+			int numExcluded = candidateRanking.countMathematicallyExcluded(numOfLosers); //Counted before any votes move
+			eliminateCandidates(tiedCandidates);
+			int numEliminated = numTied;
+			while(numEliminated < numExcluded && candidateRanking.getLowestReaching(voteThreshold) == null)
 			{
-				candidateList.remove(0).eliminate();
-				numTied--;
+				tiedCandidates = candidateRanking.getLastPlaceGroup(); //Always made up of excluded candidates, who stay below everyone else
+				eliminateCandidates(tiedCandidates);
+				numEliminated += tiedCandidates.size();
 			}
 			
-			Collections.sort(candidateList); //Sort the candidates now that votes have been redistributed from eliminated candidates
-			
 			return true; //Candidates were eliminated
 		}
 		else if(numOfLosers <= 0) //If no other candidates must lose, then all can win
 		{
-			while(numTied > 0)
+			for(Candidate candidate : tiedCandidates)
 			{
-				electionWinners.add(candidateList.remove(0));
-				numTied--;
+				removeCandidate(candidate);
+				electionWinners.add(candidate);
 			}
 			while(getNumWinners() < numTotalSeats)
 			{
@@ -195,13 +257,17 @@ public class Election {
 			{
 				electionWinners.add(new Candidate("Tied")); //All remaining seats are tied
 			}
+			runoffNeeded = true;
 			
-			System.out.println("Tied Candidates: ");
-			while(numTied > 0)
+			if(!quiet)
 			{
-				Candidate cand = candidateList.get(--numTied);
-				System.out.println(cand);
-				System.out.println("\t" + cand.getTotalVotes() + " total votes");
+				System.out.println("Tied Candidates: ");
+				while(numTied > 0)
+				{
+					Candidate cand = tiedCandidates.get(--numTied);
+					System.out.println(cand);
+					System.out.println("\t" + cand.getTotalVotes() + " total votes");
+				}
 			}
 			
 			return false; //Unbreakable tie, no candidates removed
@@ -209,6 +275,197 @@ public class Election {
 		
 	}
 	
+	/**
+	 * Eliminates candidates one after another, in the given order
+	 * @param candidates The candidates to eliminate
+	 */
+	private void eliminateCandidates(ArrayList<Candidate> candidates) {
+		for(Candidate candidate : candidates)
+		{
+			removeCandidate(candidate);
+			candidate.eliminate(); //The ranking updates itself as votes are redistributed from eliminated candidates
+		}
+	}
+	
+	/**
+	 * Gets a fingerprint of every ballot's ranking, used to check that a saved count belongs to the same ballots
+	 * @return The fingerprint of the ballot store's rankings
+	 */
+	public long getRankingsFingerprint() {
+		return ballotStore.getRankingsFingerprint();
+	}
+	
+	/**
+	 * Checks if the count has found an unbreakable tie, including one found before the count was saved and resumed
+	 * @return If a runoff election is needed
+	 */
+	public boolean isRunoffNeeded() {
+		return runoffNeeded;
+	}
+	
+	/**
+	 * Sets if the count prints the candidates left in an unbreakable tie, which analyses that count many samples turn off
+	 * @param quiet If nothing should be printed
+	 */
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+	
+	/**
+	 * Adds a listener that is told about every ballot transfer in the count from now on
+	 * @param listener The listener
+	 */
+	public void addTransferListener(TransferListener listener) {
+		ballotStore.addTransferListener(listener);
+	}
+	
+	/**
+	 * Gets which ranked choice a ballot is currently on
+	 * @param index The index of the ballot
+	 * @return The ranked choice, or -1 if the ballot has been eliminated
+	 */
+	public int getChoice(int index) {
+		return ballotStore.getChoice(index);
+	}
+	
+	/**
+	 * Saves the state of the count between rounds: every ballot's current choice, every candidate's pile, who is still ranked and the winners so far
+	 * @param round The number of rounds finished
+	 * @param rankingsFingerprint The fingerprint of the ballot store's rankings, from BallotStore.getRankingsFingerprint
+	 * @return The saved state, which shares nothing with the election
+	 */
+	public CountCheckpoint checkpoint(int round, long rankingsFingerprint) {
+		int numOfCandidates = ballotStore.getNumCandidates();
+		int[][] piles = new int[numOfCandidates][];
+		boolean[] ranked = new boolean[numOfCandidates];
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			Candidate candidate = ballotStore.getCandidate(id);
+			piles[id] = candidate.getBallotIndices();
+			ranked[id] = candidate.getRanking() == candidateRanking;
+		}
+		ArrayList<Integer> winnerIds = new ArrayList<Integer>();
+		ArrayList<String> winnerNames = new ArrayList<String>();
+		copyWinners(winnerIds, winnerNames);
+		return new CountCheckpoint(round, ballotStore.getNumBallots(), rankingsFingerprint, ballotStore.copyChoices(), ballotStore.copyContinuing(),
+				ballotStore.getNumTransferred(), ballotStore.getNumExhausted(), piles, ranked, winnerIds, winnerNames, runoffNeeded);
+	}
+	
+	/**
+	 * Saves what changed in the round that just finished, which with the state before the round gives the state after it.
+	 * Only the size of each pile is saved, since every pile is the pile before the round with the moved ballots added in order and then cut short.
+	 * @param round The number of rounds finished
+	 * @param transferredBallots Every ballot moved in the round, in the order they moved, which the saved round keeps
+	 * @param transferredChoices The choice each of those ballots moved on to, which the saved round keeps
+	 * @return The saved round
+	 */
+	public CountCheckpointDelta checkpointRound(int round, int[] transferredBallots, short[] transferredChoices) {
+		int numOfCandidates = ballotStore.getNumCandidates();
+		int[] pileSizes = new int[numOfCandidates];
+		boolean[] ranked = new boolean[numOfCandidates];
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			Candidate candidate = ballotStore.getCandidate(id);
+			pileSizes[id] = candidate.getVotes();
+			ranked[id] = candidate.getRanking() == candidateRanking;
+		}
+		ArrayList<Integer> winnerIds = new ArrayList<Integer>();
+		ArrayList<String> winnerNames = new ArrayList<String>();
+		copyWinners(winnerIds, winnerNames);
+		return new CountCheckpointDelta(round, ballotStore.getNumTransferred(), ballotStore.getNumExhausted(), runoffNeeded, ballotStore.copyContinuing(),
+				ranked, pileSizes, winnerIds, winnerNames, transferredBallots, transferredChoices);
+	}
+	
+	/**
+	 * Puts the count back in the state saved by checkpoint, so that counting on gives the same results as the count that was saved
+	 * @param checkpoint The saved state, which must come from an election with the same candidates and ballots
+	 */
+	public void restore(CountCheckpoint checkpoint) {
+		int numOfCandidates = ballotStore.getNumCandidates();
+		if(checkpoint.getNumBallots() != ballotStore.getNumBallots() || checkpoint.getNumCandidates() != numOfCandidates)
+			throw new IllegalArgumentException("The checkpoint is for a different election");
+		
+		ballotStore.restoreCount(checkpoint.getChoices(), checkpoint.getContinuing(), checkpoint.getNumTransferred(), checkpoint.getNumExhausted());
+		candidateRanking = new CandidateRanking(ballotStore);
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			Candidate candidate = ballotStore.getCandidate(id);
+			candidate.setRanking(null);
+			candidate.setBallotIndices(checkpoint.getPile(id));
+			if(checkpoint.isRanked(id))
+				candidateRanking.add(candidate);
+		}
+		electionWinners.clear();
+		for(int i = 0; i < checkpoint.getNumWinners(); i++)
+		{
+			int id = checkpoint.getWinnerId(i);
+			electionWinners.add(id >= 0 ? ballotStore.getCandidate(id) : new Candidate(checkpoint.getWinnerName(i)));
+		}
+		runoffNeeded = checkpoint.isRunoffNeeded();
+	}
+	
+	/**
+	 * Carries the count on by one round saved by checkpointRound, from the state the count was in before that round.
+	 * The moved ballots are handed on in the order they moved, then each pile is cut to its saved size,
+	 * and the ballots kept by candidates who won in the round are eliminated, as Candidate.wonSeat does.
+	 * @param delta The saved round, which must come from an election with the same candidates and ballots
+	 */
+	public void restore(CountCheckpointDelta delta) {
+		int numOfCandidates = ballotStore.getNumCandidates();
+		if(delta.getNumCandidates() != numOfCandidates)
+			throw new IllegalArgumentException("The checkpoint is for a different election");
+		
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			ballotStore.getCandidate(id).setRanking(null); //The ranking is built again at the end, rather than kept in order for every ballot
+		}
+		for(int i = 0; i < delta.getNumTransfers(); i++)
+		{
+			int index = delta.getTransferredBallot(i);
+			ballotStore.setChoice(index, delta.getTransferredChoice(i));
+			int candidateId = ballotStore.getCurrentCandidateId(index);
+			if(candidateId >= 0)
+				ballotStore.getCandidate(candidateId).addBallot(index);
+		}
+		long[] continuing = delta.getContinuing();
+		candidateRanking = new CandidateRanking(ballotStore);
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			Candidate candidate = ballotStore.getCandidate(id);
+			candidate.keepBallots(delta.getPileSize(id));
+			if(ballotStore.isContinuing(id) && (continuing[id >> 6] & (1L << id)) == 0)
+			{
+				for(int index : candidate.getBallotIndices())
+				{
+					ballotStore.eliminateBallot(index); //Only a candidate who won in the round keeps ballots once they stop continuing
+				}
+			}
+			if(delta.isRanked(id))
+				candidateRanking.add(candidate);
+		}
+		ballotStore.restoreCounters(continuing, delta.getNumTransferred(), delta.getNumExhausted());
+		electionWinners.clear();
+		for(int i = 0; i < delta.getNumWinners(); i++)
+		{
+			int id = delta.getWinnerId(i);
+			electionWinners.add(id >= 0 ? ballotStore.getCandidate(id) : new Candidate(delta.getWinnerName(i)));
+		}
+		runoffNeeded = delta.isRunoffNeeded();
+	}
+	
+	/**
+	 * Copies the id and name of every winner so far, in the order they won
+	 * @param winnerIds Where the ids are added, -1 for Vacant and Tied seats
+	 * @param winnerNames Where the names are added
+	 */
+	private void copyWinners(List<Integer> winnerIds, List<String> winnerNames) {
+		for(Candidate winner : electionWinners)
+		{
+			winnerIds.add(winner.getBallotStore() == ballotStore ? winner.getId() : -1); //Vacant and Tied seats are not in the store
+			winnerNames.add(winner.getName());
+		}
+	}
+	
 	/**
 	 * Outputs a list of the winning candidates, in order of winning, to the file provided in the PrintWriter
 	 * @param output A PrintWriter object for the output file for the winning candidates
@@ -218,18 +475,28 @@ public class Election {
 		
 		for(int i = 1; getNumWinners() != 0; i++)
 		{
-			String numPostfix = "th";
-			if(i == 1)
-				numPostfix = "st";
-			else if(i == 2)
-				numPostfix = "nd";
-			else if(i == 3)
-				numPostfix = "rd";
+			String numPostfix = getSeatPostfix(i);
 			
 			output.printf("%d%s seat: %s\n", i, numPostfix, removeWinner());
 		}
 	}
 	
+	/**
+	 * Gets the postfix for a seat number, so that seats read as 1st, 2nd, 3rd, 4th, etc
+	 * @param seat The seat number, starting at 1
+	 * @return The postfix for the seat number
+	 */
+	public static String getSeatPostfix(int seat) {
+		String numPostfix = "th";
+		if(seat == 1)
+			numPostfix = "st";
+		else if(seat == 2)
+			numPostfix = "nd";
+		else if(seat == 3)
+			numPostfix = "rd";
+		return numPostfix;
+	}
+	
 	/**
 	 * Outputs a list of the winning candidates, in order of winning, to the file provided in the PrintWriter.
 	 * This is a static variant of the method that takes a queue of winning candidates as an input
@@ -238,13 +505,7 @@ public class Election {
 	public static void outputWinnersStatic(PrintWriter output, Queue<Candidate> winners) {
 		for(int i = 1; winners.size() != 0; i++)
 		{
-			String numPostfix = "th";
-			if(i == 1)
-				numPostfix = "st";
-			else if(i == 2)
-				numPostfix = "nd";
-			else if(i == 3)
-				numPostfix = "rd";
+			String numPostfix = getSeatPostfix(i);
 			
 			output.printf("%d%s seat: %s\n", i, numPostfix, winners.poll());
 		}
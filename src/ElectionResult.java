@@ -0,0 +1,71 @@
+public class ElectionResult {
+
+	private ElectionSettings settings; //Settings of the election that was counted
+	private int numOfBallots; //Number of ballots counted
+	private int voteThreshold; //Votes needed to win a seat, 0 if no count was needed
+	private boolean needsRunoffElection; //If there was an unbreakable tie
+	private String winners; //The winners as written to the winners file
+	private long countTimeNanos; //Time taken to read the ballots and count them
+
+	/**
+	 * Constructor records the outcome of one election
+	 * @param settings the settings of the election
+	 * @param numOfBallots the number of ballots counted
+	 * @param voteThreshold the votes needed to win a seat, 0 if no count was needed
+	 * @param needsRunoffElection if there was an unbreakable tie
+	 * @param winners the winners as written to the winners file
+	 * @param countTimeNanos the time taken to read the ballots and count them
+	 */
+	public ElectionResult(ElectionSettings settings, int numOfBallots, int voteThreshold, boolean needsRunoffElection, String winners, long countTimeNanos) {
+		this.settings = settings;
+		this.numOfBallots = numOfBallots;
+		this.voteThreshold = voteThreshold;
+		this.needsRunoffElection = needsRunoffElection;
+		this.winners = winners;
+		this.countTimeNanos = countTimeNanos;
+	}
+
+	/**
+	 * Gets the settings of the election
+	 * @return the settings
+	 */
+	public ElectionSettings getSettings() {
+		return settings;
+	}
+	/**
+	 * Gets the number of ballots counted
+	 * @return the number of ballots
+	 */
+	public int getNumBallots() {
+		return numOfBallots;
+	}
+	/**
+	 * Gets the number of votes that were needed to win a seat
+	 * @return the vote threshold, or 0 if every candidate won without a count
+	 */
+	public int getVoteThreshold() {
+		return voteThreshold;
+	}
+	/**
+	 * Checks if there was an unbreakable tie that needs a runoff election
+	 * @return if a runoff election is needed
+	 */
+	public boolean needsRunoffElection() {
+		return needsRunoffElection;
+	}
+	/**
+	 * Gets the winners, as they were written to the winners file
+	 * @return the winners
+	 */
+	public String getWinners() {
+		return winners;
+	}
+	/**
+	 * Gets the time taken to read the ballots and count them
+	 * @return the time in nanoseconds
+	 */
+	public long getCountTimeNanos() {
+		return countTimeNanos;
+	}
+
+}
@@ -0,0 +1,117 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Scanner;
+
+public class ElectionSettings {
+
+	private File settingsFile; //The settings file these settings were read from, null if they were given as text
+	private int numOfSeats; //Number of seats being filled
+	private File candidatesFile; //File listing the candidates
+	private File ballotsFile; //File listing the ballots, one per line
+	private File winnersFile; //File the winners are written to
+	private HashMap<String, String> optionalSettings = new HashMap<String, String>(); //Settings after the four required ones, by name
+
+	/**
+	 * Constructor reads a settings file in the default layout, where each line is "Setting_Name = value".
+	 * The first four lines must be the number of seats, the candidates file, the ballots file and the winners file, in that order.
+	 * Optional settings can follow in the same layout, and are looked up by name.
+	 * @param settingsFile the settings file
+	 * @throws FileNotFoundException if the settings file does not exist
+	 */
+	public ElectionSettings(File settingsFile) throws FileNotFoundException {
+		this.settingsFile = settingsFile;
+		try(Scanner settingsInput = new Scanner(settingsFile)) //Closed even if the file is not in the default layout
+		{
+			readSettings(settingsInput);
+		}
+	}
+
+	/**
+	 * Constructor reads settings given as text in the same layout as a settings file, for settings that were never saved to a file
+	 * @param settingsText the settings, one "Setting_Name = value" per line
+	 */
+	public ElectionSettings(String settingsText) {
+		try(Scanner settingsInput = new Scanner(settingsText))
+		{
+			readSettings(settingsInput);
+		}
+	}
+
+	/**
+	 * Reads every setting in the default layout, leaving the scanner for the caller to close
+	 * @param settingsInput the scanner over the settings
+	 */
+	private void readSettings(Scanner settingsInput) {
+		//Get input from settings file via the default layout, any exceptions to be handled by default handler
+		//settingsInput.next() twice will clear the "setting_name =" part of the line
+		settingsInput.next();
+		settingsInput.next();
+		numOfSeats = settingsInput.nextInt();
+		settingsInput.nextLine();
+
+		settingsInput.next();
+		settingsInput.next();
+		candidatesFile = new File(settingsInput.nextLine().trim());
+
+		settingsInput.next();
+		settingsInput.next();
+		ballotsFile = new File(settingsInput.nextLine().trim());
+
+		settingsInput.next();
+		settingsInput.next();
+		winnersFile = new File(settingsInput.nextLine().trim());
+
+		while(settingsInput.hasNext())
+		{
+			String settingName = settingsInput.next();
+			settingsInput.next();
+			optionalSettings.put(settingName, settingsInput.nextLine().trim());
+		}
+	}
+
+	/**
+	 * Gets the settings file these settings were read from
+	 * @return the settings file, or null if the settings were given as text
+	 */
+	public File getSettingsFile() {
+		return settingsFile;
+	}
+	/**
+	 * Gets the number of seats being filled
+	 * @return the number of seats
+	 */
+	public int getNumSeats() {
+		return numOfSeats;
+	}
+	/**
+	 * Gets the file listing the candidates
+	 * @return the candidates file
+	 */
+	public File getCandidatesFile() {
+		return candidatesFile;
+	}
+	/**
+	 * Gets the file listing the ballots
+	 * @return the ballots file
+	 */
+	public File getBallotsFile() {
+		return ballotsFile;
+	}
+	/**
+	 * Gets the file the winners are written to
+	 * @return the winners file
+	 */
+	public File getWinnersFile() {
+		return winnersFile;
+	}
+	/**
+	 * Gets an optional setting by name
+	 * @param settingName the name of the setting, as written before the "=" in the settings file
+	 * @return the value of the setting, or null if it was not given
+	 */
+	public String getOptionalSetting(String settingName) {
+		return optionalSettings.get(settingName);
+	}
+
+}
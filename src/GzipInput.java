@@ -0,0 +1,146 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+public class GzipInput implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20; //Bytes of decompressed data handed over at a time
+	private static final int NUM_BUFFERS = 4; //Buffers passed back and forth, which bounds how far decompression can get ahead of the reader
+	private static final int STREAM_BUFFER_SIZE = 1 << 16; //Bytes of compressed data read from the file at a time
+	private static final ByteBuffer END = ByteBuffer.allocate(0); //Handed over after the last buffer, once the whole file is decompressed or decompression failed
+
+	private Path file; //The compressed file
+	private BlockingQueue<ByteBuffer> filledBuffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS + 1); //Decompressed data waiting to be read, in order
+	private BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS); //Buffers the reader is done with, ready to be filled again
+	private Thread inflater; //Thread decompressing the file
+	private volatile IOException failure; //Why decompression stopped early, null if it has not
+	private volatile boolean closed; //If the reader has stopped, so decompression should too
+
+	/**
+	 * Checks if a file starts like a gzip file
+	 * @param file the file to check
+	 * @return if the file starts with the gzip magic number
+	 * @throws IOException if the file could not be read
+	 */
+	public static boolean isGzip(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer magic = ByteBuffer.allocate(2);
+			while(magic.hasRemaining() && channel.read(magic) >= 0);
+			return !magic.hasRemaining() && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B;
+		}
+	}
+
+	/**
+	 * Opens a file, decompressing it as it is read if it is a gzip file
+	 * @param file the file to open
+	 * @return the contents of the file
+	 * @throws IOException if the file could not be opened
+	 */
+	public static InputStream open(Path file) throws IOException {
+		InputStream input = Files.newInputStream(file);
+		return isGzip(file) ? new GZIPInputStream(input, STREAM_BUFFER_SIZE) : input;
+	}
+
+	/**
+	 * Constructor starts decompressing a gzip file on its own thread, so the file is decompressed while the data already decompressed is being read.
+	 * Nothing decompressed is written to disk, and only a few buffers of it are held at a time.
+	 * @param file the gzip file, which may hold several gzip members one after another
+	 * @throws IOException if the file could not be opened or does not start with a gzip header
+	 */
+	public GzipInput(Path file) throws IOException {
+		this.file = file;
+		InputStream input = new GZIPInputStream(Files.newInputStream(file), STREAM_BUFFER_SIZE);
+		for(int i = 0; i < NUM_BUFFERS; i++)
+		{
+			freeBuffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+		}
+		inflater = new Thread(() -> inflate(input), "gzip inflater");
+		inflater.setDaemon(true);
+		inflater.start();
+	}
+
+	/**
+	 * Waits for the next buffer of decompressed data. It must be given back through release once it has been read.
+	 * @return the next decompressed bytes, or null once the whole file has been read
+	 * @throws IOException if the file could not be read or decompressed, such as when it was cut short
+	 */
+	public ByteBuffer take() throws IOException {
+		ByteBuffer buffer;
+		try
+		{
+			buffer = filledBuffers.take();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while decompressing " + file);
+		}
+		if(buffer != END)
+			return buffer;
+		filledBuffers.add(END); //So later calls also see the end
+		if(failure != null)
+			throw new IOException("Could not decompress " + file, failure);
+		return null;
+	}
+
+	/**
+	 * Gives a buffer back to be filled again
+	 * @param buffer a buffer returned by take
+	 */
+	public void release(ByteBuffer buffer) {
+		freeBuffers.add(buffer);
+	}
+
+	/**
+	 * Stops decompressing, if it has not already finished
+	 */
+	public void close() {
+		closed = true;
+		inflater.interrupt();
+	}
+
+	/**
+	 * Decompresses the whole file into free buffers and hands each one over as it fills, then hands over END
+	 * @param input the decompressing stream of the file
+	 */
+	private void inflate(InputStream input) {
+		try(input)
+		{
+			while(!closed)
+			{
+				ByteBuffer buffer = freeBuffers.take();
+				byte[] bytes = buffer.array();
+				int length = 0;
+				int numRead;
+				while(length < bytes.length && (numRead = input.read(bytes, length, bytes.length - length)) >= 0)
+				{
+					length += numRead;
+				}
+				if(length == 0)
+					break; //End of the file
+				buffer.clear().limit(length);
+				filledBuffers.put(buffer);
+			}
+		}
+		catch(IOException e)
+		{
+			failure = e;
+		}
+		catch(InterruptedException e)
+		{
+			return; //Closed by the reader, who is no longer waiting
+		}
+		filledBuffers.add(END); //Never full, since at most NUM_BUFFERS buffers are ever in it before END
+	}
+
+}
@@ -0,0 +1,152 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+public class LiveCount {
+
+	private ElectionSettings settings; //Settings of the election being counted
+	private BallotStore ballotStore; //Every ballot received so far, with first preference piles and total votes kept up to date. It is never counted itself.
+	private ArrayList<Candidate> candidateList; //Candidates in the order of their ids
+	private CandidateNameTable nameTable; //Table used to turn names in batch files into candidate ids
+	private String provisionalWinners; //Winners of the last provisional count, null if ballots have arrived since
+	private int provisionalThreshold; //Vote threshold of the last provisional count
+	private boolean provisionalRunoff; //If the last provisional count ended in an unbreakable tie
+	private long provisionalCountNanos; //Time the last provisional count took
+
+	/**
+	 * Counts an election as its ballots arrive in batches. Arguments are the settings file, then every batch file in the order they arrived.
+	 * Batch files are ballots files in the text or binary format. After each batch the first preferences and provisional winners are printed,
+	 * and the provisional winners are written to the winners file, which holds the final result once the last batch is in.
+	 * @param args the settings file and batch files
+	 * @throws IOException if a file could not be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1)
+		{
+			System.out.println("Usage: LiveCount <settings file> [batch file]...");
+			return;
+		}
+		LiveCount liveCount = new LiveCount(new ElectionSettings(new File(args[0])));
+		for(int i = 1; i < args.length; i++)
+		{
+			long start = System.nanoTime();
+			int numAdded = liveCount.addBatch(new File(args[i]));
+			String winners = liveCount.countProvisional();
+			liveCount.writeWinners();
+			System.out.printf("Batch %d added %d ballots, %d counted so far, in %d ms\n", i, numAdded, liveCount.getNumBallots(), (System.nanoTime() - start) / 1000000);
+			System.out.print(liveCount.getFirstPreferences());
+			System.out.println("Provisional result:");
+			System.out.println(winners);
+		}
+	}
+
+	/**
+	 * Constructor reads the candidates of an election and starts with no ballots
+	 * @param settings the settings of the election
+	 * @throws IOException if the candidates file could not be read
+	 */
+	public LiveCount(ElectionSettings settings) throws IOException {
+		this.settings = settings;
+		ballotStore = new BallotStore();
+		candidateList = PerformElection.readCandidates(settings.getCandidatesFile(), ballotStore);
+		nameTable = new CandidateNameTable(candidateList);
+	}
+
+	/**
+	 * Adds every ballot in a batch file. Each ballot goes straight onto its first preference's pile,
+	 * so the first preferences are up to date as soon as this returns.
+	 * The batch is checked with the election's invalid ballot policy, and nothing from it is added if the policy is fail and a ballot has a problem.
+	 * @param batchFile a ballots file in the text or binary format
+	 * @return the number of ballots added
+	 * @throws IOException if the file could not be read, or the policy is fail and a ballot has a problem
+	 */
+	public int addBatch(File batchFile) throws IOException {
+		BallotBuffer batch = new BallotBuffer(candidateList.size());
+		BallotValidator validator = PerformElection.createValidator(settings);
+		PerformElection.readBallots(batchFile, nameTable, candidateList.size(), Runtime.getRuntime().availableProcessors(), batch, validator);
+		validator.checkPolicy(); //Before any of the batch is added, so a failed batch leaves the count as it was
+		addBallots(batch);
+		return batch.getNumBallots();
+	}
+
+	/**
+	 * Adds every ballot in a buffer, in the same way as addBatch
+	 * @param ballots the ballots to add, which must use the candidate ids of this count
+	 */
+	public void addBallots(BallotBuffer ballots) {
+		ballotStore.addBallots(ballots);
+		provisionalWinners = null;
+	}
+
+	/**
+	 * Gets the number of ballots received so far
+	 * @return the number of ballots
+	 */
+	public int getNumBallots() {
+		return ballotStore.getNumBallots();
+	}
+
+	/**
+	 * Describes the first preference votes and total votes of every candidate, one per line, from the tallies kept as ballots arrive
+	 * @return the first preferences
+	 */
+	public String getFirstPreferences() {
+		StringBuilder firstPreferences = new StringBuilder();
+		for(Candidate candidate : candidateList)
+		{
+			firstPreferences.append(candidate).append('\n');
+		}
+		return firstPreferences.toString();
+	}
+
+	/**
+	 * Counts the ballots received so far and gets the winners as they would be written to the winners file.
+	 * The count runs on a copy of the ballot store, which starts from the first preference piles that are already built,
+	 * so the ballots received so far are never read or sorted again. If no ballots have arrived since the last count, its result is reused.
+	 * @return the provisional winners
+	 */
+	public String countProvisional() {
+		if(provisionalWinners != null)
+			return provisionalWinners;
+
+		long start = System.nanoTime();
+		int numOfSeats = settings.getNumSeats();
+		StringWriter winners = new StringWriter();
+		PrintWriter winnersOutput = new PrintWriter(winners);
+		if(candidateList.size() <= numOfSeats)
+		{
+			PerformElection.outputUncontested(winnersOutput, candidateList, numOfSeats);
+			provisionalThreshold = 0;
+			provisionalRunoff = false;
+		}
+		else
+		{
+			Election election = new Election(ballotStore.copy(), numOfSeats);
+			provisionalThreshold = PerformElection.getVoteThreshold(election.getNumBallots(), numOfSeats);
+			provisionalRunoff = PerformElection.performCount(election, numOfSeats, provisionalThreshold);
+			if(provisionalRunoff)
+				winnersOutput.println("There is an unbreakable tie, a runoff must be called to break it.\n");
+			election.outputWinners(winnersOutput, provisionalThreshold);
+		}
+		winnersOutput.flush();
+		provisionalWinners = winners.toString();
+		provisionalCountNanos = System.nanoTime() - start;
+		return provisionalWinners;
+	}
+
+	/**
+	 * Writes the provisional winners to the winners file set in the settings, counting first if needed
+	 * @return the outcome of the count so far
+	 * @throws IOException if the winners file could not be written
+	 */
+	public ElectionResult writeWinners() throws IOException {
+		String winners = countProvisional();
+		PrintWriter winnersOutput = new PrintWriter(settings.getWinnersFile());
+		winnersOutput.print(winners);
+		winnersOutput.close();
+		return new ElectionResult(settings, getNumBallots(), provisionalThreshold, provisionalRunoff, winners, provisionalCountNanos);
+	}
+
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ParallelBallotReader {
+
+	private CandidateNameTable nameTable; //Table used to turn names into candidate ids, shared by every worker
+	private int numOfCandidates; //Number of candidate ids a ballot can use
+	private int numOfThreads; //Number of chunks the file is split into
+	private BallotValidator validator; //Validator every chunk's own validator is merged into, in file order
+
+	/**
+	 * Constructor creates a reader that splits files into the given number of chunks and reads them at the same time
+	 * @param nameTable the table of candidate names
+	 * @param numOfCandidates the number of candidates in the table
+	 * @param numOfThreads how many chunks to read at once
+	 */
+	public ParallelBallotReader(CandidateNameTable nameTable, int numOfCandidates, int numOfThreads) {
+		this(nameTable, numOfCandidates, numOfThreads, new BallotValidator(BallotValidator.SKIP));
+	}
+
+	/**
+	 * Constructor creates a reader that splits files into the given number of chunks and reads them at the same time,
+	 * checking each chunk with its own validator and merging them all into the given one
+	 * @param nameTable the table of candidate names
+	 * @param numOfCandidates the number of candidates in the table
+	 * @param numOfThreads how many chunks to read at once
+	 * @param validator the validator the counts and examples of every chunk are added to
+	 */
+	public ParallelBallotReader(CandidateNameTable nameTable, int numOfCandidates, int numOfThreads, BallotValidator validator) {
+		this.nameTable = nameTable;
+		this.numOfCandidates = numOfCandidates;
+		this.numOfThreads = Math.max(numOfThreads, 1);
+		this.validator = validator;
+	}
+
+	/**
+	 * Reads every ballot in a ballots file into the sink.
+	 * The file is split at new lines into chunks, each chunk is read into its own buffer by a worker thread,
+	 * and the buffers are then added to the sink in file order so ballots keep their original order.
+	 * Each chunk's ballots are checked by the chunk's own validator, and the validators are merged in the same order.
+	 * @param ballotsFile the path of the ballots file
+	 * @param sink where the ballots are sent
+	 * @return the number of ballots read
+	 * @throws IOException if the file could not be read
+	 */
+	public int read(Path ballotsFile, BallotSink sink) throws IOException {
+		try(FileChannel channel = FileChannel.open(ballotsFile, StandardOpenOption.READ))
+		{
+			long[] boundaries = findChunkBoundaries(channel);
+			List<Callable<BallotBuffer>> chunkReaders = new ArrayList<Callable<BallotBuffer>>();
+			BallotValidator[] chunkValidators = new BallotValidator[boundaries.length - 1];
+			for(int i = 0; i + 1 < boundaries.length; i++)
+			{
+				long start = boundaries[i];
+				long end = boundaries[i + 1];
+				boolean skipHeader = i == 0; //Only the first chunk has the instruction line
+				BallotValidator chunkValidator = chunkValidators[i] = new BallotValidator(validator.getPolicy());
+				chunkReaders.add(() -> {
+					BallotBuffer buffer = new BallotBuffer(numOfCandidates);
+					new BallotReader(nameTable, chunkValidator).read(channel, start, end, skipHeader, buffer);
+					return buffer;
+				});
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(chunkReaders.size());
+			try
+			{
+				int numRead = 0;
+				List<Future<BallotBuffer>> chunks = executor.invokeAll(chunkReaders);
+				for(int i = 0; i < chunks.size(); i++)
+				{
+					BallotBuffer buffer = chunks.get(i).get();
+					sink.addBallots(buffer);
+					validator.merge(chunkValidators[i]);
+					numRead += buffer.getNumBallots();
+				}
+				return numRead;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading " + ballotsFile);
+			}
+			catch(ExecutionException e)
+			{
+				if(e.getCause() instanceof IOException)
+					throw (IOException)e.getCause();
+				throw new IOException("Could not read " + ballotsFile, e.getCause());
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Splits the file into roughly equal chunks that each start just after a new line
+	 * @param channel the open ballots file
+	 * @return the start of each chunk followed by the end of the file, with no empty chunks
+	 * @throws IOException if the file could not be read
+	 */
+	private long[] findChunkBoundaries(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long[] boundaries = new long[numOfThreads + 1];
+		int numOfBoundaries = 1; //The first chunk always starts at 0
+		ByteBuffer scanBuffer = ByteBuffer.allocate(4096);
+
+		for(int i = 1; i < numOfThreads; i++)
+		{
+			long position = Math.max(size * i / numOfThreads, boundaries[numOfBoundaries - 1]);
+			long lineStart = size;
+			boolean found = false;
+			while(!found && position < size)
+			{
+				scanBuffer.clear();
+				int numRead = channel.read(scanBuffer, position);
+				if(numRead <= 0)
+					break;
+				for(int j = 0; j < numRead && !found; j++)
+				{
+					if(scanBuffer.get(j) == '\n')
+					{
+						lineStart = position + j + 1;
+						found = true;
+					}
+				}
+				position += numRead;
+			}
+			if(lineStart > boundaries[numOfBoundaries - 1] && lineStart < size)
+				boundaries[numOfBoundaries++] = lineStart;
+		}
+
+		boundaries[numOfBoundaries++] = size;
+		return Arrays.copyOf(boundaries, numOfBoundaries);
+	}
+
+}
@@ -1,20 +1,27 @@
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
 import java.util.LinkedList;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.IOException;
 import java.io.File;
+import java.nio.file.Paths;
+import java.nio.channels.WritableByteChannel;
 
 public class PerformElection {
 
+	private static final long PARALLEL_READ_MIN_SIZE = 1L << 26; //Ballot files at least this large are read by several threads at once
+	private static final long DEFAULT_MEMORY_BUDGET_MB = 64; //Megabytes of pile buffers the disk engine uses when no budget is set
+	public static final int DEFAULT_ENGINE = 0; //Counts with Election, keeping every ballot in memory
+	public static final int DISK_ENGINE = 1; //Counts with DiskElection, keeping each candidate's pile in a file
+	private static final String[] ENGINE_NAMES = {"default", "disk"}; //Names of the counting engines in settings files, in the order of their values
+
 	public static void main(String[] args) throws IOException {
 		Scanner keyboard = new Scanner(System.in);
 		File settingsFile = new File("settings.txt"); //settings.txt is the default file path
-		Scanner settingsInput;
-		
-		ArrayList<Candidate> candidateList = new ArrayList<Candidate>();
-		ArrayList<Ballot> ballotList = new ArrayList<Ballot>();
 
 		while(!settingsFile.exists())
 		{
@@ -22,127 +29,340 @@ public class PerformElection {
 			System.out.print("Enter the path for the settings file: ");
 			settingsFile = new File(keyboard.nextLine());
 		}
-		settingsInput = new Scanner(settingsFile);
-		
-		//Get input from settings file via the default layout, any exceptions to be handled by default handler
-		//settingsInput.next() twice will clear the "setting_name =" part of the line
-		settingsInput.next();
-		settingsInput.next();
-		int numOfSeats = settingsInput.nextInt();
-		settingsInput.nextLine();
-		
-		settingsInput.next();
-		settingsInput.next();
-		Scanner candidatesInput = new Scanner(new File(settingsInput.nextLine().trim()));
 		
-		settingsInput.next();
-		settingsInput.next();
-		Scanner ballotsInput = new Scanner(new File(settingsInput.nextLine().trim()));
-		
-		settingsInput.next();
-		settingsInput.next();
-		PrintWriter winnersOutput = new PrintWriter(new File(settingsInput.nextLine().trim()));
-		
-		settingsInput.close();
-		
-		//Get list of candidates
-		candidatesInput.nextLine(); //Clear instruction line
-		String[] candidateNameArray = candidatesInput.nextLine().split(", ");
+		runElection(new ElectionSettings(settingsFile), Runtime.getRuntime().availableProcessors());
+		keyboard.close();
 		
-		for(String candidateName : candidateNameArray)
+	}
+	
+	/**
+	 * Gets the counting engine with the name used in settings files
+	 * @param engineName the name of the engine, or null if the setting was left out
+	 * @return DEFAULT_ENGINE or DISK_ENGINE, DEFAULT_ENGINE if the name is null
+	 * @throws IllegalArgumentException If the name is not a counting engine
+	 */
+	public static int parseCountingEngine(String engineName) {
+		if(engineName == null)
+			return DEFAULT_ENGINE;
+		for(int engine = 0; engine < ENGINE_NAMES.length; engine++)
 		{
-			candidateList.add(new Candidate(candidateName));
+			if(ENGINE_NAMES[engine].equalsIgnoreCase(engineName.trim()))
+				return engine;
 		}
+		throw new IllegalArgumentException("Invalid counting engine " + engineName + " must be one of " + String.join(", ", ENGINE_NAMES));
+	}
+	
+	/**
+	 * Reads the candidates and ballots of one election, counts it, and writes the winners to the winners file.
+	 * Every object the count uses is made by this call, so elections can be run on several threads at once.
+	 * @param settings The settings of the election
+	 * @param numOfReadThreads The most threads to read a large ballots file with
+	 * @return The outcome of the election
+	 * @throws IOException If a file could not be read or written
+	 */
+	public static ElectionResult runElection(ElectionSettings settings, int numOfReadThreads) throws IOException {
+		return runElection(settings, numOfReadThreads, null, null);
+	}
+	
+	/**
+	 * Reads the candidates and ballots of one election, counts it, and writes the winners to the winners file.
+	 * The results of each round can be sent to channels given by the caller instead of the results files in the settings, such as the socket a job came in on.
+	 * @param settings The settings of the election
+	 * @param numOfReadThreads The most threads to read a large ballots file with
+	 * @param resultsJsonOutput Where to write the results as JSON Lines in place of Results_JSON_File_Path, or null to use the settings. It is closed when the count ends.
+	 * @param resultsCsvOutput Where to write the results as CSV in place of Results_CSV_File_Path, or null to use the settings. It is closed when the count ends.
+	 * @return The outcome of the election
+	 * @throws IOException If a file could not be read or written
+	 */
+	public static ElectionResult runElection(ElectionSettings settings, int numOfReadThreads, WritableByteChannel resultsJsonOutput,
+			WritableByteChannel resultsCsvOutput) throws IOException {
+		long start = System.nanoTime();
+		int numOfSeats = settings.getNumSeats();
+		BallotStore ballotStore = new BallotStore();
+		int countingEngine = parseCountingEngine(settings.getOptionalSetting("Counting_Engine")); //Which engine counts the ballots, the default one if it is not set
+		boolean useDiskEngine = countingEngine == DISK_ENGINE; //Keeps the piles on disk, for elections with more ballots than fit in memory
+		String memoryBudgetSetting = settings.getOptionalSetting("Count_Memory_Budget_MB"); //Megabytes of buffers the disk engine's piles can use between them
+		long memoryBudget = (memoryBudgetSetting == null ? DEFAULT_MEMORY_BUDGET_MB : Long.parseLong(memoryBudgetSetting.trim())) << 20;
+		String spillDirectoryPath = settings.getOptionalSetting("Spill_Directory"); //Where the disk engine keeps its piles
+		BallotValidator validator = createValidator(settings); //What is done with ballots that have problems
+		String validationReportFilePath = settings.getOptionalSetting("Validation_Report_File_Path"); //Where to write a JSON report of the ballots that had problems, if anywhere
+		if(spillDirectoryPath == null)
+			spillDirectoryPath = System.getProperty("java.io.tmpdir");
+		String metricsFilePath = settings.getOptionalSetting("Count_Metrics_File_Path"); //Where to write a JSON summary of each round of the count, if anywhere
+		String checkpointFilePath = settings.getOptionalSetting("Checkpoint_File_Path"); //Where to save the count after each round, so it can be resumed
+		String resultsJsonFilePath = settings.getOptionalSetting("Results_JSON_File_Path"); //Where to stream each round's transfers and the seats as JSON Lines, if anywhere
+		String resultsCsvFilePath = settings.getOptionalSetting("Results_CSV_File_Path"); //Where to stream each round's transfers and the seats as CSV, if anywhere
+		String auditJournalFilePath = settings.getOptionalSetting("Audit_Journal_File_Path"); //Where to write a binary journal of every ballot transfer, if anywhere
 		
-		candidatesInput.close();
+		ArrayList<Candidate> candidateList = readCandidates(settings.getCandidatesFile(), ballotStore);
 		
+		StringWriter winners = new StringWriter();
+		PrintWriter winnersOutput = new PrintWriter(winners);
 		if(candidateList.size() <= numOfSeats)
 		{
-			Queue<Candidate> winners = new LinkedList<Candidate>();
-			while(candidateList.size() > 0)
-			{
-				winners.add(candidateList.remove(0));
-			}
-			while(winners.size() < numOfSeats)
-			{
-				winners.add(new Candidate("Vacant")); //All remaining seats cannot be filled by a candidate
-			}
-			
-			Election.outputWinnersStatic(winnersOutput, winners);
-			System.exit(0); //Election done
+			outputUncontested(winnersOutput, candidateList, numOfSeats);
+			return finishElection(settings, winners, 0, 0, false, start); //Election done
 		}
 		
 		//Get ballots and set candidates
-		ballotsInput.nextLine(); //Clear instructions
-		while(ballotsInput.hasNext())
+		DiskElection diskElection = useDiskEngine ? new DiskElection(candidateList, Paths.get(spillDirectoryPath), memoryBudget) : null;
+		BallotSink ballotSink = useDiskEngine ? diskElection : ballotStore;
+		try
 		{
-			String[] ballotArray = ballotsInput.nextLine().split(", ");
-			Candidate[] candidateArray = new Candidate[ballotArray.length];
-			int candidateArrayIndex = 0;
+			readBallots(settings.getBallotsFile(), new CandidateNameTable(candidateList), candidateList.size(), useDiskEngine ? 1 : numOfReadThreads, ballotSink, validator);
+			if(validationReportFilePath != null)
+			{
+				PrintWriter reportOutput = new PrintWriter(new File(validationReportFilePath), "UTF-8");
+				validator.writeReport(reportOutput);
+				reportOutput.close();
+			}
+			validator.checkPolicy(); //Stops here if the policy is fail and any ballot had a problem
 			
-			boolean candidateAdded = false; //Used to catch an invalid candidate on the ballot
-			for(String candidateName : ballotArray)
+//			System.out.println("DEBUG: Num of ballots = " + ballotStore.getNumBallots());
+			
+			CountEngine election = useDiskEngine ? diskElection : new Election(ballotStore, numOfSeats);
+			int voteThreshold = getVoteThreshold(election.getNumBallots(), numOfSeats);
+			CountCheckpointer checkpointer = null;
+			if(checkpointFilePath != null && election instanceof Election)
+			{
+				checkpointer = new CountCheckpointer((Election)election, Paths.get(checkpointFilePath));
+				if(checkpointer.resume() > 0)
+					System.out.println("Resuming the count after round " + checkpointer.getRound());
+			}
+			else if(checkpointFilePath != null)
+				System.out.println("Checkpoints are only taken by the default counting engine, the count will not be checkpointed");
+			CountMetrics metrics = CountMetrics.create(election, metricsFilePath != null, checkpointer == null ? 0 : checkpointer.getRound());
+			CountResultsWriter results = resultsJsonOutput != null || resultsCsvOutput != null ? new CountResultsWriter(election, resultsJsonOutput, resultsCsvOutput)
+					: CountResultsWriter.open(election, resultsJsonFilePath == null ? null : Paths.get(resultsJsonFilePath),
+					resultsCsvFilePath == null ? null : Paths.get(resultsCsvFilePath));
+			AuditJournal journal = null;
+			if(auditJournalFilePath != null && election instanceof Election && (checkpointer == null || checkpointer.getRound() == 0))
 			{
-				//System.out.println("DEBUG Candidate checking: " + candidateName);
-				for(int i = 0; i < candidateList.size(); i++)
+				journal = AuditJournal.create(Paths.get(auditJournalFilePath), ballotStore);
+				ballotStore.addTransferListener(journal);
+			}
+			else if(auditJournalFilePath != null)
+				System.out.println("The audit journal is only written by the default counting engine for a count from the start, no journal will be written");
+			boolean needsRunoffElection;
+			try
+			{
+				if(results != null)
+					results.start(numOfSeats, voteThreshold, checkpointer == null ? 0 : checkpointer.getRound());
+				ArrayList<CountObserver> observers = new ArrayList<CountObserver>(); //Told about each round in this order, so the metrics time the round before anything else runs
+				if(metrics != null)
+					observers.add(metrics);
+				if(results != null)
+					observers.add(results);
+				if(journal != null)
+					observers.add(journal);
+				if(checkpointer != null)
+					observers.add(checkpointer);
+				needsRunoffElection = performCount(election, numOfSeats, voteThreshold, observers) || checkpointer != null && checkpointer.isRunoffNeeded();
+				if(results != null)
+					results.finish(needsRunoffElection);
+			}
+			finally
+			{
+				if(results != null)
+					results.close();
+				if(journal != null)
+					journal.close();
+			}
+			if(checkpointer != null)
+			{
+				try
+				{
+					checkpointer.finish();
+				}
+				catch(InterruptedException e)
 				{
-					if(candidateName.equals(candidateList.get(i).getName()) && !candidateAdded) //!candidateAdded is used to prevent out of bounds due to duplicate candidates
-					{
-						candidateArray[candidateArrayIndex] = candidateList.get(i);
-						//System.out.println("DEBUG Candidate added: " + candidateName);
-						candidateArrayIndex++;
-						candidateAdded = true;
-					}
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while writing the last checkpoint", e);
 				}
-				if(!candidateAdded)
-					System.out.printf("Candidate %s does not exist, they were not added to the ballot", candidateName);
-				else
-					candidateAdded = false;
 			}
 			
-			ballotList.add(new Ballot(candidateArray));
+			if(metricsFilePath != null)
+			{
+				PrintWriter metricsOutput = new PrintWriter(new File(metricsFilePath));
+				metrics.writeSummary(metricsOutput, numOfSeats, voteThreshold);
+				metricsOutput.close();
+			}
+			
+			if(needsRunoffElection)
+				winnersOutput.println("There is an unbreakable tie, a runoff must be called to break it.\n");
+			
+			election.outputWinners(winnersOutput, voteThreshold);
+			return finishElection(settings, winners, election.getNumBallots(), voteThreshold, needsRunoffElection, start);
+		}
+		finally
+		{
+			if(diskElection != null)
+				diskElection.close(); //Deletes the segment files
 		}
+	}
+	
+	/**
+	 * Reads the candidates file and adds every candidate to the ballot store, which gives them their ids
+	 * @param candidatesFile The candidates file, with an instruction line and then every name separated by a comma and space
+	 * @param ballotStore The store the candidates are added to
+	 * @return The candidates, in the order of their ids
+	 * @throws IOException If the file could not be read
+	 */
+	public static ArrayList<Candidate> readCandidates(File candidatesFile, BallotStore ballotStore) throws IOException {
+		ArrayList<Candidate> candidateList = new ArrayList<Candidate>();
+		Scanner candidatesInput = new Scanner(GzipInput.open(candidatesFile.toPath())); //The file may be gzip compressed
+		candidatesInput.nextLine(); //Clear instruction line
+		String[] candidateNameArray = candidatesInput.nextLine().split(", ");
 		
-//		System.out.println("DEBUG: Num of ballots = " + ballotList.size());
+		for(String candidateName : candidateNameArray)
+		{
+			Candidate candidate = new Candidate(candidateName);
+			candidateList.add(candidate);
+			ballotStore.addCandidate(candidate);
+		}
 		
-		ballotsInput.close();
+		candidatesInput.close();
+		return candidateList;
+	}
+	
+	/**
+	 * Makes a validator that checks ballots with the election's Invalid_Ballot_Policy setting, skip if it is left out.
+	 * Everything that reads an election's ballots uses one, so the same ballots are counted whichever tool reads them.
+	 * @param settings The settings of the election
+	 * @return A validator with nothing checked yet
+	 */
+	public static BallotValidator createValidator(ElectionSettings settings) {
+		return new BallotValidator(BallotValidator.parsePolicy(settings.getOptionalSetting("Invalid_Ballot_Policy")));
+	}
+	
+	/**
+	 * Reads every ballot in a ballots file into a sink, using the fastest reader for the file, and checks every ballot of a text file with the validator.
+	 * A summary is printed if any ballot had a problem. The validator's policy is not enforced here, so the caller can report on the problems first.
+	 * @param ballotsFile The ballots file, in the text format (gzip compressed or not) or made by the BinaryBallotFile converter
+	 * @param nameTable The table of the candidates running
+	 * @param numOfCandidates The number of candidates running
+	 * @param numOfReadThreads The most threads to read a large text file with
+	 * @param ballotSink Where the ballots are sent
+	 * @param validator The validator every ballot is checked with, made by createValidator so the settings' policy is used.
+	 * Binary files were checked when they were made, and are only read if they were made with the same policy or had no problems
+	 * @throws IOException If the file could not be read
+	 */
+	public static void readBallots(File ballotsFile, CandidateNameTable nameTable, int numOfCandidates, int numOfReadThreads, BallotSink ballotSink,
+			BallotValidator validator) throws IOException {
+		if(BinaryBallotFile.isBinary(ballotsFile.toPath())) //Files made by the BinaryBallotFile converter are loaded without parsing
+			BinaryBallotFile.read(ballotsFile.toPath(), nameTable, numOfCandidates, ballotSink, validator);
+		else if(ballotsFile.length() >= PARALLEL_READ_MIN_SIZE && numOfReadThreads > 1 && !GzipInput.isGzip(ballotsFile.toPath())) //A gzip file can only be decompressed from the start
+			new ParallelBallotReader(nameTable, numOfCandidates, numOfReadThreads, validator).read(ballotsFile.toPath(), ballotSink);
+		else
+			new BallotReader(nameTable, validator).read(ballotsFile.toPath(), ballotSink);
 		
-		Election election = new Election(ballotList, candidateList, numOfSeats);
+		if(validator.getNumProblemBallots() > 0)
+			System.out.println(validator.getSummary());
+	}
+	
+	/**
+	 * Outputs the winners of an election with no more candidates than seats, where every candidate wins without a count
+	 * @param output A PrintWriter for the winners
+	 * @param candidateList The candidates running
+	 * @param numOfSeats The number of seats being filled
+	 */
+	public static void outputUncontested(PrintWriter output, List<Candidate> candidateList, int numOfSeats) {
+		Queue<Candidate> winners = new LinkedList<Candidate>(candidateList);
+		while(winners.size() < numOfSeats)
+		{
+			winners.add(new Candidate("Vacant")); //All remaining seats cannot be filled by a candidate
+		}
+		
+		Election.outputWinnersStatic(output, winners);
+	}
+	
+	/**
+	 * Writes the winners of an election to its winners file
+	 * @param settings The settings of the election
+	 * @param winners The winners, as they should appear in the file
+	 * @param numOfBallots The number of ballots counted
+	 * @param voteThreshold The vote threshold that was used, 0 if there was no count
+	 * @param needsRunoffElection If there was an unbreakable tie
+	 * @param start The time the election started being read
+	 * @return The outcome of the election
+	 * @throws IOException If the winners file could not be written
+	 */
+	private static ElectionResult finishElection(ElectionSettings settings, StringWriter winners, int numOfBallots, int voteThreshold,
+			boolean needsRunoffElection, long start) throws IOException {
+		PrintWriter winnersOutput = new PrintWriter(settings.getWinnersFile());
+		winnersOutput.print(winners);
+		winnersOutput.close();
+		return new ElectionResult(settings, numOfBallots, voteThreshold, needsRunoffElection, winners.toString(), System.nanoTime() - start);
+	}
+	
+	/**
+	 * Gets the number of votes a candidate needs to win a seat, which is the Droop quota
+	 * @param numOfBallots The number of ballots cast
+	 * @param numOfSeats The number of seats being filled
+	 * @return The vote threshold
+	 */
+	public static int getVoteThreshold(int numOfBallots, int numOfSeats) {
 		double thresholdPercentage = (100.0 / (numOfSeats + 1))/100;
-		double voteThresholdDouble = ((thresholdPercentage * ballotList.size()) + 1); //Gets the threshold and cuts off the decimals, it is not supposed to be rounded
+		double voteThresholdDouble = ((thresholdPercentage * numOfBallots) + 1); //Gets the threshold and cuts off the decimals, it is not supposed to be rounded
 		int voteThreshold = (int)voteThresholdDouble;
 		
 //		System.out.println("DEBUG: Threshold Percentage = " + thresholdPercentage);
-//		System.out.println("DEBUG: Vote Threshold before + 1 = " + (thresholdPercentage * ballotList.size()));
+//		System.out.println("DEBUG: Vote Threshold before + 1 = " + (thresholdPercentage * numOfBallots));
 //		System.out.println("DEBUG: Vote Threshold Double = " + voteThresholdDouble);
 //		System.out.println("DEBUG: Vote Threshold = " + voteThreshold);
 		
-		boolean allSeatsWon = false;
+		return voteThreshold;
+	}
+	
+	/**
+	 * Runs the count, giving out seats and removing last place candidates round by round until every seat is filled
+	 * @param election The election being counted
+	 * @param numOfSeats The number of seats being filled
+	 * @param voteThreshold The number of votes needed to win a seat
+	 * @return If there was an unbreakable tie and a runoff election is needed
+	 */
+	public static boolean performCount(CountEngine election, int numOfSeats, int voteThreshold) {
+		return performCount(election, numOfSeats, voteThreshold, Collections.emptyList());
+	}
+	
+	/**
+	 * Runs the count in the same way as performCount(CountEngine, int, int), telling every observer as each round starts and ends,
+	 * so metrics, checkpoints, results and the audit journal can follow the count without the count knowing about any of them
+	 * @param election The election being counted
+	 * @param numOfSeats The number of seats being filled
+	 * @param voteThreshold The number of votes needed to win a seat
+	 * @param observers The observers to tell about each round, in the order they are told
+	 * @return If there was an unbreakable tie and a runoff election is needed
+	 */
+	public static boolean performCount(CountEngine election, int numOfSeats, int voteThreshold, List<CountObserver> observers) {
 		boolean needsRunoffElection = false;
-		while(!allSeatsWon) //Keep going until all seats are won
+		while(!needsRunoffElection && election.getNumWinners() < numOfSeats) //Keep going until all seats are won, checked first since a resumed count may already be finished
 		{
-			if(!election.processWinners(voteThreshold)) //This if statement calls processWinners so the processing is not supposed to happen outside of it
+			for(CountObserver observer : observers)
+			{
+				observer.startRound();
+			}
+			boolean seatWon = election.processWinners(voteThreshold); //Processing happens in this call, so it is not supposed to happen anywhere else
+			for(CountObserver observer : observers)
+			{
+				observer.endProcessWinners();
+			}
+			if(!seatWon)
 			{
 				//If nobody won a seat this round, there must be a candidate removed
 				if(!election.removeLastPlaceCandidates(numOfSeats))
 				{
 					//If removeLastPlaceCandidate returns false, there is an unbreakable tie
 					System.out.println("Unbreakable Tie, a runoff election must be held");
-					allSeatsWon = true;
 					needsRunoffElection = true;
 				}
 			}
-			if(election.getNumWinners() == numOfSeats)
-				allSeatsWon = true;
+			for(CountObserver observer : observers)
+			{
+				observer.endRound(seatWon);
+			}
 		}
-		
-		if(needsRunoffElection)
-			winnersOutput.println("There is an unbreakable tie, a runoff must be called to break it.\n");
-		
-		election.outputWinners(winnersOutput, voteThreshold);
-		winnersOutput.close();
-		keyboard.close();
-		
+		return needsRunoffElection;
 	}
 
 }
@@ -0,0 +1,366 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class RobustnessAnalysis {
+
+	private static final int VACANT = -1; //Seat winner recorded when a seat could not be filled by a candidate
+	private static final int TIED = -2; //Seat winner recorded when a seat was left to a runoff
+
+	private BallotStore ballotStore; //Every ballot of the election, only read by the samples
+	private int numOfSeats; //Number of seats being filled
+	private boolean resample; //If each sample draws its ballots with replacement (a bootstrap), otherwise every ballot is used once
+	private double swapProbability; //Chance that a ballot in a sample has two neighbouring choices swapped
+	private long seed; //Seed of the first sample, each sample is seeded from this and its number so the results do not depend on the threads
+	private ThreadLocal<Sampler> samplers = ThreadLocal.withInitial(Sampler::new); //Count state of each thread, reused for every sample it counts
+
+	private int numOfSamples; //Number of samples counted by the last run
+	private int[] seatWinners; //Winner id of each seat of each sample, numOfSeats entries per sample
+	private int[] seatMargins; //Margin of each seat of each sample, numOfSeats entries per sample
+	private int[] fullCountWinners = new int[0]; //Winner id of each seat in the count of the real ballots
+	private int[] fullCountMargins = new int[0]; //Margin of each seat in the count of the real ballots
+
+	/**
+	 * Recounts an election many times from randomly changed ballots and reports how often each candidate wins and how close each seat is.
+	 * Arguments are the settings file, the number of samples, then optionally the mode (bootstrap to draw the ballots with replacement,
+	 * or perturb to keep every ballot but randomly swap neighbouring choices), the swap probability used by perturb (0.05 if it is left out),
+	 * the seed (1 if it is left out) and the number of threads (the number of processors if it is left out).
+	 * The same arguments always give the same report, whatever the number of threads.
+	 * @param args the settings file, number of samples, mode, swap probability, seed and number of threads
+	 * @throws IOException if the candidates or ballots file could not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2)
+		{
+			System.out.println("Usage: RobustnessAnalysis <settings file> <number of samples> [bootstrap|perturb] [swap probability] [seed] [number of threads]");
+			return;
+		}
+		int numOfSamples = Integer.parseInt(args[1]);
+		boolean resample = args.length <= 2 || !args[2].equalsIgnoreCase("perturb");
+		double swapProbability = resample ? 0 : args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+		int numOfThreads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+		ElectionSettings settings = new ElectionSettings(new File(args[0]));
+		BallotStore ballotStore = new BallotStore();
+		ArrayList<Candidate> candidateList = PerformElection.readCandidates(settings.getCandidatesFile(), ballotStore);
+		BallotValidator validator = PerformElection.createValidator(settings);
+		PerformElection.readBallots(settings.getBallotsFile(), new CandidateNameTable(candidateList), candidateList.size(),
+				Runtime.getRuntime().availableProcessors(), ballotStore, validator);
+		validator.checkPolicy();
+
+		RobustnessAnalysis analysis = new RobustnessAnalysis(ballotStore, settings.getNumSeats(), resample, swapProbability, seed);
+		long start = System.nanoTime();
+		analysis.run(numOfSamples, numOfThreads);
+		System.out.printf("Counted %d samples of %d ballots on %d threads in %d ms\n\n", numOfSamples, ballotStore.getNumBallots(),
+				Math.max(numOfThreads, 1), (System.nanoTime() - start) / 1000000);
+		PrintWriter output = new PrintWriter(System.out);
+		analysis.writeReport(output);
+		output.flush();
+	}
+
+	/**
+	 * Constructor sets up an analysis of a filled ballot store, which is only read, so it can still be counted or shared afterwards
+	 * @param ballotStore the store holding every ballot of the election, which must not have been counted
+	 * @param numOfSeats the number of seats being filled
+	 * @param resample if each sample draws as many ballots as the store holds with replacement, otherwise each sample uses every ballot once
+	 * @param swapProbability the chance that a ballot in a sample has two neighbouring choices swapped, 0 to never change a ballot
+	 * @param seed the seed the samples are drawn from
+	 */
+	public RobustnessAnalysis(BallotStore ballotStore, int numOfSeats, boolean resample, double swapProbability, long seed) {
+		this.ballotStore = ballotStore;
+		this.numOfSeats = numOfSeats;
+		this.resample = resample;
+		this.swapProbability = swapProbability;
+		this.seed = seed;
+	}
+
+	/**
+	 * Counts the real ballots, then the given number of samples split across a fork join pool.
+	 * Each thread fills and counts the same store for every sample it takes, so the samples allocate almost nothing once the first has grown it.
+	 * @param numOfSamples the number of samples to count
+	 * @param numOfThreads the number of threads to count on
+	 */
+	public void run(int numOfSamples, int numOfThreads) {
+		this.numOfSamples = numOfSamples;
+		seatWinners = new int[numOfSamples * numOfSeats];
+		seatMargins = new int[numOfSamples * numOfSeats];
+		fullCountWinners = new int[numOfSeats];
+		fullCountMargins = new int[numOfSeats];
+		BallotStore fullCount = ballotStore.copy();
+		count(new Election(fullCount, numOfSeats), PerformElection.getVoteThreshold(fullCount.getNumBallots(), numOfSeats), new int[fullCount.getNumCandidates()],
+				fullCountWinners, fullCountMargins, 0);
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(numOfThreads, 1));
+		try
+		{
+			pool.invoke(new SampleTask(0, numOfSamples));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Gets how often a candidate won a seat in the last run
+	 * @param id the id of the candidate
+	 * @return the share of samples the candidate won a seat in, from 0 to 1
+	 */
+	public double getWinProbability(int id) {
+		int numWon = 0;
+		for(int winner : seatWinners)
+		{
+			if(winner == id)
+				numWon++;
+		}
+		return numOfSamples == 0 ? 0 : (double)numWon / numOfSamples;
+	}
+
+	/**
+	 * Gets the margins of a seat in every sample of the last run, from smallest to largest.
+	 * The margin of a seat is how many more votes its winner had when they won it than the strongest candidate left in the running after them.
+	 * @param seat the seat, starting at 0 for the first seat won
+	 * @return the margin of the seat in each sample
+	 */
+	public int[] getSeatMargins(int seat) {
+		int[] margins = new int[numOfSamples];
+		for(int sample = 0; sample < numOfSamples; sample++)
+		{
+			margins[sample] = seatMargins[sample * numOfSeats + seat];
+		}
+		Arrays.sort(margins);
+		return margins;
+	}
+
+	/**
+	 * Writes the results of the last run: the win probability of every candidate, and for every seat its winner in the count of the real ballots,
+	 * how often that candidate held the same seat in the samples, and the spread of the seat's margin
+	 * @param output where the report is written
+	 */
+	public void writeReport(PrintWriter output) {
+		output.printf("%s of %d samples, seed %d\n\n", resample ? "Bootstrap" : "Perturbation with swap probability " + swapProbability, numOfSamples, seed);
+		output.println("Chance of winning a seat:");
+		for(int id = 0; id < ballotStore.getNumCandidates(); id++)
+		{
+			output.printf("%s: %.2f%%\n", ballotStore.getCandidate(id).getName(), getWinProbability(id) * 100);
+		}
+
+		output.println("\nSeats:");
+		for(int seat = 0; seat < numOfSeats; seat++)
+		{
+			int fullCountWinner = fullCountWinners[seat];
+			int numHeld = 0;
+			for(int sample = 0; sample < numOfSamples; sample++)
+			{
+				int winner = seatWinners[sample * numOfSeats + seat];
+				if(winner == fullCountWinner)
+					numHeld++;
+			}
+			int[] margins = getSeatMargins(seat);
+			output.printf("%d%s seat: %s with a margin of %d, held by them in %.2f%% of samples. Margin 5th percentile %d, median %d, 95th percentile %d\n",
+					seat + 1, Election.getSeatPostfix(seat + 1), getWinnerName(fullCountWinner), fullCountMargins[seat], numOfSamples == 0 ? 0 : 100.0 * numHeld / numOfSamples,
+					percentile(margins, 0.05), percentile(margins, 0.5), percentile(margins, 0.95));
+		}
+		output.printf("\nSamples ending in an unbreakable tie: %d\n", countTiedSamples());
+	}
+
+	/**
+	 * Counts the samples that ended in an unbreakable tie
+	 * @return the number of tied samples
+	 */
+	private int countTiedSamples() {
+		int numTied = 0;
+		for(int sample = 0; sample < numOfSamples; sample++)
+		{
+			if(numOfSeats > 0 && seatWinners[sample * numOfSeats + numOfSeats - 1] == TIED)
+				numTied++;
+		}
+		return numTied;
+	}
+
+	/**
+	 * Gets the name to show for a seat winner
+	 * @param id the id of the winner, or VACANT or TIED
+	 * @return the name of the winner
+	 */
+	private String getWinnerName(int id) {
+		return id == VACANT ? "Vacant" : id == TIED ? "Tied" : ballotStore.getCandidate(id).getName();
+	}
+
+	/**
+	 * Gets the seed of one sample. The seed and sample number are mixed so that no two samples draw overlapping runs of numbers,
+	 * which seeds that are a fixed step apart would do.
+	 * @param seed the seed of the analysis
+	 * @param sample the number of the sample
+	 * @return the seed of the sample
+	 */
+	private static long sampleSeed(long seed, int sample) {
+		long mixed = seed * 0xBF58476D1CE4E5B9L + sample;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xFF51AFD7ED558CCDL;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return mixed ^ (mixed >>> 33);
+	}
+
+	/**
+	 * Gets a percentile of sorted values
+	 * @param sorted the values, from smallest to largest
+	 * @param fraction the percentile as a fraction from 0 to 1
+	 * @return the value at that percentile, or 0 if there are no values
+	 */
+	private static int percentile(int[] sorted, double fraction) {
+		if(sorted.length == 0)
+			return 0;
+		return sorted[Math.min((int)(fraction * sorted.length), sorted.length - 1)];
+	}
+
+	/**
+	 * Runs a count in the same way as PerformElection.performCount, also recording the winner and margin of each seat.
+	 * Winners of the same round are given seats in the order of their ids.
+	 * @param election the election being counted
+	 * @param voteThreshold the number of votes needed to win a seat
+	 * @param votesBefore scratch space for the votes of each candidate when a round starts
+	 * @param winners where the winner id of each seat is written
+	 * @param margins where the margin of each seat is written
+	 * @param offset where the first seat is written in the arrays
+	 */
+	private void count(Election election, int voteThreshold, int[] votesBefore, int[] winners, int[] margins, int offset) {
+		election.setQuiet(true); //Ties are reported in the seat tables, not once for every sample
+		int seat = 0;
+		while(election.getNumWinners() < numOfSeats)
+		{
+			for(int id = 0; id < votesBefore.length; id++)
+			{
+				votesBefore[id] = election.isContinuing(id) ? election.getVotes(id) : -1;
+			}
+			int numWinnersBefore = election.getNumWinners();
+			if(!election.processWinners(voteThreshold) && !election.removeLastPlaceCandidates(numOfSeats))
+				break; //Unbreakable tie, the remaining seats are marked tied below
+			if(election.getNumWinners() == numWinnersBefore)
+				continue; //Candidates were eliminated
+
+			int challengerVotes = 0; //Votes of the strongest candidate still in the running
+			for(int id = 0; id < votesBefore.length; id++)
+			{
+				if(election.isContinuing(id))
+					challengerVotes = Math.max(challengerVotes, votesBefore[id]);
+			}
+			for(int id = 0; id < votesBefore.length && seat < numOfSeats; id++)
+			{
+				if(votesBefore[id] >= 0 && !election.isContinuing(id))
+				{
+					winners[offset + seat] = id;
+					margins[offset + seat++] = votesBefore[id] - challengerVotes;
+				}
+			}
+			while(seat < election.getNumWinners())
+			{
+				winners[offset + seat] = VACANT;
+				margins[offset + seat++] = 0;
+			}
+		}
+		while(seat < numOfSeats)
+		{
+			winners[offset + seat] = TIED;
+			margins[offset + seat++] = 0;
+		}
+	}
+
+	/**
+	 * Fills a thread's store with one sample of the ballots and counts it
+	 * @param sample the number of the sample, which decides its seed
+	 */
+	private void countSample(int sample) {
+		Sampler sampler = samplers.get();
+		SplittableRandom random = new SplittableRandom(sampleSeed(seed, sample));
+		BallotBuffer buffer = sampler.buffer;
+		int[] rankedIds = sampler.rankedIds;
+		buffer.clear();
+		int numOfBallots = ballotStore.getNumBallots();
+		for(int i = 0; i < numOfBallots; i++)
+		{
+			int index = resample ? random.nextInt(numOfBallots) : i;
+			int size = ballotStore.getBallotSize(index);
+			if(size > rankedIds.length)
+				sampler.rankedIds = rankedIds = new int[size];
+			for(int position = 0; position < size; position++)
+			{
+				rankedIds[position] = ballotStore.getRankedId(index, position);
+			}
+			if(size > 1 && swapProbability > 0 && random.nextDouble() < swapProbability)
+			{
+				int position = random.nextInt(size - 1);
+				int swapped = rankedIds[position];
+				rankedIds[position] = rankedIds[position + 1];
+				rankedIds[position + 1] = swapped;
+			}
+			buffer.addBallot(rankedIds, size);
+		}
+
+		BallotStore store = sampler.store;
+		store.clear();
+		store.addBallots(buffer);
+		count(new Election(store, numOfSeats), PerformElection.getVoteThreshold(numOfBallots, numOfSeats), sampler.votesBefore, seatWinners, seatMargins, sample * numOfSeats);
+	}
+
+	/**
+	 * Count state kept by each thread and reused for every sample it counts
+	 */
+	private class Sampler {
+
+		private BallotStore store = new BallotStore(ballotStore.getNumBallots(), 1); //Store filled with each sample in turn, with its own copy of the candidates
+		private BallotBuffer buffer = new BallotBuffer(ballotStore.getNumCandidates()); //Ballots of the sample being drawn
+		private int[] rankedIds = new int[Math.max(ballotStore.getNumCandidates(), 1)]; //Choices of the ballot being drawn
+		private int[] votesBefore = new int[ballotStore.getNumCandidates()]; //Votes of each candidate when the current round started, -1 if they were not continuing
+
+		/**
+		 * Constructor gives the thread's store a copy of every candidate of the election, with no ballots
+		 */
+		private Sampler() {
+			for(int id = 0; id < ballotStore.getNumCandidates(); id++)
+			{
+				store.addCandidate(new Candidate(ballotStore.getCandidate(id).getName()));
+			}
+		}
+
+	}
+
+	/**
+	 * Counts a range of samples, splitting it in half until each task has one sample
+	 */
+	private class SampleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private int from; //First sample of the range
+		private int to; //Sample after the last sample of the range
+
+		/**
+		 * Constructor sets the range of samples to count
+		 * @param from the first sample
+		 * @param to the sample after the last sample
+		 */
+		private SampleTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= 1)
+			{
+				if(from < to)
+					countSample(from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SampleTask(from, middle), new SampleTask(middle, to));
+		}
+
+	}
+
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SpillPile {
+
+	private Path file; //Segment file the pile's ballots are appended to
+	private FileChannel channel; //The open segment file, null until the first ballots are written out
+	private ByteBuffer writeBuffer; //Ballots appended since the buffer was last written to the file
+	private long fileSize; //Bytes written to the file so far
+	private int numOfBallots; //Number of ballots in the pile
+
+	private ByteBuffer readBuffer; //Buffer the pile is being read through, null when it is not being read
+	private long readPosition; //Position in the file of the next byte to read into the buffer
+	private int readChoice; //Current choice of the ballot read last
+
+	/**
+	 * Constructor creates an empty pile kept in the given file. The file is not created until the pile's buffer first fills.
+	 * Each ballot is stored as its number of choices and its current choice, followed by the ranked candidate ids, as little endian shorts.
+	 * @param file the segment file of the pile, which must not already exist
+	 * @param bufferSize the bytes of ballots to hold before writing them out
+	 */
+	public SpillPile(Path file, int bufferSize) {
+		this.file = file;
+		writeBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Adds a ballot to the end of the pile
+	 * @param candidateIds the ranked candidate ids of the ballot
+	 * @param length how many of the ids in the array are on the ballot
+	 * @param choice which of the ranked choices the ballot is on, which must be this pile's candidate
+	 * @throws IOException if the buffer could not be written to the file
+	 */
+	public void append(int[] candidateIds, int length, int choice) throws IOException {
+		int recordSize = 4 + 2 * length;
+		if(writeBuffer.remaining() < recordSize)
+		{
+			flush();
+			if(writeBuffer.capacity() < recordSize)
+				writeBuffer = ByteBuffer.allocateDirect(recordSize).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		writeBuffer.putShort((short)length);
+		writeBuffer.putShort((short)choice);
+		for(int i = 0; i < length; i++)
+		{
+			writeBuffer.putShort((short)candidateIds[i]);
+		}
+		numOfBallots++;
+	}
+
+	/**
+	 * Starts reading the pile from its first ballot. Ballots must not be appended until the reading is done.
+	 * @param buffer the buffer to read through, which must be big enough for the largest ballot and is shared by every pile
+	 * @throws IOException if the buffered ballots could not be written to the file
+	 */
+	public void startReading(ByteBuffer buffer) throws IOException {
+		flush();
+		readBuffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		readBuffer.clear();
+		readBuffer.flip();
+		readPosition = 0;
+	}
+
+	/**
+	 * Reads the next ballot of the pile
+	 * @param candidateIds where the ranked candidate ids are written, which must be big enough for the largest ballot
+	 * @return the number of ranked candidates on the ballot, or -1 if every ballot has been read
+	 * @throws IOException if the file could not be read
+	 */
+	public int readBallot(int[] candidateIds) throws IOException {
+		if(!fillReadBuffer(4))
+		{
+			readBuffer = null;
+			return -1;
+		}
+		int length = readBuffer.getShort() & 0xFFFF;
+		readChoice = readBuffer.getShort();
+		if(!fillReadBuffer(2 * length))
+			throw new IOException(file + " ends part way through a ballot");
+		for(int i = 0; i < length; i++)
+		{
+			candidateIds[i] = readBuffer.getShort();
+		}
+		return length;
+	}
+
+	/**
+	 * Gets the current choice of the ballot read last
+	 * @return which of the ranked choices the ballot was on
+	 */
+	public int getReadChoice() {
+		return readChoice;
+	}
+
+	/**
+	 * Gets the number of ballots in the pile
+	 * @return the number of ballots
+	 */
+	public int size() {
+		return numOfBallots;
+	}
+
+	/**
+	 * Sets the number of ballots counted as being in the pile, for a winner who keeps only the first ballots of their pile.
+	 * The ballots after that stay in the file but are never read again.
+	 * @param numOfBallots the number of ballots the pile keeps
+	 */
+	public void keepFirst(int numOfBallots) {
+		this.numOfBallots = Math.min(this.numOfBallots, numOfBallots);
+	}
+
+	/**
+	 * Empties the pile and deletes its file
+	 * @throws IOException if the file could not be deleted
+	 */
+	public void delete() throws IOException {
+		if(channel != null)
+			channel.close();
+		channel = null;
+		Files.deleteIfExists(file);
+		writeBuffer.clear();
+		fileSize = 0;
+		numOfBallots = 0;
+	}
+
+	/**
+	 * Writes the buffered ballots to the end of the file, creating it if needed
+	 * @throws IOException if the ballots could not be written
+	 */
+	private void flush() throws IOException {
+		writeBuffer.flip();
+		if(writeBuffer.hasRemaining() && channel == null)
+			channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		while(writeBuffer.hasRemaining())
+		{
+			fileSize += channel.write(writeBuffer, fileSize);
+		}
+		writeBuffer.clear();
+	}
+
+	/**
+	 * Makes sure the read buffer holds at least the given number of bytes, reading more of the file if needed
+	 * @param numOfBytes the number of bytes needed
+	 * @return if the bytes are there, false if the file ran out first
+	 * @throws IOException if the file could not be read
+	 */
+	private boolean fillReadBuffer(int numOfBytes) throws IOException {
+		if(readBuffer.remaining() >= numOfBytes)
+			return true;
+		readBuffer.compact();
+		while(readBuffer.position() < numOfBytes && readPosition < fileSize)
+		{
+			int numRead = channel.read(readBuffer, readPosition);
+			if(numRead < 0)
+				break;
+			readPosition += numRead;
+		}
+		readBuffer.flip();
+		return readBuffer.remaining() >= numOfBytes;
+	}
+
+}
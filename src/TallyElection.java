@@ -0,0 +1,347 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+public abstract class TallyElection implements CountEngine {
+
+	protected ArrayList<Candidate> candidateList; //Candidates in the order of their ids, only used for their names
+	protected int numOfCandidates; //Number of candidates
+	protected int[] totalVotes; //Number of ballots each candidate shows up on
+	protected boolean[] continuing; //If each candidate is still in the running
+	protected int numContinuing; //Number of candidates still in the running
+	protected int numOfBallots; //Number of ballots cast
+	protected long numTransferred; //Number of ballots moved on from a candidate's pile
+	protected int numExhausted; //Number of ballots with no continuing candidates left
+	private Queue<String> electionWinners; //Descriptions of the winning candidates, in the order they won
+	private ArrayList<String> winnerNames = new ArrayList<String>(); //Names of the winning candidates, in the order they won
+	private ArrayList<Integer> winnerIds = new ArrayList<Integer>(); //Ids of the winning candidates, in the order they won, -1 for Vacant and Tied seats
+	private int voteThreshold; //Threshold of the last processWinners call, a bulk exclusion stops as soon as a candidate reaches it
+
+	/*
+	 * The counting engines that keep each candidate's votes as a number rather than as Candidate objects share this class.
+	 * It decides who wins and who is eliminated from the tallies alone, in the same way as Election and CandidateRanking,
+	 * and each engine only says how its piles are counted and how a pile moves on.
+	 */
+
+	/**
+	 * Constructor creates an election with no ballots, with every candidate in the running
+	 * @param candidateList the candidates running, in the order of their ids
+	 */
+	protected TallyElection(List<Candidate> candidateList) {
+		this.candidateList = new ArrayList<>(candidateList);
+		numOfCandidates = candidateList.size();
+		totalVotes = new int[numOfCandidates];
+		continuing = new boolean[numOfCandidates];
+		Arrays.fill(continuing, true);
+		numContinuing = numOfCandidates;
+		numOfBallots = 0;
+		electionWinners = new LinkedList<String>();
+	}
+
+	/**
+	 * Moves a pile's ballots, after the given number of kept ballots, to the next continuing candidate on each ballot in order.
+	 * The pile's candidate has already been taken out of the running, and the kept ballots stay with them.
+	 * @param id the id of the candidate whose pile is moving
+	 * @param numKept the number of ballots at the start of the pile that stay with the candidate, 0 if they were eliminated
+	 */
+	protected abstract void transferPile(int id, int numKept);
+
+	/**
+	 * Gets the number of ballots cast in this election
+	 * @return The number of ballots
+	 */
+	public int getNumBallots() {
+		return numOfBallots;
+	}
+
+	/**
+	 * Gets the number of candidates that ran in this election, including those that have won or been eliminated
+	 * @return The number of candidates
+	 */
+	public int getNumCandidates() {
+		return numOfCandidates;
+	}
+
+	/**
+	 * Gets the name of a candidate
+	 * @param id The id of the candidate
+	 * @return The name of the candidate
+	 */
+	public String getCandidateName(int id) {
+		return candidateList.get(id).getName();
+	}
+
+	/**
+	 * Checks if a candidate is still in the running
+	 * @param id The id of the candidate
+	 * @return If the candidate is still in the running
+	 */
+	public boolean isContinuing(int id) {
+		return continuing[id];
+	}
+
+	/**
+	 * Gets the number of ballots moved on from a candidate's pile so far
+	 * @return The number of ballot transfers
+	 */
+	public long getNumTransferred() {
+		return numTransferred;
+	}
+
+	/**
+	 * Gets the number of ballots that no longer count towards anyone because all of their remaining candidates are out
+	 * @return The number of exhausted ballots
+	 */
+	public int getNumExhausted() {
+		return numExhausted;
+	}
+
+	/**
+	 * Gets the number of ballots a candidate shows up on at any position
+	 * @param id The id of the candidate
+	 * @return The total votes of the candidate
+	 */
+	public int getTotalVotes(int id) {
+		return totalVotes[id];
+	}
+
+	/**
+	 * Gets the names of the candidates who have won so far, in the order they won
+	 * @return The names of the winners, including Vacant and Tied seats
+	 */
+	public List<String> getWinnerNames() {
+		return new ArrayList<String>(winnerNames);
+	}
+
+	/**
+	 * Gets the ids of the candidates who have won so far, in the order they won
+	 * @return The id of each winner, or -1 for Vacant and Tied seats
+	 */
+	public List<Integer> getWinnerIds() {
+		return new ArrayList<Integer>(winnerIds);
+	}
+
+	/**
+	 * Gets number of candidates that have won so far
+	 * @return The number of candidates that have won so far
+	 */
+	public int getNumWinners() {
+		return electionWinners.size();
+	}
+
+	/**
+	 * Gives a seat to the lowest ranked candidate that has reached the threshold, if there is one, in the same way as Election.processWinners.
+	 * The first threshold ballots in the winner's pile are kept, and the rest move on to the next continuing candidates.
+	 * @param threshold The minimum number of votes required to win a seat
+	 * @return If a candidate has won a seat or not
+	 */
+	public boolean processWinners(int threshold) {
+		voteThreshold = threshold;
+		int winner = -1;
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			if(continuing[id] && getVotes(id) >= threshold && (winner < 0 || compare(id, winner) < 0))
+				winner = id;
+		}
+		if(winner < 0)
+			return false; //No seats were won
+
+		removeFromRunning(winner);
+		transferPile(winner, threshold);
+		addWinner(winner);
+		return true; //A candidate won a seat
+	}
+
+	/**
+	 * Removes the last place candidates in the same way as Election.removeLastPlaceCandidates.
+	 * Mathematically excluded candidates are eliminated in the same round, in the same way as Election.
+	 * @param numTotalSeats The number of seats that can be won in total (not remaining number of seats)
+	 * @return If candidates were removed or if all have won. If false is returned, there was an unbreakable tie.
+	 */
+	public boolean removeLastPlaceCandidates(int numTotalSeats) {
+		ArrayList<Integer> tiedCandidates = getLastPlaceGroup();
+		int numTied = tiedCandidates.size();
+		int availableSeats = numTotalSeats - getNumWinners();
+
+		int numOfLosers = numContinuing - availableSeats; //Number of total candidates that have not won minus available seats
+		if(numTied <= numOfLosers) //If all remaining candidates can lose, eliminate them
+		{
+			int numExcluded = countMathematicallyExcluded(numOfLosers); //Counted before any votes move
+			eliminateCandidates(tiedCandidates);
+			int numEliminated = numTied;
+			while(numEliminated < numExcluded && !anyReaching(voteThreshold))
+			{
+				tiedCandidates = getLastPlaceGroup(); //Always made up of excluded candidates, who stay below everyone else
+				eliminateCandidates(tiedCandidates);
+				numEliminated += tiedCandidates.size();
+			}
+			return true; //Candidates were eliminated
+		}
+		else if(numOfLosers <= 0) //If no other candidates must lose, then all can win
+		{
+			for(int id : tiedCandidates)
+			{
+				removeFromRunning(id);
+				addWinner(id);
+			}
+			while(getNumWinners() < numTotalSeats)
+			{
+				electionWinners.add(Candidate.describe("Vacant", 0, 0)); //All remaining seats cannot be filled by a candidate
+				winnerNames.add("Vacant");
+				winnerIds.add(-1);
+			}
+			return true; //All candidates won
+		}
+		else //If the tied candidates can't all lose or win, then there is a tie that must be broken with a runoff or other process
+		{
+			while(getNumWinners() < numTotalSeats) //For all remaining seats
+			{
+				electionWinners.add(Candidate.describe("Tied", 0, 0)); //All remaining seats are tied
+				winnerNames.add("Tied");
+				winnerIds.add(-1);
+			}
+
+			System.out.println("Tied Candidates: ");
+			while(numTied > 0)
+			{
+				int id = tiedCandidates.get(--numTied);
+				System.out.println(describe(id));
+				System.out.println("\t" + totalVotes[id] + " total votes");
+			}
+			return false; //Unbreakable tie, no candidates removed
+		}
+	}
+
+	/**
+	 * Outputs a list of the winning candidates, in order of winning, to the file provided in the PrintWriter
+	 * @param output A PrintWriter object for the output file for the winning candidates
+	 * @param threshold The vote threshold that was used
+	 */
+	public void outputWinners(PrintWriter output, int threshold) {
+		output.printf("Vote threshold was %d\n\n", threshold);
+
+		for(int i = 1; getNumWinners() != 0; i++)
+		{
+			output.printf("%d%s seat: %s\n", i, Election.getSeatPostfix(i), electionWinners.poll());
+		}
+	}
+
+	/**
+	 * Takes a candidate out of the running so that no more ballots move to them
+	 * @param id the id of the candidate
+	 */
+	private void removeFromRunning(int id) {
+		continuing[id] = false;
+		numContinuing--;
+	}
+
+	/**
+	 * Eliminates candidates one after another, in the given order, moving their piles on to the next continuing candidates
+	 * @param ids the ids of the candidates to eliminate
+	 */
+	private void eliminateCandidates(ArrayList<Integer> ids) {
+		for(int id : ids)
+		{
+			removeFromRunning(id);
+			transferPile(id, 0);
+		}
+	}
+
+	/**
+	 * Finds the last place candidate and every candidate tied with them on votes and total votes
+	 * @return the ids of the tied candidates in order of id, which is also their ranked order
+	 */
+	private ArrayList<Integer> getLastPlaceGroup() {
+		int lastPlace = -1;
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			if(continuing[id] && (lastPlace < 0 || compare(id, lastPlace) < 0))
+				lastPlace = id;
+		}
+		ArrayList<Integer> tiedCandidates = new ArrayList<Integer>();
+		for(int id = 0; lastPlace >= 0 && id < numOfCandidates; id++)
+		{
+			if(continuing[id] && getVotes(id) == getVotes(lastPlace) && totalVotes[id] == totalVotes[lastPlace])
+				tiedCandidates.add(id);
+		}
+		return tiedCandidates;
+	}
+
+	/**
+	 * Counts the mathematically excluded candidates in the same way as CandidateRanking.countMathematicallyExcluded
+	 * @param maxExcluded the most candidates that can be excluded without leaving a seat empty
+	 * @return the number of excluded candidates
+	 */
+	private int countMathematicallyExcluded(int maxExcluded) {
+		int[] votes = new int[numContinuing];
+		int numOfVotes = 0;
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			if(continuing[id])
+				votes[numOfVotes++] = getVotes(id);
+		}
+		Arrays.sort(votes, 0, numOfVotes);
+		int numExcluded = 0;
+		long excludedVotes = 0; //Votes of every candidate below the one being looked at
+		for(int place = 0; place < numOfVotes && place <= maxExcluded; place++)
+		{
+			if(place > 0 && excludedVotes < votes[place])
+				numExcluded = place;
+			excludedVotes += votes[place];
+		}
+		return numExcluded;
+	}
+
+	/**
+	 * Checks if any continuing candidate has reached the given number of votes
+	 * @param threshold the number of votes
+	 * @return if a continuing candidate has at least that many votes
+	 */
+	private boolean anyReaching(int threshold) {
+		for(int id = 0; id < numOfCandidates; id++)
+		{
+			if(continuing[id] && getVotes(id) >= threshold)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compares two candidates in the same way as CandidateRanking, by votes, then total votes, then id
+	 * @param id1 the id of the first candidate
+	 * @param id2 the id of the second candidate
+	 * @return a negative number if the first candidate ranks lower, positive if higher, and 0 if they are the same candidate
+	 */
+	private int compare(int id1, int id2) {
+		int votes1 = getVotes(id1);
+		int votes2 = getVotes(id2);
+		if(votes1 != votes2)
+			return Integer.compare(votes1, votes2);
+		if(totalVotes[id1] != totalVotes[id2])
+			return Integer.compare(totalVotes[id1], totalVotes[id2]);
+		return Integer.compare(id1, id2);
+	}
+
+	/**
+	 * Describes a candidate in the same way as Candidate.toString
+	 * @param id the id of the candidate
+	 * @return the description of the candidate
+	 */
+	private String describe(int id) {
+		return Candidate.describe(candidateList.get(id).getName(), getVotes(id), totalVotes[id]);
+	}
+
+	/**
+	 * Gives a seat to a candidate, who must already have been taken out of the running
+	 * @param id the id of the candidate
+	 */
+	private void addWinner(int id) {
+		electionWinners.add(describe(id));
+		winnerNames.add(candidateList.get(id).getName());
+		winnerIds.add(id);
+	}
+
+}
@@ -0,0 +1,13 @@
+public interface TransferListener {
+
+	/**
+	 * Called on the thread doing the count after ballots have moved on from a pile, once every ballot has its new choice
+	 * @param fromId the id of the candidate the ballots left
+	 * @param pile the pile the ballots left
+	 * @param position the position in the pile of the first ballot that moved
+	 * @param numMoved the number of ballots that moved
+	 * @param destinations the id of the candidate each moved ballot went to, in pile order, or -1 if it was exhausted
+	 */
+	public void recordTransfers(int fromId, BallotPile pile, int position, int numMoved, int[] destinations);
+
+}
@@ -0,0 +1,170 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class WhatIfEngine {
+
+	private BallotStore ballotStore; //Every ballot of the election, never counted itself. Each scenario counts its own copy.
+	private CandidateNameTable nameTable; //Table used to turn excluded candidate names into ids
+	private int numOfSeats; //Number of seats in the election itself
+
+	/**
+	 * Runs what-if scenarios against one election. Arguments are the election's settings file, a scenarios file,
+	 * and optionally the number of scenarios to count at once (the number of processors if it is left out).
+	 * The first line of the scenarios file is an instruction line, and each line after it is one scenario in the layout read by WhatIfScenario.parse.
+	 * Blank lines are skipped. The winners of every scenario are printed in the order they were listed.
+	 * @param args the settings file, scenarios file and number of threads
+	 * @throws IOException if a file could not be read
+	 * @throws InterruptedException if the thread was interrupted while waiting for the scenarios
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 2)
+		{
+			System.out.println("Usage: WhatIfEngine <settings file> <scenarios file> [number of threads]");
+			return;
+		}
+		int numOfThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		List<String> lines = Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8);
+		ArrayList<WhatIfScenario> scenarios = new ArrayList<WhatIfScenario>();
+		for(int i = 1; i < lines.size(); i++) //First line is the instruction line
+		{
+			if(!lines.get(i).trim().isEmpty())
+				scenarios.add(WhatIfScenario.parse(lines.get(i)));
+		}
+
+		long start = System.nanoTime();
+		WhatIfEngine engine = new WhatIfEngine(new ElectionSettings(new File(args[0])));
+		long loaded = System.nanoTime();
+		List<String> results = engine.runAll(scenarios, numOfThreads);
+		System.out.printf("Loaded %d ballots in %d ms and counted %d scenarios on %d threads in %d ms\n\n", engine.ballotStore.getNumBallots(),
+				(loaded - start) / 1000000, scenarios.size(), Math.max(numOfThreads, 1), (System.nanoTime() - loaded) / 1000000);
+		for(int i = 0; i < scenarios.size(); i++)
+		{
+			System.out.printf("Scenario %d: %s\n%s\n", i + 1, scenarios.get(i).getName(), results.get(i));
+		}
+	}
+
+	/**
+	 * Constructor reads the candidates and ballots of an election once, for every scenario to share
+	 * @param settings the settings of the election
+	 * @throws IOException if the candidates or ballots file could not be read, or the invalid ballot policy is fail and a ballot has a problem
+	 */
+	public WhatIfEngine(ElectionSettings settings) throws IOException {
+		ballotStore = new BallotStore();
+		ArrayList<Candidate> candidateList = PerformElection.readCandidates(settings.getCandidatesFile(), ballotStore);
+		nameTable = new CandidateNameTable(candidateList);
+		BallotValidator validator = PerformElection.createValidator(settings);
+		PerformElection.readBallots(settings.getBallotsFile(), nameTable, candidateList.size(), Runtime.getRuntime().availableProcessors(), ballotStore, validator);
+		validator.checkPolicy();
+		numOfSeats = settings.getNumSeats();
+	}
+
+	/**
+	 * Constructor shares a ballot store that has already been filled
+	 * @param ballotStore the store holding every ballot, which must not be counted
+	 * @param numOfSeats the number of seats in the election itself
+	 */
+	public WhatIfEngine(BallotStore ballotStore, int numOfSeats) {
+		this.ballotStore = ballotStore;
+		nameTable = new CandidateNameTable(ballotStore.getCandidateList());
+		this.numOfSeats = numOfSeats;
+	}
+
+	/**
+	 * Counts one scenario and gets its winners as they would be written to the winners file.
+	 * The count runs on a copy of the shared store's cursors and piles, and the rankings themselves are shared, not copied.
+	 * @param scenario the scenario to count
+	 * @return the winners of the scenario
+	 */
+	public String run(WhatIfScenario scenario) {
+		int seats = scenario.getNumSeats() > 0 ? scenario.getNumSeats() : numOfSeats;
+		List<String> excludedCandidates = scenario.getExcludedCandidates();
+		boolean[] withdrawn = new boolean[ballotStore.getNumCandidates()]; //A name excluded more than once is only withdrawn once
+		int numWithdrawn = 0;
+		for(String name : excludedCandidates)
+		{
+			int id = nameTable.lookup(name);
+			if(id < 0)
+				throw new IllegalArgumentException("Scenario " + scenario.getName() + " excludes " + name + ", who is not a candidate");
+			if(!withdrawn[id])
+				numWithdrawn++;
+			withdrawn[id] = true;
+		}
+		int[] withdrawnIds = new int[numWithdrawn];
+		for(int id = 0, i = 0; id < withdrawn.length; id++)
+		{
+			if(withdrawn[id])
+				withdrawnIds[i++] = id;
+		}
+
+		StringWriter winners = new StringWriter();
+		PrintWriter winnersOutput = new PrintWriter(winners);
+		if(ballotStore.getNumCandidates() - withdrawnIds.length <= seats)
+		{
+			ArrayList<Candidate> remaining = new ArrayList<Candidate>(); //Same output as an election whose candidates file left out the withdrawn candidates
+			for(Candidate candidate : ballotStore.getCandidateList())
+			{
+				if(!withdrawn[candidate.getId()])
+					remaining.add(new Candidate(candidate.getName()));
+			}
+			PerformElection.outputUncontested(winnersOutput, remaining, seats);
+			winnersOutput.flush();
+			return winners.toString();
+		}
+
+		BallotStore scenarioStore = ballotStore.copyWithdrawing(withdrawnIds);
+		Election election = new Election(scenarioStore, seats);
+		for(int id : withdrawnIds)
+		{
+			election.removeCandidate(scenarioStore.getCandidate(id));
+		}
+		int voteThreshold = scenario.getVoteThreshold() > 0 ? scenario.getVoteThreshold() : PerformElection.getVoteThreshold(election.getNumBallots(), seats);
+
+		if(PerformElection.performCount(election, seats, voteThreshold))
+			winnersOutput.println("There is an unbreakable tie, a runoff must be called to break it.\n");
+		election.outputWinners(winnersOutput, voteThreshold);
+		winnersOutput.flush();
+		return winners.toString();
+	}
+
+	/**
+	 * Counts many scenarios at once on a fixed number of threads. A scenario that fails gets a line saying why instead of winners.
+	 * @param scenarios the scenarios to count
+	 * @param numOfThreads the most scenarios to count at once
+	 * @return the winners of each scenario, in the same order as the scenarios
+	 * @throws InterruptedException if the thread was interrupted while waiting for the scenarios
+	 */
+	public List<String> runAll(List<WhatIfScenario> scenarios, int numOfThreads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(numOfThreads, 1));
+		ArrayList<Future<String>> futures = new ArrayList<Future<String>>();
+		for(WhatIfScenario scenario : scenarios)
+		{
+			futures.add(executor.submit(() -> run(scenario)));
+		}
+		executor.shutdown();
+
+		ArrayList<String> results = new ArrayList<String>();
+		for(Future<String> future : futures)
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch(ExecutionException e)
+			{
+				results.add("Failed: " + e.getCause() + "\n");
+			}
+		}
+		return results;
+	}
+
+}
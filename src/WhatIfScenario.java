@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class WhatIfScenario {
+
+	private String name; //Name of the scenario, used in reports
+	private int numOfSeats; //Number of seats being filled, 0 to keep the election's own number
+	private int voteThreshold; //Votes needed to win a seat, 0 to use the Droop quota for the number of seats
+	private List<String> excludedCandidates; //Names of the candidates treated as if they had withdrawn before the count
+
+	/**
+	 * Constructor describes a variant of an election
+	 * @param name the name of the scenario
+	 * @param numOfSeats the number of seats being filled, 0 to keep the election's own number
+	 * @param voteThreshold the votes needed to win a seat, 0 to use the Droop quota for the number of seats
+	 * @param excludedCandidates the names of candidates treated as if they had withdrawn before the count
+	 */
+	public WhatIfScenario(String name, int numOfSeats, int voteThreshold, List<String> excludedCandidates) {
+		this.name = name;
+		this.numOfSeats = numOfSeats;
+		this.voteThreshold = voteThreshold;
+		this.excludedCandidates = new ArrayList<String>(excludedCandidates);
+	}
+
+	/**
+	 * Reads a scenario from one line of a scenarios file, in the layout
+	 * "Scenario name: seats = 4; threshold = 1000; exclude = Name 1, Name 2". Every setting after the colon is optional.
+	 * @param line the line
+	 * @return the scenario
+	 */
+	public static WhatIfScenario parse(String line) {
+		int colon = line.indexOf(':');
+		String name = (colon < 0 ? line : line.substring(0, colon)).trim();
+		int numOfSeats = 0;
+		int voteThreshold = 0;
+		ArrayList<String> excludedCandidates = new ArrayList<String>();
+		if(colon >= 0)
+		{
+			for(String setting : line.substring(colon + 1).split(";"))
+			{
+				if(setting.trim().isEmpty())
+					continue;
+				String[] parts = setting.split("=", 2);
+				if(parts.length != 2)
+					throw new IllegalArgumentException("Scenario setting \"" + setting.trim() + "\" is not in the layout name = value");
+				String value = parts[1].trim();
+				switch(parts[0].trim().toLowerCase())
+				{
+					case "seats":
+						numOfSeats = Integer.parseInt(value);
+						break;
+					case "threshold":
+						voteThreshold = Integer.parseInt(value);
+						break;
+					case "exclude":
+						for(String candidateName : value.split(", "))
+						{
+							excludedCandidates.add(candidateName.trim());
+						}
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown scenario setting " + parts[0].trim());
+				}
+			}
+		}
+		return new WhatIfScenario(name, numOfSeats, voteThreshold, excludedCandidates);
+	}
+
+	/**
+	 * Gets the name of the scenario
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	/**
+	 * Gets the number of seats being filled
+	 * @return the number of seats, or 0 to keep the election's own number
+	 */
+	public int getNumSeats() {
+		return numOfSeats;
+	}
+	/**
+	 * Gets the votes needed to win a seat
+	 * @return the vote threshold, or 0 to use the Droop quota
+	 */
+	public int getVoteThreshold() {
+		return voteThreshold;
+	}
+	/**
+	 * Gets the candidates treated as if they had withdrawn
+	 * @return the names of the candidates
+	 */
+	public List<String> getExcludedCandidates() {
+		return excludedCandidates;
+	}
+
+}